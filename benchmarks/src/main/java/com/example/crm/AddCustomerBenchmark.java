@@ -0,0 +1,58 @@
+package com.example.crm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CustomerService.addCustomer() with persistence: "add" only queues the journal record
+// for the background writer, as the application does; "addAndFlush" also waits for it to
+// be written and forced to disk, the cost of making every single add durable
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AddCustomerBenchmark {
+    private Path dir;
+    private CustomerService customerService;
+    private DataGenerator generator;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkData.useTempDataDir();
+        customerService = new CustomerService();
+        generator = new DataGenerator(42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        DataStorage.flush();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public boolean add() {
+        return customerService.addCustomer(generator.customer(next++));
+    }
+
+    @Benchmark
+    public boolean addAndFlush() {
+        boolean added = customerService.addCustomer(generator.customer(next++));
+        DataStorage.flush();
+        return added;
+    }
+}
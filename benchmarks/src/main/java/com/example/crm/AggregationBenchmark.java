@@ -0,0 +1,68 @@
+package com.example.crm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The statistics the GUI's updateStatus() shows after every change: "status" reads the
+// counts and the total kept by the services, "scanOrders" adds up every order's total,
+// as updateStatus() once did, for comparison
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AggregationBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int orders;
+
+    private Path dir;
+    private CustomerService customerService;
+    private ProductService productService;
+    private OrderService orderService;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkData.useTempDataDir();
+        customerService = new CustomerService();
+        productService = new ProductService();
+        orderService = new OrderService(customerService, productService);
+        new DataGenerator(42).populate(customerService, productService, orderService, Math.max(1, orders / 10), 500, orders, 365);
+        DataStorage.flush();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public String status() {
+        return String.format("Status: Ready | Customers: %d | Products: %d | Orders: %d | Total Sales: %s",
+                customerService.getCustomerCount(), productService.getProductCount(), orderService.getOrderCount(),
+                Money.format(orderService.getTotalSalesCents()));
+    }
+
+    @Benchmark
+    public long scanOrders() {
+        long cents = 0;
+        for (Order order : orderService.getAllOrders()) {
+            cents += order.getTotalCents();
+        }
+        return cents;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.crm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Shared setup for the benchmarks. DataStorage reads its directory once, when the class
+// is first used, so every benchmark points it at a fresh temporary directory before it
+// touches a service. JMH runs each benchmark and parameter set in its own forked JVM.
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    static Path useTempDataDir() throws IOException {
+        Path dir = Files.createTempDirectory("crm-bench");
+        System.setProperty("crm.dataDir", dir.toString());
+        return dir;
+    }
+
+    static void delete(Path dir) {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    // Customers with IDs 1..count, as a service would number them
+    static List<Customer> customers(DataGenerator generator, int count) {
+        List<Customer> customers = generator.customers(0, count);
+        for (int i = 0; i < count; i++) {
+            customers.get(i).setId(i + 1);
+        }
+        return customers;
+    }
+
+    static List<Product> products(DataGenerator generator, int count) {
+        List<Product> products = generator.products(0, count);
+        for (int i = 0; i < count; i++) {
+            products.get(i).setId(i + 1);
+        }
+        return products;
+    }
+
+    // Orders with IDs 1..count over the last year
+    static List<Order> orders(DataGenerator generator, int count, List<Customer> customers, List<Product> products) {
+        long now = System.currentTimeMillis();
+        List<Order> orders = generator.orders(count, customers, products, now - 365 * 24 * 60 * 60 * 1000L, now);
+        for (int i = 0; i < count; i++) {
+            orders.get(i).setId(i + 1);
+        }
+        return new ArrayList<>(orders);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.crm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CustomerService.getCustomerById() on a table of "size" customers, at random IDs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CustomerLookupBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private Path dir;
+    private CustomerService customerService;
+    // Random IDs, looked up in turn so the lookups can't be predicted
+    private int[] ids;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkData.useTempDataDir();
+        customerService = new CustomerService();
+        customerService.addCustomers(new DataGenerator(42).customers(0, size));
+        DataStorage.flush();
+        Random random = new Random(7);
+        ids = new int[1 << 16];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public Customer getCustomerById() {
+        return customerService.getCustomerById(ids[next++ & (ids.length - 1)]);
+    }
+}
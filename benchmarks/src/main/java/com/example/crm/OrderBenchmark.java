@@ -0,0 +1,61 @@
+package com.example.crm;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Building an order with Order.addOrderItem(), which keeps the total up to date, and
+// formatting one into a reused StringBuilder. No data directory is involved.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBenchmark {
+    private static final int ITEMS = 5;
+
+    private Customer customer;
+    private List<Product> products;
+    private Order order;
+    private final StringBuilder sb = new StringBuilder(512);
+
+    @Setup
+    public void setUp() {
+        DataGenerator generator = new DataGenerator(42);
+        customer = BenchmarkData.customers(generator, 1).get(0);
+        products = BenchmarkData.products(generator, ITEMS);
+        order = buildOrder();
+        order.setId(1);
+    }
+
+    @Benchmark
+    public Order addOrderItems() {
+        return buildOrder();
+    }
+
+    @Benchmark
+    public int appendTo() {
+        sb.setLength(0);
+        order.appendTo(sb);
+        return sb.length();
+    }
+
+    private Order buildOrder() {
+        Order built = new Order(0, customer);
+        for (int i = 0; i < ITEMS; i++) {
+            built.addOrderItem(new OrderItem(products.get(i), i + 1));
+        }
+        return built;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.crm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full snapshot writes and reads (DataStorage.saveX/loadX) of "size" customers and
+// "size" orders. The journals stay empty, so loading reads the snapshot only.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private Path dir;
+    private List<Customer> customers;
+    private List<Order> orders;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = BenchmarkData.useTempDataDir();
+        DataGenerator generator = new DataGenerator(42);
+        customers = BenchmarkData.customers(generator, size);
+        List<Product> products = BenchmarkData.products(generator, 500);
+        orders = BenchmarkData.orders(generator, size, customers, products);
+        DataStorage.saveCustomers(customers);
+        DataStorage.saveOrders(orders);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public void saveCustomers() {
+        DataStorage.saveCustomers(customers);
+    }
+
+    @Benchmark
+    public List<Customer> loadCustomers() {
+        return DataStorage.loadCustomers();
+    }
+
+    @Benchmark
+    public void saveOrders() {
+        DataStorage.saveOrders(orders);
+    }
+
+    @Benchmark
+    public List<Order> loadOrders() {
+        return DataStorage.loadOrders();
+    }
+}
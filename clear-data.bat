@@ -3,6 +3,13 @@ echo Clearing CRM data...
 if exist data\customers.dat del data\customers.dat
 if exist data\products.dat del data\products.dat
 if exist data\orders.dat del data\orders.dat
+if exist data\customers.idx del data\customers.idx
+if exist data\*.log del data\*.log
+if exist data\*.log.old del data\*.log.old
+if exist data\*.prev del data\*.prev
+if exist data\*.damaged del data\*.damaged
+if exist data\*.tmp del data\*.tmp
+if exist data\checkpoints rmdir /s /q data\checkpoints
 echo Data cleared successfully.
 echo Run the application again to initialize with sample data.
 pause 
\ No newline at end of file
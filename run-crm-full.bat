@@ -10,7 +10,7 @@ mkdir bin
 echo.
 
 echo Step 2: Compiling Java files...
-javac -d bin src/com/example/crm/Main.java src/com/example/crm/CRMGui.java src/com/example/crm/MainApp.java src/com/example/crm/DataStorage.java
+javac -d bin src/com/example/crm/*.java
 if %errorlevel% neq 0 (
     echo Compilation failed!
     pause
@@ -1,6 +1,6 @@
 @echo off
 echo Compiling CRM Application...
-javac -d bin src/com/example/crm/Main.java src/com/example/crm/CRMGui.java src/com/example/crm/MainApp.java src/com/example/crm/DataStorage.java
+javac -d bin src/com/example/crm/*.java
 if %errorlevel% neq 0 (
     echo Compilation failed!
     pause
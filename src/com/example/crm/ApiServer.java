@@ -0,0 +1,789 @@
+package com.example.crm;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Headless HTTP/JSON API over the services, on the JDK's built-in HTTP server. Started
+// with "MainApp --server [port]" (8080 by default). Resources:
+//   GET  /api/customers?q=&offset=&limit=      POST /api/customers
+//   GET|PUT|DELETE /api/customers/{id}          GET  /api/customers/{id}/orders?offset=&limit=
+//   GET  /api/products?q=&offset=&limit=       POST /api/products
+//   GET|PUT|DELETE /api/products/{id}
+//   GET  /api/orders?from=&to=&offset=&limit=  POST /api/orders
+//   GET  /api/orders/{id}                       POST /api/orders/{id}/items
+//   GET  /api/stats                             POST /api/backup?full=
+// Lists are pages of at most MAX_LIMIT entries: {"offset", "limit", "total", "items"}.
+// Search results (q=) end after the first MAX_SEARCH_RESULTS.
+// Listings in ID order also take after=ID in place of offset (see sendCursorPage()).
+// Times are epoch milliseconds and amounts are cents. Responses are written as they are
+// encoded (chunked), so a page is never held as one string.
+class ApiServer {
+    private static final int DEFAULT_PORT = 8080;
+    // Platform threads serving requests where there are no virtual threads
+    private static final int DEFAULT_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    // Searches rank every match up to offset + limit, so pages of results stop here
+    private static final int MAX_SEARCH_RESULTS = 10_000;
+    // Request bodies are single entities; anything bigger is refused
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final CustomerService customerService;
+    private final ProductService productService;
+    private final OrderService orderService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    // A request that can't be served, with the HTTP status to answer with
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    ApiServer(CustomerService customerService, ProductService productService, OrderService orderService,
+            int port, int threads) throws IOException {
+        this.customerService = customerService;
+        this.productService = productService;
+        this.orderService = orderService;
+        // A streamed response goes out as headers, chunks and a final empty chunk; with
+        // Nagle's algorithm on, the last small write waits for the client's delayed ACK
+        // (about 40 ms). Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        ExecutorService virtual = threads > 0 ? null : virtualThreadPerTask();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : fixedPool(threads > 0 ? threads : DEFAULT_THREADS);
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting requests, waits up to delaySeconds for the running ones, then
+    // writes queued changes
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        DataStorage.flush();
+    }
+
+    // Handlers mostly wait on locks and the network, so when the server runs on Java 21
+    // or later each request gets a virtual thread. The code is built for Java 17, which
+    // has none, so the factory is looked up reflectively; null if there is none.
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService fixedPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "crm-http-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (ApiException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                // Invalid JSON, numbers or amounts
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Error serving " + exchange.getRequestURI() + ": " + e);
+                sendError(exchange, 500, "Internal error");
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        // "/api/customers/12/orders" -> ["customers", "12", "orders"]
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String resource = path[0];
+        int id = path.length > 1 ? parseId(path[1]) : 0;
+        String sub = path.length > 2 ? path[2] : null;
+        if (path.length > 3 || (sub != null && !sub.equals(resource.equals("customers") ? "orders" : "items"))) {
+            throw new ApiException(404, "No such resource");
+        }
+        switch (resource) {
+            case "customers" -> {
+                if (path.length == 1) {
+                    switch (method) {
+                        case "GET" -> listCustomers(exchange, query);
+                        case "POST" -> addCustomer(exchange);
+                        default -> throw notAllowed();
+                    }
+                } else if (sub != null) {
+                    requireMethod(method, "GET");
+                    listCustomerOrders(exchange, id, query);
+                } else {
+                    switch (method) {
+                        case "GET" -> sendCustomer(exchange, 200, existingCustomer(id));
+                        case "PUT" -> updateCustomer(exchange, id);
+                        case "DELETE" -> deleteCustomer(exchange, id);
+                        default -> throw notAllowed();
+                    }
+                }
+            }
+            case "products" -> {
+                if (sub != null) {
+                    throw new ApiException(404, "No such resource");
+                }
+                if (path.length == 1) {
+                    switch (method) {
+                        case "GET" -> listProducts(exchange, query);
+                        case "POST" -> addProduct(exchange);
+                        default -> throw notAllowed();
+                    }
+                } else {
+                    switch (method) {
+                        case "GET" -> sendProduct(exchange, 200, existingProduct(id));
+                        case "PUT" -> updateProduct(exchange, id);
+                        case "DELETE" -> deleteProduct(exchange, id);
+                        default -> throw notAllowed();
+                    }
+                }
+            }
+            case "orders" -> {
+                if (path.length == 1) {
+                    switch (method) {
+                        case "GET" -> listOrders(exchange, query);
+                        case "POST" -> createOrder(exchange);
+                        default -> throw notAllowed();
+                    }
+                } else if (sub != null) {
+                    requireMethod(method, "POST");
+                    addOrderItem(exchange, id);
+                } else {
+                    requireMethod(method, "GET");
+                    sendOrder(exchange, 200, existingOrder(id));
+                }
+            }
+            case "stats" -> {
+                if (path.length > 1) {
+                    throw new ApiException(404, "No such resource");
+                }
+                requireMethod(method, "GET");
+                sendStats(exchange);
+            }
+            case "backup" -> {
+                if (path.length > 1) {
+                    throw new ApiException(404, "No such resource");
+                }
+                requireMethod(method, "POST");
+                backUp(exchange, query);
+            }
+            default -> throw new ApiException(404, "No such resource");
+        }
+    }
+
+    // Customers
+
+    private void listCustomers(HttpExchange exchange, Map<String, String> query) throws IOException {
+        int offset = intParam(query, "offset", 0);
+        int limit = limitParam(query);
+        String q = query.getOrDefault("q", "");
+        if (query.containsKey("after") && q.isBlank()) {
+            int after = intParam(query, "after", 0);
+            sendCursorPage(exchange, customerService.getCustomerCount(), after, limit,
+                    customerService.getCustomersAfter(after, limit + 1), ApiServer::writeCustomer);
+            return;
+        }
+        if (q.isBlank()) {
+            sendSlice(exchange, customerService.getCustomerCount(), offset, limit,
+                    customerService.getCustomersAt(offset, limit), ApiServer::writeCustomer);
+            return;
+        }
+        List<Customer> customers = customerService.searchCustomers(q, searchLimit(offset, limit));
+        JsonWriter json = beginPage(exchange, customers.size(), offset, limit);
+        for (Customer customer : page(customers, offset, limit)) {
+            writeCustomer(json, customer);
+        }
+        endPage(json);
+    }
+
+    private void addCustomer(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readObject(exchange);
+        Customer customer = new Customer(0, requiredString(body, "name"), optionalString(body, "contactPerson", ""),
+                optionalString(body, "phone", ""), optionalString(body, "email", ""));
+        if (!customerService.addCustomer(customer)) {
+            throw new ApiException(409, "Another customer has this email address or phone number");
+        }
+        sendCustomer(exchange, 201, customer);
+    }
+
+    private void updateCustomer(HttpExchange exchange, int id) throws IOException {
+        Customer customer = existingCustomer(id);
+        Map<String, Object> body = readObject(exchange);
+        String name;
+        String contactPerson;
+        String phone;
+        String email;
+        // Fields left out keep their values
+        synchronized (customer) {
+            name = optionalString(body, "name", customer.getName());
+            contactPerson = optionalString(body, "contactPerson", customer.getContactPerson());
+            phone = optionalString(body, "phone", customer.getPhone());
+            email = optionalString(body, "email", customer.getEmail());
+        }
+        if (!customerService.updateCustomer(id, name, contactPerson, phone, email)) {
+            existingCustomer(id);
+            throw new ApiException(409, "Another customer has this email address or phone number");
+        }
+        sendCustomer(exchange, 200, customer);
+    }
+
+    private void deleteCustomer(HttpExchange exchange, int id) throws IOException {
+        existingCustomer(id);
+        if (!customerService.deleteCustomer(id)) {
+            existingCustomer(id);
+            throw new ApiException(409, "Customer " + id + " has orders and can't be deleted");
+        }
+        sendEmpty(exchange);
+    }
+
+    private void listCustomerOrders(HttpExchange exchange, int id, Map<String, String> query) throws IOException {
+        existingCustomer(id);
+        int offset = intParam(query, "offset", 0);
+        int limit = limitParam(query);
+        List<Order> orders = orderService.getOrdersForCustomer(id);
+        JsonWriter json = beginPage(exchange, orders.size(), offset, limit);
+        for (Order order : page(orders, offset, limit)) {
+            writeOrder(json, order);
+        }
+        endPage(json);
+    }
+
+    private Customer existingCustomer(int id) {
+        Customer customer = customerService.getCustomerById(id);
+        if (customer == null) {
+            throw new ApiException(404, "Customer " + id + " not found");
+        }
+        return customer;
+    }
+
+    private void sendCustomer(HttpExchange exchange, int status, Customer customer) throws IOException {
+        JsonWriter json = beginJson(exchange, status);
+        writeCustomer(json, customer);
+        json.flush();
+    }
+
+    private static void writeCustomer(JsonWriter json, Customer customer) throws IOException {
+        int id;
+        String name;
+        String contactPerson;
+        String phone;
+        String email;
+        // Services hold the entity's monitor while changing it
+        synchronized (customer) {
+            id = customer.getId();
+            name = customer.getName();
+            contactPerson = customer.getContactPerson();
+            phone = customer.getPhone();
+            email = customer.getEmail();
+        }
+        json.beginObject().field("id", id).field("name", name).field("contactPerson", contactPerson)
+                .field("phone", phone).field("email", email).endObject();
+    }
+
+    // Products
+
+    private void listProducts(HttpExchange exchange, Map<String, String> query) throws IOException {
+        int offset = intParam(query, "offset", 0);
+        int limit = limitParam(query);
+        String q = query.getOrDefault("q", "");
+        if (query.containsKey("after") && q.isBlank()) {
+            int after = intParam(query, "after", 0);
+            sendCursorPage(exchange, productService.getProductCount(), after, limit,
+                    productService.getProductsAfter(after, limit + 1), ApiServer::writeProduct);
+            return;
+        }
+        if (q.isBlank()) {
+            sendSlice(exchange, productService.getProductCount(), offset, limit,
+                    productService.getProductsAt(offset, limit), ApiServer::writeProduct);
+            return;
+        }
+        List<Product> products = productService.searchProducts(q, searchLimit(offset, limit));
+        JsonWriter json = beginPage(exchange, products.size(), offset, limit);
+        for (Product product : page(products, offset, limit)) {
+            writeProduct(json, product);
+        }
+        endPage(json);
+    }
+
+    private void addProduct(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readObject(exchange);
+        Long priceCents = priceCents(body);
+        if (priceCents == null) {
+            throw new ApiException(400, "\"priceCents\" or \"price\" is required");
+        }
+        Product product = new Product(0, requiredString(body, "name"), optionalString(body, "description", ""), priceCents);
+        productService.addProduct(product);
+        sendProduct(exchange, 201, product);
+    }
+
+    private void updateProduct(HttpExchange exchange, int id) throws IOException {
+        Product product = existingProduct(id);
+        Map<String, Object> body = readObject(exchange);
+        Long priceCents = priceCents(body);
+        String name;
+        String description;
+        long price;
+        synchronized (product) {
+            name = optionalString(body, "name", product.getName());
+            description = optionalString(body, "description", product.getDescription());
+            price = priceCents != null ? priceCents : product.getPriceCents();
+        }
+        productService.updateProduct(id, name, description, price);
+        sendProduct(exchange, 200, existingProduct(id));
+    }
+
+    private void deleteProduct(HttpExchange exchange, int id) throws IOException {
+        existingProduct(id);
+        if (!productService.deleteProduct(id)) {
+            existingProduct(id);
+            throw new ApiException(409, "Product " + id + " is in orders and can't be deleted");
+        }
+        sendEmpty(exchange);
+    }
+
+    private Product existingProduct(int id) {
+        Product product = productService.getProductById(id);
+        if (product == null) {
+            throw new ApiException(404, "Product " + id + " not found");
+        }
+        return product;
+    }
+
+    private void sendProduct(HttpExchange exchange, int status, Product product) throws IOException {
+        JsonWriter json = beginJson(exchange, status);
+        writeProduct(json, product);
+        json.flush();
+    }
+
+    private static void writeProduct(JsonWriter json, Product product) throws IOException {
+        int id;
+        String name;
+        String description;
+        long priceCents;
+        synchronized (product) {
+            id = product.getId();
+            name = product.getName();
+            description = product.getDescription();
+            priceCents = product.getPriceCents();
+        }
+        json.beginObject().field("id", id).field("name", name).field("description", description)
+                .field("priceCents", priceCents).endObject();
+    }
+
+    // "priceCents" as a whole number, or "price" as an amount such as "149.99"
+    private static Long priceCents(Map<String, Object> body) {
+        Object cents = body.get("priceCents");
+        if (cents != null) {
+            if (!(cents instanceof Long)) {
+                throw new ApiException(400, "\"priceCents\" must be a whole number");
+            }
+            return (Long) cents;
+        }
+        Object price = body.get("price");
+        if (price instanceof String || price instanceof Number) {
+            return Money.parse(price.toString());
+        }
+        if (price != null) {
+            throw new ApiException(400, "\"price\" must be an amount");
+        }
+        return null;
+    }
+
+    // Orders
+
+    private void listOrders(HttpExchange exchange, Map<String, String> query) throws IOException {
+        int offset = intParam(query, "offset", 0);
+        int limit = limitParam(query);
+        if (!query.containsKey("from") && !query.containsKey("to")) {
+            if (query.containsKey("after")) {
+                int after = intParam(query, "after", 0);
+                sendCursorPage(exchange, orderService.getOrderCount(), after, limit,
+                        orderService.getOrdersAfter(after, limit + 1), ApiServer::writeOrder);
+            } else {
+                sendSlice(exchange, orderService.getOrderCount(), offset, limit,
+                        orderService.getOrdersAt(offset, limit), ApiServer::writeOrder);
+            }
+            return;
+        }
+        List<Order> orders = orderService.getOrdersBetween(longParam(query, "from", Long.MIN_VALUE), longParam(query, "to", Long.MAX_VALUE));
+        JsonWriter json = beginPage(exchange, orders.size(), offset, limit);
+        for (Order order : page(orders, offset, limit)) {
+            writeOrder(json, order);
+        }
+        endPage(json);
+    }
+
+    // {"customerId": 1, "items": [{"productId": 2, "quantity": 3}, ...]}
+    // The order is built with its items and created in one go, so it is created whole or not at all
+    private void createOrder(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readObject(exchange);
+        int customerId = requiredInt(body, "customerId");
+        Order order = new Order(0, existingCustomer(customerId));
+        Object items = body.getOrDefault("items", List.of());
+        if (!(items instanceof List)) {
+            throw new ApiException(400, "\"items\" must be an array");
+        }
+        for (Object item : (List<?>) items) {
+            if (!(item instanceof Map)) {
+                throw new ApiException(400, "Order items must be objects");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) item;
+            int productId = requiredInt(fields, "productId");
+            int quantity = quantity(fields);
+            order.addOrderItem(new OrderItem(existingProduct(productId), quantity));
+        }
+        if (orderService.createOrders(List.of(order)) == 0) {
+            throw new ApiException(409, "The customer or a product was deleted while the order was created");
+        }
+        sendOrder(exchange, 201, order);
+    }
+
+    // {"productId": 2, "quantity": 3}
+    private void addOrderItem(HttpExchange exchange, int id) throws IOException {
+        Order order = existingOrder(id);
+        Map<String, Object> body = readObject(exchange);
+        int productId = requiredInt(body, "productId");
+        int quantity = quantity(body);
+        existingProduct(productId);
+        if (!orderService.addProductToOrder(id, productId, quantity)) {
+            throw new ApiException(404, "Order " + id + " or product " + productId + " no longer exists");
+        }
+        sendOrder(exchange, 200, order);
+    }
+
+    private static int quantity(Map<String, Object> fields) {
+        int quantity = requiredInt(fields, "quantity");
+        if (quantity <= 0) {
+            throw new ApiException(400, "\"quantity\" must be positive");
+        }
+        return quantity;
+    }
+
+    private Order existingOrder(int id) {
+        Order order = orderService.getOrderById(id);
+        if (order == null) {
+            throw new ApiException(404, "Order " + id + " not found");
+        }
+        return order;
+    }
+
+    private void sendOrder(HttpExchange exchange, int status, Order order) throws IOException {
+        JsonWriter json = beginJson(exchange, status);
+        writeOrder(json, order);
+        json.flush();
+    }
+
+    private static void writeOrder(JsonWriter json, Order order) throws IOException {
+        OrderItem[] items;
+        long totalCents;
+        // The items and the total change together under the order's monitor
+        synchronized (order) {
+            items = order.getOrderItems().toArray(new OrderItem[0]);
+            totalCents = order.getTotalCents();
+        }
+        json.beginObject().field("id", order.getId()).field("customerId", order.getCustomerId())
+                .field("customerName", order.getCustomerName()).field("createdAt", order.getCreatedAt())
+                .field("totalCents", totalCents);
+        json.name("items").beginArray();
+        for (OrderItem item : items) {
+            json.beginObject().field("productId", item.getProductId()).field("productName", item.getProductName())
+                    .field("quantity", item.getQuantity()).field("unitPriceCents", item.getUnitPriceCents())
+                    .field("subtotalCents", item.getSubtotalCents()).endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    private void sendStats(HttpExchange exchange) throws IOException {
+        JsonWriter json = beginJson(exchange, 200);
+        json.beginObject().field("customers", customerService.getCustomerCount())
+                .field("products", productService.getProductCount()).field("orders", orderService.getOrderCount())
+                .field("totalSalesCents", orderService.getTotalSalesCents()).endObject();
+        json.flush();
+    }
+
+    // Backs up into -Dcrm.backupDir (see Backup); clients can't choose the directory
+    private void backUp(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Backup.Result result;
+        try {
+            result = Backup.backup(new File(Backup.DEFAULT_DIR), Boolean.parseBoolean(query.get("full")));
+        } catch (IOException e) {
+            throw new ApiException(500, "Backup failed: " + e.getMessage());
+        }
+        JsonWriter json = beginJson(exchange, 201);
+        json.beginObject().field("id", result.id).field("type", result.full ? "full" : "incremental")
+                .field("directory", result.dir.getPath()).field("records", result.records)
+                .field("bytes", result.bytes).field("millis", result.nanos / 1_000_000).endObject();
+        json.flush();
+    }
+
+    // Requests and responses
+
+    private interface EntityWriter<T> {
+        void write(JsonWriter json, T entity) throws IOException;
+    }
+
+    // A page from ?after=ID: {"after", "limit", "total", "items", "nextAfter"}, where
+    // nextAfter is the "after" of the next page, or null on the last one. Unlike an
+    // offset, it stays in place when entities before it are added or deleted. "fetched"
+    // holds up to limit + 1 entities; the extra one only says there are more.
+    private static <T extends BaseEntity> void sendCursorPage(HttpExchange exchange, int total, int after, int limit,
+            List<T> fetched, EntityWriter<T> writer) throws IOException {
+        JsonWriter json = beginJson(exchange, 200);
+        json.beginObject().field("after", after).field("limit", limit).field("total", total);
+        json.name("items").beginArray();
+        int shown = Math.min(limit, fetched.size());
+        for (T entity : fetched.subList(0, shown)) {
+            writer.write(json, entity);
+        }
+        json.endArray().name("nextAfter");
+        if (fetched.size() > limit) {
+            json.value(fetched.get(shown - 1).getId());
+        } else {
+            json.nullValue();
+        }
+        json.endObject().flush();
+    }
+
+    // An offset page of a whole table, taken as just the entities shown (see
+    // EntityTable.slice()) rather than sliced from a listing of every one
+    private static <T> void sendSlice(HttpExchange exchange, int total, int offset, int limit,
+            List<T> slice, EntityWriter<T> writer) throws IOException {
+        JsonWriter json = beginPage(exchange, total, offset, limit);
+        for (T entity : slice) {
+            writer.write(json, entity);
+        }
+        endPage(json);
+    }
+
+    private static <T> List<T> page(List<T> entities, int offset, int limit) {
+        int from = Math.min(offset, entities.size());
+        return entities.subList(from, Math.min(entities.size(), from + limit));
+    }
+
+    private static JsonWriter beginPage(HttpExchange exchange, int total, int offset, int limit) throws IOException {
+        JsonWriter json = beginJson(exchange, 200);
+        json.beginObject().field("offset", offset).field("limit", limit).field("total", total);
+        return json.name("items").beginArray();
+    }
+
+    private static void endPage(JsonWriter json) throws IOException {
+        json.endArray().endObject().flush();
+    }
+
+    // Sends the headers with a chunked body and returns a writer for it; the exchange
+    // is closed by handle()
+    private static JsonWriter beginJson(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream body = exchange.getResponseBody();
+        return new JsonWriter(new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 8192));
+    }
+
+    private static void sendEmpty(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // Failed part way through a response; all that can be done is to cut it short
+            return;
+        }
+        StringWriter text = new StringWriter();
+        new JsonWriter(text).beginObject().field("error", message).endObject();
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, Object> readObject(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body too large");
+        }
+        Object value = JsonParser.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (!(value instanceof Map)) {
+            throw new ApiException(400, "Expected a JSON object");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> object = (Map<String, Object>) value;
+        return object;
+    }
+
+    private static String requiredString(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String) || ((String) value).isBlank()) {
+            throw new ApiException(400, "\"" + name + "\" is required");
+        }
+        return (String) value;
+    }
+
+    private static String optionalString(Map<String, Object> body, String name, String otherwise) {
+        Object value = body.get(name);
+        if (value == null) {
+            return otherwise;
+        }
+        if (!(value instanceof String)) {
+            throw new ApiException(400, "\"" + name + "\" must be a string");
+        }
+        return (String) value;
+    }
+
+    private static int requiredInt(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof Long) || (Long) value != ((Long) value).intValue()) {
+            throw new ApiException(400, "\"" + name + "\" must be a whole number");
+        }
+        return ((Long) value).intValue();
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "No such resource");
+        }
+    }
+
+    private static int limitParam(Map<String, String> query) {
+        int limit = intParam(query, "limit", DEFAULT_LIMIT);
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ApiException(400, "\"limit\" must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    // How many search results it takes to fill the page
+    private static int searchLimit(int offset, int limit) {
+        if ((long) offset + limit > MAX_SEARCH_RESULTS) {
+            throw new ApiException(400, "Search results stop at " + MAX_SEARCH_RESULTS + "; \"offset\" + \"limit\" is past that");
+        }
+        return offset + limit;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int otherwise) {
+        long value = longParam(query, name, otherwise);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new ApiException(400, "\"" + name + "\" is out of range");
+        }
+        return (int) value;
+    }
+
+    private static long longParam(Map<String, String> query, String name, long otherwise) {
+        String value = query.get(name);
+        if (value == null) {
+            return otherwise;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "\"" + name + "\" must be a whole number");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static void requireMethod(String method, String allowed) {
+        if (!method.equals(allowed)) {
+            throw notAllowed();
+        }
+    }
+
+    private static ApiException notAllowed() {
+        return new ApiException(405, "Method not allowed");
+    }
+
+    // MainApp --server [port]; -Dcrm.server.threads=N uses N platform threads instead
+    // of virtual threads
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: MainApp --server [port]");
+                System.exit(1);
+            }
+        }
+        CustomerService customerService = new CustomerService();
+        ProductService productService = new ProductService();
+        OrderService orderService = new OrderService(customerService, productService);
+        // The responses say what each call did, so the services needn't print it
+        customerService.setQuiet(true);
+        productService.setQuiet(true);
+        orderService.setQuiet(true);
+        DataStorage.initializeSampleData(customerService, productService, orderService);
+        ApiServer server = new ApiServer(customerService, productService, orderService, port,
+                Integer.getInteger("crm.server.threads", 0));
+        server.start();
+        System.out.println("CRM API listening on http://localhost:" + server.getPort() + "/api/ ("
+                + (server.usesVirtualThreads() ? "virtual threads" : "thread pool") + "); Ctrl+C stops it.");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1), "crm-server-stop"));
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.crm;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Full and incremental backups of the data directory, written to numbered directories:
+//   backups/0001-full/         customers.dat  customers.log  ...  manifest.properties
+//   backups/0002-incremental/  customers.log  orders.log  manifest.properties
+// Each backup is streamed from a checkpoint (see DataStorage.checkpoint()), so the
+// application keeps running while it is written. A full backup copies each entity type's
+// snapshot and logs. An incremental one copies only the journal records written since the
+// previous backup: that backup's checkpoint is kept (its logs only) and every log is
+// copied from where the backup stopped reading it, so the time taken follows the churn,
+// not the size of the data. An entity type whose logs can't be followed that far (two
+// compactions in between, or a snapshot written without the journal) is copied in full.
+// The manifest is written last; a directory without one is an unfinished backup.
+//
+// A restore rebuilds a data directory from the last full copy of each entity type and
+// the logs of every backup after it, which the application replays when it starts. Run
+//   java -cp <classes> -Dcrm.dataDir=data com.example.crm.Backup backup backups [--full]
+//   java -cp <classes> com.example.crm.Backup restore backups restored-data [--to N]
+//   java -cp <classes> com.example.crm.Backup list backups
+// The backup command is for when the application isn't running: the checkpoint has to be
+// taken by the process writing the journals, so a running application backs up from the
+// console menu or POST /api/backup instead.
+class Backup {
+    static final String DEFAULT_DIR = System.getProperty("crm.backupDir", "backups");
+    private static final String MANIFEST = "manifest.properties";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // What a backup or restore did
+    static final class Result {
+        final int id;
+        final boolean full;
+        final File dir;
+        final long records;
+        final long bytes;
+        final long nanos;
+
+        Result(int id, boolean full, File dir, long records, long bytes, long nanos) {
+            this.id = id;
+            this.full = full;
+            this.dir = dir;
+            this.records = records;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("backup %d (%s) in %s: %,d journal records, %,d bytes, %.0f ms", id,
+                    full ? "full" : "incremental", dir, records, bytes, nanos / 1e6);
+        }
+    }
+
+    // A range of one log to copy, and where copying it ended up
+    private static final class Copy {
+        final Checkpoint.Log log;
+        final long from;
+        final int formatAtFrom;
+        long end;
+        int formatAtEnd;
+
+        Copy(Checkpoint.Log log, long from, int formatAtFrom) {
+            this.log = log;
+            this.from = from;
+            this.formatAtFrom = formatAtFrom;
+            this.end = from;
+            this.formatAtEnd = formatAtFrom;
+        }
+    }
+
+    // A log of the previous backup's checkpoint, as its manifest describes it
+    private static final class Followed {
+        final Checkpoint.Role role;
+        final File link;
+        final long length;
+        final int format;
+
+        Followed(Checkpoint.Role role, File link, long length, int format) {
+            this.role = role;
+            this.link = link;
+            this.length = length;
+            this.format = format;
+        }
+    }
+
+    private Backup() {
+    }
+
+    // Back up to backupDir: incrementally if it already holds a backup of this data
+    // directory, unless full is set. One backup at a time.
+    static synchronized Result backup(File backupDir, boolean full) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(backupDir.toPath());
+        List<Properties> chain = readChain(backupDir);
+        Properties last = chain.isEmpty() ? null : chain.get(chain.size() - 1);
+        String chainId = last != null ? last.getProperty("chain") : UUID.randomUUID().toString();
+        int id = last != null ? intProperty(last, "id") + 1 : 1;
+        File kept = DataStorage.checkpointDir(chainId);
+        File taken = DataStorage.checkpointDir(chainId + ".new");
+        deleteTree(taken);
+
+        Checkpoint checkpoint = DataStorage.checkpoint(taken);
+        File target = null;
+        boolean done = false;
+        try {
+            // Work out what to copy for every entity type before naming the directory
+            List<List<Copy>> plans = new ArrayList<>();
+            boolean allFull = true;
+            boolean[] fullStores = new boolean[checkpoint.getStores().size()];
+            for (int i = 0; i < fullStores.length; i++) {
+                Checkpoint.StoreFiles store = checkpoint.getStores().get(i);
+                List<Copy> copies = full || last == null ? null : followLogs(store, last, kept);
+                if (copies == null) {
+                    // The snapshot covers the previous log; the others are copied whole
+                    copies = new ArrayList<>();
+                    for (Checkpoint.Log log : store.logs) {
+                        copies.add(new Copy(log, log.role == Checkpoint.Role.PREVIOUS ? log.length : 0, 0));
+                    }
+                    fullStores[i] = true;
+                }
+                allFull &= fullStores[i];
+                plans.add(copies);
+            }
+
+            target = new File(backupDir, String.format("%04d-%s", id, allFull ? "full" : "incremental"));
+            deleteTree(target);
+            Files.createDirectory(target.toPath());
+            Properties manifest = new Properties();
+            manifest.setProperty("id", Integer.toString(id));
+            manifest.setProperty("chain", chainId);
+            if (last != null) {
+                manifest.setProperty("base", last.getProperty("id"));
+            }
+            manifest.setProperty("created", Long.toString(checkpoint.getCreatedAt()));
+            long records = 0;
+            long bytes = 0;
+            List<String> labels = new ArrayList<>();
+            for (int i = 0; i < fullStores.length; i++) {
+                Checkpoint.StoreFiles store = checkpoint.getStores().get(i);
+                String label = store.label;
+                labels.add(label);
+                manifest.setProperty(label + ".mode", fullStores[i] ? "full" : "incremental");
+                if (fullStores[i] && store.snapshot != null) {
+                    File copy = new File(target, label + ".dat");
+                    long crc = copySnapshot(store.snapshot, copy);
+                    manifest.setProperty(label + ".dat.crc", Long.toString(crc));
+                    bytes += copy.length();
+                }
+                List<Copy> copies = plans.get(i);
+                if (copies.stream().anyMatch(copy -> copy.from < copy.log.length)) {
+                    File log = new File(target, label + ".log");
+                    long[] counted = new long[1];
+                    long crc = copyLogs(copies, log, counted);
+                    manifest.setProperty(label + ".log.crc", Long.toString(crc));
+                    manifest.setProperty(label + ".log.records", Long.toString(counted[0]));
+                    records += counted[0];
+                    bytes += log.length();
+                }
+                // Where every log was read up to, for the next incremental backup
+                for (int n = 0; n < copies.size(); n++) {
+                    Copy copy = copies.get(n);
+                    String prefix = label + ".logs." + n;
+                    manifest.setProperty(prefix + ".file", copy.log.file.getName());
+                    manifest.setProperty(prefix + ".role", copy.log.role.name());
+                    manifest.setProperty(prefix + ".length", Long.toString(copy.end));
+                    manifest.setProperty(prefix + ".format", Integer.toString(copy.formatAtEnd));
+                }
+                manifest.setProperty(label + ".logs", Integer.toString(copies.size()));
+            }
+            manifest.setProperty("stores", String.join(",", labels));
+            writeManifest(target, manifest);
+            DataStorage.syncDirectory(backupDir);
+            done = true;
+
+            // Keep this checkpoint's logs to follow next time; its snapshot links would only
+            // hold on to old snapshots
+            for (Checkpoint.StoreFiles store : checkpoint.getStores()) {
+                if (store.snapshot != null) {
+                    store.snapshot.delete();
+                }
+            }
+            deleteTree(kept);
+            Files.move(taken.toPath(), kept.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return new Result(id, allFull, target, records, bytes, System.nanoTime() - start);
+        } finally {
+            if (!done) {
+                deleteTree(taken);
+                if (target != null) {
+                    deleteTree(target);
+                }
+            }
+        }
+    }
+
+    // The log ranges written since the previous backup (empty for logs that haven't
+    // grown), or null if they can't all be found. A log of the previous checkpoint is recognized as the same file (links share
+    // it) even after it has been sealed or retired; logs created since are copied whole.
+    // The previous active log must still be there, since it may have grown after it.
+    private static List<Copy> followLogs(Checkpoint.StoreFiles store, Properties last, File kept) throws IOException {
+        String count = last.getProperty(store.label + ".logs");
+        if (count == null) {
+            return null;
+        }
+        List<Followed> followed = new ArrayList<>();
+        for (int i = 0; i < Integer.parseInt(count); i++) {
+            String prefix = store.label + ".logs." + i;
+            File link = new File(kept, last.getProperty(prefix + ".file"));
+            if (!link.exists()) {
+                return null;
+            }
+            followed.add(new Followed(Checkpoint.Role.valueOf(last.getProperty(prefix + ".role")), link,
+                    Long.parseLong(last.getProperty(prefix + ".length")),
+                    Integer.parseInt(last.getProperty(prefix + ".format"))));
+        }
+        List<Copy> copies = new ArrayList<>();
+        Set<Followed> found = new HashSet<>();
+        for (Checkpoint.Log log : store.logs) {
+            Followed match = null;
+            for (Followed candidate : followed) {
+                if (Files.isSameFile(log.file.toPath(), candidate.link.toPath())) {
+                    match = candidate;
+                }
+            }
+            if (match == null) {
+                copies.add(new Copy(log, 0, 0));
+            } else if (match.length > log.length) {
+                return null;
+            } else {
+                found.add(match);
+                copies.add(new Copy(log, match.length, match.format));
+            }
+        }
+        for (Followed log : followed) {
+            if (log.role == Checkpoint.Role.ACTIVE && !found.contains(log)) {
+                return null;
+            }
+        }
+        return copies;
+    }
+
+    private static long copySnapshot(File snapshot, File copy) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(copy);
+                OutputStream out = new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), BUFFER_SIZE)) {
+            Files.copy(snapshot.toPath(), out);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        return crc.getValue();
+    }
+
+    // Write the ranges one after another as a single log. Each range starts with a FORMAT
+    // record for the format in effect where it starts, so the result replays like any log.
+    private static long copyLogs(List<Copy> copies, File file, long[] records) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), BUFFER_SIZE))) {
+            for (Copy copy : copies) {
+                if (copy.from < copy.log.length) {
+                    records[0] += copyRecords(copy, out);
+                }
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        return crc.getValue();
+    }
+
+    // Copies whole records from copy.from up to the log's length at the checkpoint; a
+    // torn record at the end (left by a crash, until the log is next opened) is left out
+    private static long copyRecords(Copy copy, DataOutputStream out) throws IOException {
+        long records = 0;
+        int format = copy.formatAtFrom;
+        long position = copy.from;
+        try (FileChannel channel = FileChannel.open(copy.log.file.toPath(), StandardOpenOption.READ)) {
+            channel.position(position);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            out.writeByte(EntityJournal.FORMAT);
+            out.writeInt(format);
+            out.writeInt(0);
+            byte[] payload = new byte[256];
+            while (position + 9 <= copy.log.length) {
+                byte op = in.readByte();
+                int id = in.readInt();
+                int length = in.readInt();
+                if (length < 0 || position + 9 + length > copy.log.length) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+                out.writeByte(op);
+                out.writeInt(id);
+                out.writeInt(length);
+                out.write(payload, 0, length);
+                position += 9 + length;
+                if (op == EntityJournal.FORMAT) {
+                    format = id;
+                } else {
+                    records++;
+                }
+            }
+        }
+        copy.end = position;
+        copy.formatAtEnd = format;
+        return records;
+    }
+
+    // Rebuild a data directory in target, which must be empty, from the backups up to and
+    // including the one numbered upTo (0 for the latest)
+    static Result restore(File backupDir, int upTo, File target) throws IOException {
+        long start = System.nanoTime();
+        List<Properties> chain = readChain(backupDir);
+        if (chain.isEmpty()) {
+            throw new IOException("No backups in " + backupDir);
+        }
+        int end = chain.size() - 1;
+        if (upTo > 0) {
+            while (end >= 0 && intProperty(chain.get(end), "id") != upTo) {
+                end--;
+            }
+            if (end < 0) {
+                throw new IOException("No backup " + upTo + " in " + backupDir);
+            }
+        }
+        String[] existing = target.list();
+        if (existing != null && existing.length > 0) {
+            throw new IOException(target + " is not empty");
+        }
+        Files.createDirectories(target.toPath());
+
+        long records = 0;
+        long bytes = 0;
+        Set<String> labels = new LinkedHashSet<>();
+        for (Properties manifest : chain.subList(0, end + 1)) {
+            labels.addAll(List.of(manifest.getProperty("stores", "").split(",")));
+        }
+        for (String label : labels) {
+            // The last full copy of this entity type, then the logs of every backup after it
+            int from = end;
+            while (from > 0 && !"full".equals(chain.get(from).getProperty(label + ".mode"))) {
+                from--;
+            }
+            Properties base = chain.get(from);
+            if (base.getProperty(label + ".dat.crc") != null) {
+                File copy = new File(target, label + ".dat");
+                try (OutputStream out = new FileOutputStream(copy)) {
+                    verifiedCopy(new File(dirOf(backupDir, base), label + ".dat"), base, label + ".dat", out);
+                }
+                bytes += copy.length();
+            }
+            File log = new File(target, label + ".log");
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(log), BUFFER_SIZE)) {
+                for (Properties manifest : chain.subList(from, end + 1)) {
+                    if (manifest.getProperty(label + ".log.crc") != null) {
+                        verifiedCopy(new File(dirOf(backupDir, manifest), label + ".log"), manifest, label + ".log", out);
+                        // Counted when the backup was written; not known for older backups
+                        records += Long.parseLong(manifest.getProperty(label + ".log.records", "0"));
+                    }
+                }
+            }
+            if (log.length() == 0) {
+                log.delete();
+            } else {
+                bytes += log.length();
+            }
+        }
+        Properties restored = chain.get(end);
+        return new Result(intProperty(restored, "id"), "full".equals(restored.getProperty("type")), target,
+                records, bytes, System.nanoTime() - start);
+    }
+
+    private static void verifiedCopy(File file, Properties manifest, String name, OutputStream out) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(new FileInputStream(file), new CRC32())) {
+            in.transferTo(out);
+            if (in.getChecksum().getValue() != Long.parseLong(manifest.getProperty(name + ".crc"))) {
+                throw new IOException(file + " failed its checksum");
+            }
+        }
+    }
+
+    // Manifests of the complete backups in backupDir, in order. Each must follow on from
+    // the one before it, or the chain can't be restored past the gap.
+    private static List<Properties> readChain(File backupDir) throws IOException {
+        List<Properties> chain = new ArrayList<>();
+        File[] dirs = backupDir.listFiles((dir, name) -> name.matches("\\d+-(full|incremental)"));
+        if (dirs == null) {
+            return chain;
+        }
+        for (File dir : dirs) {
+            File manifest = new File(dir, MANIFEST);
+            if (manifest.isFile()) {
+                Properties properties = new Properties();
+                try (InputStream in = new FileInputStream(manifest)) {
+                    properties.load(in);
+                }
+                properties.setProperty("type", dir.getName().substring(dir.getName().indexOf('-') + 1));
+                chain.add(properties);
+            }
+        }
+        chain.sort(Comparator.comparingInt(manifest -> intProperty(manifest, "id")));
+        for (int i = 1; i < chain.size(); i++) {
+            Properties manifest = chain.get(i);
+            if (!manifest.getProperty("base", "").equals(chain.get(i - 1).getProperty("id"))
+                    || !manifest.getProperty("chain").equals(chain.get(0).getProperty("chain"))) {
+                throw new IOException("Backup " + manifest.getProperty("id") + " in " + backupDir
+                        + " doesn't follow on from backup " + chain.get(i - 1).getProperty("id"));
+            }
+        }
+        return chain;
+    }
+
+    private static File dirOf(File backupDir, Properties manifest) {
+        return new File(backupDir, String.format("%04d-%s", intProperty(manifest, "id"), manifest.getProperty("type")));
+    }
+
+    private static void writeManifest(File dir, Properties manifest) throws IOException {
+        File temp = new File(dir, MANIFEST + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            manifest.store(out, "CRM backup");
+            out.getFD().sync();
+        }
+        DataStorage.syncDirectory(dir);
+        Files.move(temp.toPath(), new File(dir, MANIFEST).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int intProperty(Properties properties, String name) {
+        return Integer.parseInt(properties.getProperty(name));
+    }
+
+    private static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteTree(file);
+            }
+        }
+        dir.delete();
+    }
+
+    public static void main(String[] args) {
+        try {
+            String command = args.length > 0 ? args[0] : "";
+            switch (command) {
+                case "backup" -> {
+                    if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("--full"))) {
+                        throw new IllegalArgumentException("backup takes a directory and optionally --full");
+                    }
+                    System.out.println("Wrote " + backup(new File(args[1]), args.length == 3));
+                }
+                case "restore" -> {
+                    if (args.length != 3 && !(args.length == 5 && args[3].equals("--to"))) {
+                        throw new IllegalArgumentException("restore takes a backup directory, a target and optionally --to N");
+                    }
+                    int upTo = args.length == 5 ? Integer.parseInt(args[4]) : 0;
+                    Result result = restore(new File(args[1]), upTo, new File(args[2]));
+                    System.out.printf("Restored backup %d into %s (%,d journal records, %,d bytes) in %.0f ms%n",
+                            result.id, result.dir, result.records, result.bytes, result.nanos / 1e6);
+                    System.out.println("Start the application with -Dcrm.dataDir=" + result.dir
+                            + " to use it, or move its files into the data directory.");
+                }
+                case "list" -> {
+                    if (args.length != 2) {
+                        throw new IllegalArgumentException("list takes a backup directory");
+                    }
+                    for (Properties manifest : readChain(new File(args[1]))) {
+                        StringBuilder stores = new StringBuilder();
+                        for (String label : manifest.getProperty("stores", "").split(",")) {
+                            stores.append(' ').append(label).append('=').append(manifest.getProperty(label + ".mode"));
+                        }
+                        System.out.printf("%4s  %-11s  %s %s%n", manifest.getProperty("id"), manifest.getProperty("type"),
+                                TextFormat.formatDateTime(Long.parseLong(manifest.getProperty("created"))), stores);
+                    }
+                }
+                default -> throw new IllegalArgumentException(command.isEmpty() ? "Missing command" : "Unknown command " + command);
+            }
+            System.exit(0);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Backup backup DIR [--full] | restore DIR TARGET [--to N] | list DIR");
+        } catch (IOException e) {
+            System.err.println("Failed: " + e.getMessage());
+        }
+        System.exit(1);
+    }
+}
@@ -6,12 +6,31 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class CRMGui extends JFrame {
-    private final CustomerService customerService;
-    private final ProductService productService;
-    private final OrderService orderService;
+    // Set once the data has loaded in the background
+    private CustomerService customerService;
+    private ProductService productService;
+    private OrderService orderService;
+    private SalesReports salesReports;
+    
+    // Service calls run on this thread rather than the EDT, one at a time and in the
+    // order they were submitted, so each action sees the effect of the previous one.
+    // Lookups by ID are O(1) in memory and stay on the EDT.
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "crm-gui-worker");
+        t.setDaemon(true);
+        return t;
+    });
+    private int runningTasks;
     
     private JPanel mainPanel;
     private CardLayout cardLayout;
@@ -21,15 +40,32 @@ public class CRMGui extends JFrame {
     private JPanel customerPanel;
     private JPanel productPanel;
     private JPanel orderPanel;
+    private JPanel reportsPanel;
+    
+    // Table models, kept so dialogs can announce the rows they changed
+    private EntityTableModel<Customer> customerTableModel;
+    private EntityTableModel<Product> productTableModel;
+    private EntityTableModel<Order> orderTableModel;
+    
+    // Most recent orders listed in the customer details
+    private static final int ORDER_HISTORY_SHOWN = 15;
+    
+    // Search bar queries; while one is set its table shows the best matches instead of
+    // every row. Read by the worker thread.
+    private static final int SEARCH_LIMIT = 1000;
+    private volatile String customerQuery = "";
+    private volatile String productQuery = "";
     
     // Status bar
     private JLabel statusLabel;
     
-    public CRMGui(CustomerService customerService, ProductService productService, OrderService orderService) {
-        this.customerService = customerService;
-        this.productService = productService;
-        this.orderService = orderService;
-        
+    // Home panel statistics, refreshed together with the status bar
+    private JLabel customersLabel;
+    private JLabel productsLabel;
+    private JLabel ordersLabel;
+    private JLabel salesLabel;
+    
+    public CRMGui() {
         // Setup the main frame
         setTitle("CRM Management System");
         setSize(950, 650);
@@ -43,49 +79,213 @@ public class CRMGui extends JFrame {
         // Create status bar
         JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         statusPanel.setBorder(BorderFactory.createEtchedBorder());
-        statusLabel = new JLabel("Ready");
+        statusLabel = new JLabel("Loading data...");
         statusLabel.setFont(new Font("Arial", Font.PLAIN, 12));
         statusPanel.add(statusLabel);
         
+        // Shown until the data has loaded
+        JPanel loadingPanel = new JPanel(new GridBagLayout());
+        JPanel loadingContent = new JPanel(new BorderLayout(10, 10));
+        JLabel loadingLabel = new JLabel("Loading customers, products and orders...", JLabel.CENTER);
+        loadingLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        JProgressBar loadingBar = new JProgressBar();
+        loadingBar.setIndeterminate(true);
+        loadingContent.add(loadingLabel, BorderLayout.NORTH);
+        loadingContent.add(loadingBar, BorderLayout.CENTER);
+        loadingPanel.add(loadingContent);
+        mainPanel.add(loadingPanel, "Loading");
+        cardLayout.show(mainPanel, "Loading");
+        
+        // Add main panel and status bar to frame
+        add(mainPanel, BorderLayout.CENTER);
+        add(statusPanel, BorderLayout.SOUTH);
+    }
+    
+    // Load the services in the background, then build the panels on the EDT
+    public void loadData() {
+        inBackground(() -> {
+            CustomerService customers = new CustomerService();
+            ProductService products = new ProductService();
+            OrderService orders = new OrderService(customers, products);
+            // Initialize sample data if storage is empty
+            DataStorage.initializeSampleData(customers, products, orders);
+            customerService = customers;
+            productService = products;
+            orderService = orders;
+            salesReports = new SalesReports(orders, customers, products);
+            return null;
+        }, loaded -> showPanels(), this::showLoadFailure);
+    }
+    
+    // Replaces the loading card with what went wrong, e.g. a damaged data file, and lets
+    // the user try again (say, after restoring a backup) or quit
+    private void showLoadFailure(Throwable failure) {
+        statusLabel.setText("Could not load data");
+        JPanel errorPanel = new JPanel(new GridBagLayout());
+        JPanel errorContent = new JPanel(new BorderLayout(10, 10));
+        JLabel errorLabel = new JLabel("Could not load customers, products and orders", JLabel.CENTER);
+        errorLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        JTextArea errorText = new JTextArea(failure.getMessage() != null ? failure.getMessage() : failure.toString());
+        errorText.setEditable(false);
+        errorText.setLineWrap(true);
+        errorText.setWrapStyleWord(true);
+        errorText.setColumns(50);
+        errorText.setOpaque(false);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JButton retryButton = new JButton("Retry");
+        JButton exitButton = new JButton("Exit");
+        buttons.add(retryButton);
+        buttons.add(exitButton);
+        errorContent.add(errorLabel, BorderLayout.NORTH);
+        errorContent.add(errorText, BorderLayout.CENTER);
+        errorContent.add(buttons, BorderLayout.SOUTH);
+        errorPanel.add(errorContent);
+        mainPanel.add(errorPanel, "LoadFailed");
+        cardLayout.show(mainPanel, "LoadFailed");
+        
+        retryButton.addActionListener(e -> {
+            mainPanel.remove(errorPanel);
+            statusLabel.setText("Loading data...");
+            cardLayout.show(mainPanel, "Loading");
+            loadData();
+        });
+        exitButton.addActionListener(e -> {
+            dispose();
+            System.exit(1);
+        });
+    }
+    
+    private void showPanels() {
         // Create panels for different sections
         createHomePanel();
         createCustomerPanel();
         createProductPanel();
         createOrderPanel();
+        createReportsPanel();
         
         // Add panels to main panel
         mainPanel.add(homePanel, "Home");
         mainPanel.add(customerPanel, "Customers");
         mainPanel.add(productPanel, "Products");
         mainPanel.add(orderPanel, "Orders");
+        mainPanel.add(reportsPanel, "Reports");
         
         // Show home panel by default
         cardLayout.show(mainPanel, "Home");
         
-        // Add main panel and status bar to frame
-        add(mainPanel, BorderLayout.CENTER);
-        add(statusPanel, BorderLayout.SOUTH);
-        
         // Set status based on data
         updateStatus();
+        reloadTables();
     }
     
-    private void updateStatus() {
-        int customerCount = customerService.getAllCustomers().size();
-        int productCount = productService.getAllProducts().size();
-        int orderCount = orderService.getAllOrders().size();
-        
-        // Get total value of all orders
-        double totalOrderValue = 0.0;
-        for (Order order : orderService.getAllOrders()) {
-            totalOrderValue += order.getTotalAmount();
+    // Run a service call on the worker thread and pass its result to onDone on the EDT.
+    // A wait cursor is shown while any call is running.
+    private <T> void inBackground(Callable<T> task, Consumer<T> onDone) {
+        inBackground(task, onDone, failure -> JOptionPane.showMessageDialog(CRMGui.this,
+                "Operation failed: " + failure, "Error", JOptionPane.ERROR_MESSAGE));
+    }
+    
+    // As above, with onFailure given what the call threw instead of an error dialog
+    private <T> void inBackground(Callable<T> task, Consumer<T> onDone, Consumer<Throwable> onFailure) {
+        if (runningTasks++ == 0) {
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         }
+        worker.execute(new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return task.call();
+            }
+            
+            @Override
+            protected void done() {
+                if (--runningTasks == 0) {
+                    setCursor(Cursor.getDefaultCursor());
+                }
+                T result;
+                try {
+                    result = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    onFailure.accept(e.getCause());
+                    return;
+                }
+                onDone.accept(result);
+            }
+        });
+    }
+    
+    private void reloadTables() {
+        reloadCustomers();
+        reloadProducts();
+        orderTableModel.showTable(orderService::getOrderCount, orderService::getOrdersAt);
+    }
+    
+    // Shows every customer, or the best matches while a search is set. A search runs in
+    // the background; the whole table needs no listing, its rows are read as they're painted.
+    // Both go through the worker, so they show in the order they were asked for.
+    private void reloadCustomers() {
+        String query = customerQuery;
+        inBackground(() -> query.isEmpty() ? null : customerService.searchCustomers(query, SEARCH_LIMIT), results -> {
+            if (results == null) {
+                customerTableModel.showTable(customerService::getCustomerCount, customerService::getCustomersAt);
+            } else {
+                customerTableModel.showRows(results);
+            }
+        });
+    }
+    
+    private void reloadProducts() {
+        String query = productQuery;
+        inBackground(() -> query.isEmpty() ? null : productService.searchProducts(query, SEARCH_LIMIT), results -> {
+            if (results == null) {
+                productTableModel.showTable(productService::getProductCount, productService::getProductsAt);
+            } else {
+                productTableModel.showRows(results);
+            }
+        });
+    }
+    
+    // Search field over a table; Enter or "Search" runs the query, "Clear" shows all rows again
+    private JPanel createSearchBar(Consumer<String> search) {
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JTextField searchField = new JTextField(30);
+        searchField.setToolTipText("Words to match, prefix* or \"a phrase\"");
+        JButton searchButton = new JButton("Search");
+        JButton clearButton = new JButton("Clear");
+        
+        searchField.addActionListener(e -> search.accept(searchField.getText().trim()));
+        searchButton.addActionListener(e -> search.accept(searchField.getText().trim()));
+        clearButton.addActionListener(e -> {
+            searchField.setText("");
+            search.accept("");
+        });
+        
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(searchField);
+        searchPanel.add(searchButton);
+        searchPanel.add(clearButton);
+        return searchPanel;
+    }
+    
+    private void updateStatus() {
+        int customerCount = customerService.getCustomerCount();
+        int productCount = productService.getProductCount();
+        int orderCount = orderService.getOrderCount();
+        
+        // Total value of all orders, maintained by the order service as orders change
+        String totalOrderValue = Money.format(orderService.getTotalSalesCents());
         
         // Format status with counts and total sales value
-        String status = String.format("Status: Ready | Customers: %d | Products: %d | Orders: %d | Total Sales: $%.2f", 
+        String status = String.format("Status: Ready | Customers: %d | Products: %d | Orders: %d | Total Sales: %s", 
                                      customerCount, productCount, orderCount, totalOrderValue);
         
         statusLabel.setText(status);
+        customersLabel.setText("Customers: " + customerCount);
+        productsLabel.setText("Products: " + productCount);
+        ordersLabel.setText("Orders: " + orderCount);
+        salesLabel.setText("Total Sales: " + totalOrderValue);
     }
     
     private void createHomePanel() {
@@ -112,7 +312,7 @@ public class CRMGui extends JFrame {
         homePanel.add(titlePanel, BorderLayout.NORTH);
         
         // Button panel with improved styling
-        JPanel buttonPanel = new JPanel(new GridLayout(3, 1, 15, 20));
+        JPanel buttonPanel = new JPanel(new GridLayout(5, 1, 15, 20));
         buttonPanel.setBorder(BorderFactory.createEmptyBorder(30, 100, 30, 100));
         
         JButton customerButton = new JButton("Customer Management");
@@ -145,9 +345,25 @@ public class CRMGui extends JFrame {
             updateStatus();
         });
         
+        JButton reportsButton = new JButton("Sales Reports");
+        reportsButton.setFont(new Font("Arial", Font.BOLD, 16));
+        reportsButton.setBackground(new Color(106, 27, 154));
+        reportsButton.setForeground(Color.BLACK);
+        reportsButton.setFocusPainted(false);
+        reportsButton.addActionListener(e -> cardLayout.show(mainPanel, "Reports"));
+        
+        JButton importButton = new JButton("Import from CSV");
+        importButton.setFont(new Font("Arial", Font.BOLD, 16));
+        importButton.setBackground(new Color(158, 158, 158));
+        importButton.setForeground(Color.BLACK);
+        importButton.setFocusPainted(false);
+        importButton.addActionListener(e -> showImportDialog());
+        
         buttonPanel.add(customerButton);
         buttonPanel.add(productButton);
         buttonPanel.add(orderButton);
+        buttonPanel.add(reportsButton);
+        buttonPanel.add(importButton);
         
         homePanel.add(buttonPanel, BorderLayout.CENTER);
         
@@ -155,28 +371,201 @@ public class CRMGui extends JFrame {
         JPanel summaryPanel = new JPanel(new BorderLayout(10, 10));
         summaryPanel.setBorder(BorderFactory.createTitledBorder("System Statistics"));
         
-        JPanel statsPanel = new JPanel(new GridLayout(1, 3, 20, 0));
+        JPanel statsPanel = new JPanel(new GridLayout(1, 4, 20, 0));
         
-        JLabel customersLabel = new JLabel("Customers: " + customerService.getAllCustomers().size(), JLabel.CENTER);
+        customersLabel = new JLabel("Customers: " + customerService.getCustomerCount(), JLabel.CENTER);
         customersLabel.setFont(new Font("Arial", Font.BOLD, 14));
         customersLabel.setForeground(Color.BLACK);
         
-        JLabel productsLabel = new JLabel("Products: " + productService.getAllProducts().size(), JLabel.CENTER);
+        productsLabel = new JLabel("Products: " + productService.getProductCount(), JLabel.CENTER);
         productsLabel.setFont(new Font("Arial", Font.BOLD, 14));
         productsLabel.setForeground(Color.BLACK);
         
-        JLabel ordersLabel = new JLabel("Orders: " + orderService.getAllOrders().size(), JLabel.CENTER);
+        ordersLabel = new JLabel("Orders: " + orderService.getOrderCount(), JLabel.CENTER);
         ordersLabel.setFont(new Font("Arial", Font.BOLD, 14));
         ordersLabel.setForeground(Color.BLACK);
         
+        salesLabel = new JLabel("Total Sales: " + Money.format(orderService.getTotalSalesCents()), JLabel.CENTER);
+        salesLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        salesLabel.setForeground(Color.BLACK);
+        
         statsPanel.add(customersLabel);
         statsPanel.add(productsLabel);
         statsPanel.add(ordersLabel);
+        statsPanel.add(salesLabel);
         
         summaryPanel.add(statsPanel, BorderLayout.CENTER);
         homePanel.add(summaryPanel, BorderLayout.SOUTH);
     }
     
+    private void createReportsPanel() {
+        reportsPanel = new JPanel(new BorderLayout(10, 10));
+        reportsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        // Title panel
+        JPanel titlePanel = new JPanel();
+        titlePanel.setBackground(new Color(106, 27, 154));
+        titlePanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        JLabel titleLabel = new JLabel("Sales Reports");
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 20));
+        titleLabel.setForeground(Color.WHITE);
+        titlePanel.add(titleLabel);
+        
+        // Back button
+        JButton backButton = new JButton("Back to Home");
+        backButton.addActionListener(e -> {
+            cardLayout.show(mainPanel, "Home");
+            updateStatus();
+        });
+        titlePanel.add(backButton);
+        
+        reportsPanel.add(titlePanel, BorderLayout.NORTH);
+        
+        // Result table, replaced with each report's columns and rows
+        DefaultTableModel reportModel = new DefaultTableModel() {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable reportTable = new JTable(reportModel);
+        reportTable.setRowHeight(25);
+        reportTable.setGridColor(new Color(240, 240, 240));
+        
+        JLabel reportTitle = new JLabel("Choose a report below");
+        reportTitle.setFont(new Font("Arial", Font.BOLD, 16));
+        JLabel timingLabel = new JLabel(" ");
+        
+        JPanel tablePanel = new JPanel(new BorderLayout(5, 5));
+        tablePanel.add(reportTitle, BorderLayout.NORTH);
+        tablePanel.add(new JScrollPane(reportTable), BorderLayout.CENTER);
+        tablePanel.add(timingLabel, BorderLayout.SOUTH);
+        
+        // Button panel
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.setBackground(new Color(240, 240, 240));
+        
+        // Bounded by what the reports accept
+        JSpinner topSpinner = new JSpinner(new SpinnerNumberModel(10, 1, SalesReports.MAX_TOP, 1));
+        JSpinner daysSpinner = new JSpinner(new SpinnerNumberModel(30, 1, SalesReports.MAX_DAYS, 1));
+        
+        JButton customersButton = new JButton("Top Customers");
+        customersButton.setBackground(new Color(46, 125, 50));
+        customersButton.setForeground(Color.BLACK);
+        
+        JButton productsButton = new JButton("Top Products");
+        productsButton.setBackground(new Color(21, 101, 192));
+        productsButton.setForeground(Color.BLACK);
+        
+        JButton orderValueButton = new JButton("Order Value");
+        orderValueButton.setBackground(new Color(183, 28, 28));
+        orderValueButton.setForeground(Color.BLACK);
+        
+        JButton dailyButton = new JButton("Daily Sales");
+        dailyButton.setBackground(new Color(106, 27, 154));
+        dailyButton.setForeground(Color.BLACK);
+        
+        Consumer<SalesReports.Report> showReport = report -> {
+            reportModel.setDataVector(report.rows.toArray(new Object[0][]), report.columns);
+            reportTitle.setText(report.title);
+            timingLabel.setText("Computed over " + report.timing());
+        };
+        customersButton.addActionListener(e -> {
+            int n = (int) topSpinner.getValue();
+            inBackground(() -> salesReports.topCustomers(n), showReport);
+        });
+        productsButton.addActionListener(e -> {
+            int n = (int) topSpinner.getValue();
+            inBackground(() -> salesReports.topProducts(n), showReport);
+        });
+        orderValueButton.addActionListener(e -> inBackground(salesReports::orderValue, showReport));
+        dailyButton.addActionListener(e -> {
+            int days = (int) daysSpinner.getValue();
+            inBackground(() -> salesReports.dailySales(days), showReport);
+        });
+        
+        buttonPanel.add(new JLabel("Top:"));
+        buttonPanel.add(topSpinner);
+        buttonPanel.add(customersButton);
+        buttonPanel.add(productsButton);
+        buttonPanel.add(orderValueButton);
+        buttonPanel.add(new JLabel("Days:"));
+        buttonPanel.add(daysSpinner);
+        buttonPanel.add(dailyButton);
+        
+        reportsPanel.add(tablePanel, BorderLayout.CENTER);
+        reportsPanel.add(buttonPanel, BorderLayout.SOUTH);
+    }
+    
+    private void showImportDialog() {
+        CsvImporter.Kind[] kinds = CsvImporter.Kind.values();
+        String[] options = {"Customers", "Products", "Orders"};
+        int choice = JOptionPane.showOptionDialog(this, "What do you want to import?", "Import from CSV",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice < 0) {
+            return;
+        }
+        CsvImporter.Kind kind = kinds[choice];
+        
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import " + options[choice] + " (" + kind.columns() + ")");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        
+        // Progress dialog, updated from the import running in the background
+        JDialog dialog = new JDialog(this, "Importing " + file.getName(), false);
+        JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        JLabel progressLabel = new JLabel("Starting import...");
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 10));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(progressLabel, BorderLayout.SOUTH);
+        dialog.add(progressPanel);
+        dialog.setSize(450, 120);
+        dialog.setLocationRelativeTo(this);
+        dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        dialog.setVisible(true);
+        
+        CsvImporter importer = new CsvImporter(customerService, productService, orderService);
+        new SwingWorker<CsvImporter.Progress, CsvImporter.Progress>() {
+            @Override
+            protected CsvImporter.Progress doInBackground() throws IOException {
+                return importer.importFile(kind, file, this::publish);
+            }
+            
+            @Override
+            protected void process(List<CsvImporter.Progress> updates) {
+                CsvImporter.Progress latest = updates.get(updates.size() - 1);
+                progressBar.setValue(latest.percent());
+                progressLabel.setText(latest.toString());
+            }
+            
+            @Override
+            protected void done() {
+                dialog.dispose();
+                try {
+                    CsvImporter.Progress result = get();
+                    StringBuilder message = new StringBuilder("Import finished: " + result);
+                    for (String error : result.errors) {
+                        message.append('\n').append(error);
+                    }
+                    JOptionPane.showMessageDialog(CRMGui.this, message.toString(), "Import Complete",
+                            result.rejected == 0 ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(CRMGui.this, "Import failed: " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                reloadTables();
+                updateStatus();
+            }
+        }.execute();
+    }
+    
     private void createCustomerPanel() {
         customerPanel = new JPanel(new BorderLayout(10, 10));
         customerPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
@@ -203,20 +592,23 @@ public class CRMGui extends JFrame {
         
         // Table panel
         JPanel tablePanel = new JPanel(new BorderLayout());
-        String[] columnNames = {"ID", "Name", "Contact Person", "Phone", "Email"};
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;  // Make all cells non-editable
-            }
-        };
-        
-        JTable customerTable = new JTable(tableModel);
+        customerTableModel = new EntityTableModel<Customer>()
+                .column("ID", Customer::getId)
+                .column("Name", Customer::getName)
+                .column("Contact Person", Customer::getContactPerson)
+                .column("Phone", Customer::getPhone)
+                .column("Email", Customer::getEmail);
+        
+        JTable customerTable = new JTable(customerTableModel);
         customerTable.setRowHeight(25);
         customerTable.setGridColor(new Color(240, 240, 240));
         customerTable.setSelectionBackground(new Color(184, 207, 229));
         
         JScrollPane scrollPane = new JScrollPane(customerTable);
+        tablePanel.add(createSearchBar(query -> {
+            customerQuery = query;
+            reloadCustomers();
+        }), BorderLayout.NORTH);
         tablePanel.add(scrollPane, BorderLayout.CENTER);
         
         // Button panel
@@ -268,8 +660,6 @@ public class CRMGui extends JFrame {
                 Customer customer = customerService.getCustomerById(id);
                 if (customer != null) {
                     showUpdateCustomerDialog(customer);
-                    refreshCustomerTable(tableModel);
-                    updateStatus();
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a customer", "No Selection", JOptionPane.WARNING_MESSAGE);
@@ -287,9 +677,17 @@ public class CRMGui extends JFrame {
                         JOptionPane.WARNING_MESSAGE);
                 
                 if (confirm == JOptionPane.YES_OPTION) {
-                    customerService.deleteCustomer(id);
-                    refreshCustomerTable(tableModel);
-                    updateStatus();
+                    inBackground(() -> customerService.deleteCustomer(id), deleted -> {
+                        if (!deleted) {
+                            int orderCount = orderService.getCustomerOrderCount(id);
+                            JOptionPane.showMessageDialog(this, orderCount > 0
+                                    ? "This customer has " + orderCount + " order(s) and can't be deleted"
+                                    : "The customer no longer exists", "Delete Failed", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        customerTableModel.entityRemoved(id);
+                        updateStatus();
+                    });
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a customer", "No Selection", JOptionPane.WARNING_MESSAGE);
@@ -297,7 +695,7 @@ public class CRMGui extends JFrame {
         });
         
         refreshButton.addActionListener(e -> {
-            refreshCustomerTable(tableModel);
+            reloadCustomers();
             updateStatus();
         });
         
@@ -309,9 +707,6 @@ public class CRMGui extends JFrame {
         
         customerPanel.add(tablePanel, BorderLayout.CENTER);
         customerPanel.add(buttonPanel, BorderLayout.SOUTH);
-        
-        // Initial load of customers
-        refreshCustomerTable(tableModel);
     }
     
     private String formatCustomerDetails(Customer customer) {
@@ -324,22 +719,29 @@ public class CRMGui extends JFrame {
         sb.append("<p><b>Contact Person:</b> ").append(customer.getContactPerson()).append("</p>");
         sb.append("<p><b>Phone:</b> ").append(customer.getPhone()).append("</p>");
         sb.append("<p><b>Email:</b> ").append(customer.getEmail()).append("</p>");
-        sb.append("</div></div></html>");
-        return sb.toString();
-    }
-    
-    private void refreshCustomerTable(DefaultTableModel tableModel) {
-        tableModel.setRowCount(0);
-        List<Customer> customers = customerService.getAllCustomers();
-        for (Customer customer : customers) {
-            tableModel.addRow(new Object[]{
-                customer.getId(),
-                customer.getName(),
-                customer.getContactPerson(),
-                customer.getPhone(),
-                customer.getEmail()
-            });
+        sb.append("<p><b>Orders:</b> ").append(orderService.getCustomerOrderCount(customer.getId())).append("</p>");
+        Money.append(sb.append("<p><b>Total Revenue:</b> "), orderService.getCustomerRevenueCents(customer.getId()), false).append("</p>");
+        sb.append("</div>");
+        
+        // Order history, newest first
+        List<Order> orders = orderService.getOrdersForCustomer(customer.getId());
+        if (!orders.isEmpty()) {
+            sb.append("<h3 style='color: #2E7D32;'>Order History</h3>");
+            sb.append("<table cellpadding='3'><tr><th align='left'>Order</th><th align='left'>Created</th><th align='right'>Items</th><th align='right'>Total</th></tr>");
+            for (int i = orders.size() - 1; i >= Math.max(0, orders.size() - ORDER_HISTORY_SHOWN); i--) {
+                Order order = orders.get(i);
+                sb.append("<tr><td>#").append(order.getId()).append("</td>");
+                sb.append("<td>").append(order.getCreatedText()).append("</td>");
+                sb.append("<td align='right'>").append(order.getOrderItems().size()).append("</td>");
+                sb.append("<td align='right'>").append(order.getTotalText()).append("</td></tr>");
+            }
+            sb.append("</table>");
+            if (orders.size() > ORDER_HISTORY_SHOWN) {
+                sb.append("<p>... and ").append(orders.size() - ORDER_HISTORY_SHOWN).append(" older order(s)</p>");
+            }
         }
+        sb.append("</div></html>");
+        return sb.toString();
     }
     
     private void showAddCustomerDialog() {
@@ -374,10 +776,20 @@ public class CRMGui extends JFrame {
             String email = emailField.getText().trim();
             
             if (!name.isEmpty()) {
-                customerService.addCustomer(new Customer(0, name, contact, phone, email));
-                refreshCustomerTable((DefaultTableModel) ((JTable) ((JScrollPane) customerPanel.getComponent(1)).getViewport().getView()).getModel());
-                updateStatus();
-                JOptionPane.showMessageDialog(this, "Customer added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                Customer customer = new Customer(0, name, contact, phone, email);
+                inBackground(() -> customerService.addCustomer(customer), added -> {
+                    if (!added) {
+                        JOptionPane.showMessageDialog(this, "Another customer already has this email or phone number", "Duplicate Customer", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    if (customerQuery.isEmpty()) {
+                        customerTableModel.entityAdded(customer);
+                    } else {
+                        reloadCustomers();
+                    }
+                    updateStatus();
+                    JOptionPane.showMessageDialog(this, "Customer added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                });
             } else {
                 JOptionPane.showMessageDialog(this, "Company name cannot be empty", "Input Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -416,10 +828,15 @@ public class CRMGui extends JFrame {
             String email = emailField.getText().trim();
             
             if (!name.isEmpty()) {
-                customerService.updateCustomer(customer.getId(), name, contact, phone, email);
-                refreshCustomerTable((DefaultTableModel) ((JTable) ((JScrollPane) customerPanel.getComponent(1)).getViewport().getView()).getModel());
-                updateStatus();
-                JOptionPane.showMessageDialog(this, "Customer updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                inBackground(() -> customerService.updateCustomer(customer.getId(), name, contact, phone, email), updated -> {
+                    if (!updated) {
+                        JOptionPane.showMessageDialog(this, "The customer was deleted, or another customer already has this email or phone number", "Update Failed", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    customerTableModel.entityUpdated(customer);
+                    updateStatus();
+                    JOptionPane.showMessageDialog(this, "Customer updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                });
             } else {
                 JOptionPane.showMessageDialog(this, "Company name cannot be empty", "Input Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -452,20 +869,22 @@ public class CRMGui extends JFrame {
         
         // Table panel
         JPanel tablePanel = new JPanel(new BorderLayout());
-        String[] columnNames = {"ID", "Name", "Description", "Price"};
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;  // Make all cells non-editable
-            }
-        };
+        productTableModel = new EntityTableModel<Product>()
+                .column("ID", Product::getId)
+                .column("Name", Product::getName)
+                .column("Description", Product::getDescription)
+                .column("Price", product -> Money.format(product.getPriceCents()));
         
-        JTable productTable = new JTable(tableModel);
+        JTable productTable = new JTable(productTableModel);
         productTable.setRowHeight(25);
         productTable.setGridColor(new Color(240, 240, 240));
         productTable.setSelectionBackground(new Color(184, 207, 229));
         
         JScrollPane scrollPane = new JScrollPane(productTable);
+        tablePanel.add(createSearchBar(query -> {
+            productQuery = query;
+            reloadProducts();
+        }), BorderLayout.NORTH);
         tablePanel.add(scrollPane, BorderLayout.CENTER);
         
         // Button panel
@@ -517,8 +936,6 @@ public class CRMGui extends JFrame {
                 Product product = productService.getProductById(id);
                 if (product != null) {
                     showUpdateProductDialog(product);
-                    refreshProductTable(tableModel);
-                    updateStatus();
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a product", "No Selection", JOptionPane.WARNING_MESSAGE);
@@ -536,9 +953,17 @@ public class CRMGui extends JFrame {
                         JOptionPane.WARNING_MESSAGE);
                 
                 if (confirm == JOptionPane.YES_OPTION) {
-                    productService.deleteProduct(id);
-                    refreshProductTable(tableModel);
-                    updateStatus();
+                    inBackground(() -> productService.deleteProduct(id), deleted -> {
+                        if (!deleted) {
+                            int orderCount = orderService.getProductOrderCount(id);
+                            JOptionPane.showMessageDialog(this, orderCount > 0
+                                    ? "This product is in " + orderCount + " order(s) and can't be deleted"
+                                    : "The product no longer exists", "Delete Failed", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        productTableModel.entityRemoved(id);
+                        updateStatus();
+                    });
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a product", "No Selection", JOptionPane.WARNING_MESSAGE);
@@ -546,7 +971,7 @@ public class CRMGui extends JFrame {
         });
         
         refreshButton.addActionListener(e -> {
-            refreshProductTable(tableModel);
+            reloadProducts();
             updateStatus();
         });
         
@@ -558,9 +983,6 @@ public class CRMGui extends JFrame {
         
         productPanel.add(tablePanel, BorderLayout.CENTER);
         productPanel.add(buttonPanel, BorderLayout.SOUTH);
-        
-        // Initial load of products
-        refreshProductTable(tableModel);
     }
     
     private String formatProductDetails(Product product) {
@@ -571,24 +993,14 @@ public class CRMGui extends JFrame {
         sb.append("<p><b>ID:</b> ").append(product.getId()).append("</p>");
         sb.append("<p><b>Name:</b> ").append(product.getName()).append("</p>");
         sb.append("<p><b>Description:</b> ").append(product.getDescription()).append("</p>");
-        sb.append("<p><b>Price:</b> $").append(String.format("%.2f", product.getPrice())).append("</p>");
+        Money.append(sb.append("<p><b>Price:</b> "), product.getPriceCents(), false).append("</p>");
+        sb.append("<p><b>Orders:</b> ").append(orderService.getProductOrderCount(product.getId())).append("</p>");
+        sb.append("<p><b>Units Sold:</b> ").append(orderService.getProductUnitsSold(product.getId())).append("</p>");
+        Money.append(sb.append("<p><b>Revenue:</b> "), orderService.getProductRevenueCents(product.getId()), false).append("</p>");
         sb.append("</div></div></html>");
         return sb.toString();
     }
     
-    private void refreshProductTable(DefaultTableModel tableModel) {
-        tableModel.setRowCount(0);
-        List<Product> products = productService.getAllProducts();
-        for (Product product : products) {
-            tableModel.addRow(new Object[]{
-                product.getId(),
-                product.getName(),
-                product.getDescription(),
-                String.format("$%.2f", product.getPrice())
-            });
-        }
-    }
-    
     private void showAddProductDialog() {
         JPanel panel = new JPanel(new GridLayout(0, 1, 5, 10));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
@@ -618,11 +1030,20 @@ public class CRMGui extends JFrame {
             
             if (!name.isEmpty() && !priceText.isEmpty()) {
                 try {
-                    double price = Double.parseDouble(priceText);
-                    productService.addProduct(new Product(0, name, desc, price));
-                    refreshProductTable((DefaultTableModel) ((JTable) ((JScrollPane) productPanel.getComponent(1)).getViewport().getView()).getModel());
-                    updateStatus();
-                    JOptionPane.showMessageDialog(this, "Product added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    long price = Money.parse(priceText);
+                    Product product = new Product(0, name, desc, price);
+                    inBackground(() -> {
+                        productService.addProduct(product);
+                        return product;
+                    }, added -> {
+                        if (productQuery.isEmpty()) {
+                            productTableModel.entityAdded(added);
+                        } else {
+                            reloadProducts();
+                        }
+                        updateStatus();
+                        JOptionPane.showMessageDialog(this, "Product added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    });
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(this, "Price must be a valid number", "Input Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -642,7 +1063,7 @@ public class CRMGui extends JFrame {
         
         JTextField nameField = new JTextField(product.getName(), 20);
         JTextField descField = new JTextField(product.getDescription(), 20);
-        JTextField priceField = new JTextField(String.valueOf(product.getPrice()), 20);
+        JTextField priceField = new JTextField(Money.toPlainString(product.getPriceCents()), 20);
         
         panel.add(headerLabel);
         panel.add(new JLabel("Name:"));
@@ -661,11 +1082,15 @@ public class CRMGui extends JFrame {
             
             if (!name.isEmpty() && !priceText.isEmpty()) {
                 try {
-                    double price = Double.parseDouble(priceText);
-                    productService.updateProduct(product.getId(), name, desc, price);
-                    refreshProductTable((DefaultTableModel) ((JTable) ((JScrollPane) productPanel.getComponent(1)).getViewport().getView()).getModel());
-                    updateStatus();
-                    JOptionPane.showMessageDialog(this, "Product updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    long price = Money.parse(priceText);
+                    inBackground(() -> {
+                        productService.updateProduct(product.getId(), name, desc, price);
+                        return product;
+                    }, updated -> {
+                        productTableModel.entityUpdated(updated);
+                        updateStatus();
+                        JOptionPane.showMessageDialog(this, "Product updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    });
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(this, "Price must be a valid number", "Input Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -701,15 +1126,14 @@ public class CRMGui extends JFrame {
         
         // Table panel
         JPanel tablePanel = new JPanel(new BorderLayout());
-        String[] columnNames = {"ID", "Order Name", "Customer", "Total Amount"};
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;  // Make all cells non-editable
-            }
-        };
-        
-        JTable orderTable = new JTable(tableModel);
+        orderTableModel = new EntityTableModel<Order>()
+                .column("ID", Order::getId)
+                .column("Order Name", Order::getName)
+                .column("Customer", Order::getCustomerName)
+                .column("Created", Order::getCreatedText)
+                .column("Total Amount", Order::getTotalText);
+        
+        JTable orderTable = new JTable(orderTableModel);
         orderTable.setRowHeight(25);
         orderTable.setGridColor(new Color(240, 240, 240));
         orderTable.setSelectionBackground(new Color(184, 207, 229));
@@ -746,8 +1170,6 @@ public class CRMGui extends JFrame {
                 Order order = orderService.getOrderById(id);
                 if (order != null) {
                     showAddProductToOrderDialog(order);
-                    refreshOrderTable(tableModel);
-                    updateStatus();
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select an order", "No Selection", JOptionPane.WARNING_MESSAGE);
@@ -775,7 +1197,7 @@ public class CRMGui extends JFrame {
         });
         
         refreshButton.addActionListener(e -> {
-            refreshOrderTable(tableModel);
+            orderTableModel.refresh();
             updateStatus();
         });
         
@@ -786,54 +1208,42 @@ public class CRMGui extends JFrame {
         
         orderPanel.add(tablePanel, BorderLayout.CENTER);
         orderPanel.add(buttonPanel, BorderLayout.SOUTH);
-        
-        // Initial load of orders
-        refreshOrderTable(tableModel);
     }
     
     private String formatOrderDetails(Order order) {
         StringBuilder sb = new StringBuilder();
         sb.append("Order ID: ").append(order.getId()).append("\n");
         sb.append("Name: ").append(order.getName()).append("\n");
-        sb.append("Customer: ").append(order.getCustomer().getName()).append("\n\n");
+        sb.append("Customer: ").append(order.getCustomerName()).append("\n");
+        sb.append("Created: ").append(order.getCreatedText()).append("\n\n");
         
         sb.append("Order Items:\n");
         sb.append("--------------------------------------------------\n");
-        sb.append(String.format("%-20s %-8s %-12s %-12s\n", "Product", "Qty", "Unit Price", "Subtotal"));
+        sb.append("Product              Qty      Unit Price   Subtotal    \n");
         sb.append("--------------------------------------------------\n");
         
+        // Columns as "%-20s %-8d %-12s %-13s", padded in place
         for (OrderItem item : order.getOrderItems()) {
-            double unitPrice = item.getProduct().getPrice();
-            double subtotal = item.getQuantity() * unitPrice;
-            sb.append(String.format("%-20s %-8d $%-11.2f $%-12.2f\n", 
-                    item.getProduct().getName(),
-                    item.getQuantity(),
-                    unitPrice,
-                    subtotal));
+            int column = sb.length();
+            TextFormat.padTo(sb.append(item.getProductName()), column, 20).append(' ');
+            column = sb.length();
+            TextFormat.padTo(sb.append(item.getQuantity()), column, 8).append(' ');
+            column = sb.length();
+            TextFormat.padTo(Money.append(sb, item.getUnitPriceCents(), false), column, 12).append(' ');
+            column = sb.length();
+            TextFormat.padTo(Money.append(sb, item.getSubtotalCents(), false), column, 13).append('\n');
         }
         
         sb.append("--------------------------------------------------\n");
-        sb.append(String.format("%-42s $%.2f\n", "Total:", order.getTotalAmount()));
+        int column = sb.length();
+        TextFormat.padTo(sb.append("Total:"), column, 42).append(' ');
+        Money.append(sb, order.getTotalCents(), false).append('\n');
         
         return sb.toString();
     }
     
-    private void refreshOrderTable(DefaultTableModel tableModel) {
-        tableModel.setRowCount(0);
-        List<Order> orders = orderService.getAllOrders();
-        for (Order order : orders) {
-            tableModel.addRow(new Object[]{
-                order.getId(),
-                order.getName(),
-                order.getCustomer().getName(),
-                String.format("$%.2f", order.getTotalAmount())
-            });
-        }
-    }
-    
     private void showCreateOrderDialog() {
-        List<Customer> customers = customerService.getAllCustomers();
-        if (customers.isEmpty()) {
+        if (customerService.getCustomerCount() == 0) {
             JOptionPane.showMessageDialog(this, "You need to add customers first", "No Customers", JOptionPane.WARNING_MESSAGE);
             return;
         }
@@ -845,49 +1255,40 @@ public class CRMGui extends JFrame {
         headerLabel.setFont(new Font("Arial", Font.BOLD, 16));
         headerLabel.setForeground(new Color(183, 28, 28));
         
-        // Create a combobox with customer names
-        DefaultComboBoxModel<Customer> model = new DefaultComboBoxModel<>();
-        for (Customer customer : customers) {
-            model.addElement(customer);
-        }
-        
-        JComboBox<Customer> customerBox = new JComboBox<>(model);
-        customerBox.setRenderer(new DefaultListCellRenderer() {
-            @Override
-            public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                if (value instanceof Customer) {
-                    setText(((Customer) value).getName());
-                }
-                return this;
-            }
-        });
+        // Type-ahead search over customer name, contact, email and phone
+        EntityPicker<Customer> customerPicker = new EntityPicker<>(
+                (text, limit) -> customerService.searchCustomers(SearchIndex.prefixQuery(text), limit),
+                customer -> customer.getName() + " (" + customer.getContactPerson() + ", " + customer.getEmail() + ")");
         
         JPanel headerPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         headerPanel.add(headerLabel);
         
         JPanel contentPanel = new JPanel(new BorderLayout(5, 10));
         contentPanel.add(new JLabel("Select Customer:"), BorderLayout.NORTH);
-        contentPanel.add(customerBox, BorderLayout.CENTER);
+        contentPanel.add(customerPicker, BorderLayout.CENTER);
         
         panel.add(headerPanel, BorderLayout.NORTH);
         panel.add(contentPanel, BorderLayout.CENTER);
         
         int result = JOptionPane.showConfirmDialog(this, panel, "Create Order", JOptionPane.OK_CANCEL_OPTION);
         if (result == JOptionPane.OK_OPTION) {
-            Customer selectedCustomer = (Customer) customerBox.getSelectedItem();
+            Customer selectedCustomer = customerPicker.getSelected();
             if (selectedCustomer != null) {
-                orderService.createOrder(selectedCustomer.getId());
-                refreshOrderTable((DefaultTableModel) ((JTable) ((JScrollPane) orderPanel.getComponent(1)).getViewport().getView()).getModel());
-                updateStatus();
-                JOptionPane.showMessageDialog(this, "Order created successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                inBackground(() -> orderService.createOrder(selectedCustomer.getId()), order -> {
+                    if (order == null) {
+                        JOptionPane.showMessageDialog(this, "Customer no longer exists", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    orderTableModel.entityAdded(order);
+                    updateStatus();
+                    JOptionPane.showMessageDialog(this, "Order created successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                });
             }
         }
     }
     
     private void showAddProductToOrderDialog(Order order) {
-        List<Product> products = productService.getAllProducts();
-        if (products.isEmpty()) {
+        if (productService.getProductCount() == 0) {
             JOptionPane.showMessageDialog(this, "You need to add products first", "No Products", JOptionPane.WARNING_MESSAGE);
             return;
         }
@@ -899,23 +1300,10 @@ public class CRMGui extends JFrame {
         headerLabel.setFont(new Font("Arial", Font.BOLD, 16));
         headerLabel.setForeground(new Color(33, 150, 243));
         
-        // Create a combobox with product names
-        DefaultComboBoxModel<Product> model = new DefaultComboBoxModel<>();
-        for (Product product : products) {
-            model.addElement(product);
-        }
-        
-        JComboBox<Product> productBox = new JComboBox<>(model);
-        productBox.setRenderer(new DefaultListCellRenderer() {
-            @Override
-            public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                if (value instanceof Product) {
-                    setText(((Product) value).getName() + " - $" + String.format("%.2f", ((Product) value).getPrice()));
-                }
-                return this;
-            }
-        });
+        // Type-ahead search over product name and description
+        EntityPicker<Product> productPicker = new EntityPicker<>(
+                (text, limit) -> productService.searchProducts(SearchIndex.prefixQuery(text), limit),
+                product -> product.getName() + " - " + Money.format(product.getPriceCents()));
         
         // Create spinner for quantity
         SpinnerNumberModel spinnerModel = new SpinnerNumberModel(1, 1, 100, 1);
@@ -924,25 +1312,34 @@ public class CRMGui extends JFrame {
         JPanel headerPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         headerPanel.add(headerLabel);
         
-        JPanel formPanel = new JPanel(new GridLayout(0, 1, 5, 10));
-        formPanel.add(new JLabel("Select Product:"));
-        formPanel.add(productBox);
-        formPanel.add(new JLabel("Quantity:"));
-        formPanel.add(quantitySpinner);
+        JPanel quantityPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        quantityPanel.add(new JLabel("Quantity:"));
+        quantityPanel.add(quantitySpinner);
+        
+        JPanel formPanel = new JPanel(new BorderLayout(5, 10));
+        formPanel.add(new JLabel("Select Product:"), BorderLayout.NORTH);
+        formPanel.add(productPicker, BorderLayout.CENTER);
+        formPanel.add(quantityPanel, BorderLayout.SOUTH);
         
         panel.add(headerPanel, BorderLayout.NORTH);
         panel.add(formPanel, BorderLayout.CENTER);
         
         int result = JOptionPane.showConfirmDialog(this, panel, "Add Product to Order", JOptionPane.OK_CANCEL_OPTION);
         if (result == JOptionPane.OK_OPTION) {
-            Product selectedProduct = (Product) productBox.getSelectedItem();
+            Product selectedProduct = productPicker.getSelected();
             int quantity = (int) quantitySpinner.getValue();
             
             if (selectedProduct != null && quantity > 0) {
-                orderService.addProductToOrder(order.getId(), selectedProduct.getId(), quantity);
-                refreshOrderTable((DefaultTableModel) ((JTable) ((JScrollPane) orderPanel.getComponent(1)).getViewport().getView()).getModel());
-                updateStatus();
-                JOptionPane.showMessageDialog(this, "Product added to order successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                inBackground(() -> orderService.addProductToOrder(order.getId(), selectedProduct.getId(), quantity), added -> {
+                    if (!added) {
+                        JOptionPane.showMessageDialog(this, "The order or product no longer exists",
+                                "Add Failed", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    orderTableModel.entityUpdated(order);
+                    updateStatus();
+                    JOptionPane.showMessageDialog(this, "Product added to order successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                });
             }
         }
     }
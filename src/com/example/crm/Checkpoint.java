@@ -0,0 +1,67 @@
+package com.example.crm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Point-in-time view of the data files, taken by DataStorage.checkpoint(). Every file is
+// hard-linked into the checkpoint directory rather than copied: snapshots are never
+// changed in place (a new one is renamed over the old) and logs only grow, so a link
+// keeps a file as it was at the checkpoint as long as no more than "length" bytes of a
+// log are read. The links also keep files that compaction renames or deletes later.
+// Where links aren't supported, the files are copied instead.
+final class Checkpoint {
+    // Where a log was at the checkpoint, oldest first (see EntityJournal)
+    enum Role { PREVIOUS, SEALED, ACTIVE }
+
+    static final class Log {
+        final Role role;
+        final File file;
+        final long length;
+
+        Log(Role role, File file, long length) {
+            this.role = role;
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+    // The files of one entity type: its snapshot (null if none was written yet) and logs
+    static final class StoreFiles {
+        final String label;
+        final File snapshot;
+        final List<Log> logs;
+
+        StoreFiles(String label, File snapshot, List<Log> logs) {
+            this.label = label;
+            this.snapshot = snapshot;
+            this.logs = Collections.unmodifiableList(logs);
+        }
+    }
+
+    private final File dir;
+    private final long createdAt;
+    private final List<StoreFiles> stores = new ArrayList<>();
+
+    Checkpoint(File dir, long createdAt) {
+        this.dir = dir;
+        this.createdAt = createdAt;
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    List<StoreFiles> getStores() {
+        return Collections.unmodifiableList(stores);
+    }
+
+    void add(StoreFiles store) {
+        stores.add(store);
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.crm;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Streams a CSV file into the services through their bulk APIs, so a large export is
+// read with bounded memory and persisted as a handful of journal batches. Columns:
+//   customers: name,contactPerson,phone,email
+//   products:  name,description,price
+//   orders:    orderRef,customerId,productId,quantity
+// Consecutive order rows with the same orderRef become one order. A first row whose
+// first column is the column name is treated as a header. Fields may be quoted, with
+// "" for a quote inside a quoted field.
+class CsvImporter {
+    private static final int BATCH_SIZE = 10_000;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    enum Kind {
+        CUSTOMERS("name", "contactPerson", "phone", "email"),
+        PRODUCTS("name", "description", "price"),
+        ORDERS("orderRef", "customerId", "productId", "quantity");
+
+        private final String[] columns;
+
+        Kind(String... columns) {
+            this.columns = columns;
+        }
+
+        String columns() {
+            return String.join(",", columns);
+        }
+    }
+
+    // State of an import, reported after every batch and returned at the end
+    static final class Progress {
+        final long rows;
+        final long imported;
+        final long rejected;
+        final long bytesRead;
+        final long totalBytes;
+        final long elapsedNanos;
+        // The first few rejected rows, with their line numbers
+        final List<String> errors;
+
+        Progress(long rows, long imported, long rejected, long bytesRead, long totalBytes, long elapsedNanos, List<String> errors) {
+            this.rows = rows;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.errors = errors;
+        }
+
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+        }
+
+        int percent() {
+            return totalBytes <= 0 ? 0 : (int) Math.min(100, bytesRead * 100 / totalBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d rows read (%d%%), %,d imported, %,d rejected - %,.0f rows/s",
+                    rows, percent(), imported, rejected, rowsPerSecond());
+        }
+    }
+
+    interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    private final CustomerService customerService;
+    private final ProductService productService;
+    private final OrderService orderService;
+
+    CsvImporter(CustomerService customerService, ProductService productService, OrderService orderService) {
+        this.customerService = customerService;
+        this.productService = productService;
+        this.orderService = orderService;
+    }
+
+    public Progress importFile(Kind kind, File file, ProgressListener listener) throws IOException {
+        try (CountingInputStream counted = new CountingInputStream(new FileInputStream(file));
+             LineNumberReader in = new LineNumberReader(new InputStreamReader(counted, StandardCharsets.UTF_8), 64 * 1024)) {
+            return new Run(kind, in, counted, file.length(), listener).execute();
+        }
+    }
+
+    // Reads a customer file into memory without adding anything, e.g. to check a lead
+    // list for duplicates first. Rows with the wrong number of columns are skipped.
+    static List<Customer> readCustomers(File file) throws IOException {
+        List<Customer> customers = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            List<String> fields;
+            boolean first = true;
+            while ((fields = readRecord(in)) != null) {
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    if (fields.get(0).equalsIgnoreCase(Kind.CUSTOMERS.columns[0])) {
+                        continue;
+                    }
+                }
+                if (fields.size() == Kind.CUSTOMERS.columns.length) {
+                    customers.add(new Customer(0, fields.get(0), fields.get(1), fields.get(2), fields.get(3)));
+                }
+            }
+        }
+        return customers;
+    }
+
+    // One pass over one file
+    private class Run {
+        private final Kind kind;
+        private final LineNumberReader in;
+        private final CountingInputStream counted;
+        private final long totalBytes;
+        private final ProgressListener listener;
+        private final long start = System.nanoTime();
+        private final List<String> errors = new ArrayList<>();
+
+        private final List<Customer> customers = new ArrayList<>();
+        private final List<Product> products = new ArrayList<>();
+        private final List<Order> orders = new ArrayList<>();
+        private String currentOrderRef;
+        private Order currentOrder;
+        // Where the current order's first row is, for when none of its rows are valid
+        private int currentOrderLine;
+
+        private long rows;
+        private long imported;
+        private long rejected;
+
+        Run(Kind kind, LineNumberReader in, CountingInputStream counted, long totalBytes, ProgressListener listener) {
+            this.kind = kind;
+            this.in = in;
+            this.counted = counted;
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+        }
+
+        Progress execute() throws IOException {
+            boolean first = true;
+            List<String> fields;
+            while ((fields = readRecord(in)) != null) {
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    if (fields.get(0).equalsIgnoreCase(kind.columns[0])) {
+                        continue;
+                    }
+                }
+                rows++;
+                if (fields.size() != kind.columns.length) {
+                    reject("expected " + kind.columns.length + " columns (" + kind.columns() + ") but found " + fields.size());
+                    continue;
+                }
+                try {
+                    addRow(fields);
+                } catch (NumberFormatException e) {
+                    reject("not a number: " + e.getMessage());
+                }
+            }
+            finishOrder();
+            flushBatch();
+            return progress();
+        }
+
+        private void addRow(List<String> fields) {
+            switch (kind) {
+                case CUSTOMERS -> {
+                    customers.add(new Customer(0, fields.get(0), fields.get(1), fields.get(2), fields.get(3)));
+                    if (customers.size() >= BATCH_SIZE) {
+                        flushBatch();
+                    }
+                }
+                case PRODUCTS -> {
+                    products.add(new Product(0, fields.get(0), fields.get(1), Money.parse(fields.get(2))));
+                    if (products.size() >= BATCH_SIZE) {
+                        flushBatch();
+                    }
+                }
+                case ORDERS -> addOrderRow(fields);
+            }
+        }
+
+        private void addOrderRow(List<String> fields) {
+            String orderRef = fields.get(0);
+            int customerId = Integer.parseInt(fields.get(1));
+            int productId = Integer.parseInt(fields.get(2));
+            int quantity = Integer.parseInt(fields.get(3));
+            if (!orderRef.equals(currentOrderRef)) {
+                finishOrder();
+                // Only break batches between orders, so an order is never split
+                if (orders.size() >= BATCH_SIZE) {
+                    flushBatch();
+                }
+                currentOrderRef = orderRef;
+                currentOrderLine = in.getLineNumber();
+                Customer customer = customerService.getCustomerById(customerId);
+                if (customer == null) {
+                    reject("customer " + customerId + " not found");
+                    return;
+                }
+                currentOrder = new Order(0, customer);
+            } else if (currentOrder == null) {
+                // The order's first row was rejected
+                reject("customer " + customerId + " not found");
+                return;
+            } else if (currentOrder.getCustomerId() != customerId) {
+                reject("order " + orderRef + " already belongs to customer " + currentOrder.getCustomerId());
+                return;
+            }
+            Product product = productService.getProductById(productId);
+            if (product == null) {
+                reject("product " + productId + " not found");
+            } else if (quantity <= 0) {
+                reject("quantity must be positive");
+            } else {
+                currentOrder.addOrderItem(new OrderItem(product, quantity));
+            }
+        }
+
+        // An order all of whose item rows were rejected is left out rather than created empty
+        private void finishOrder() {
+            if (currentOrder != null) {
+                if (currentOrder.getOrderItems().isEmpty()) {
+                    reject(currentOrderLine, "order " + currentOrderRef + " has no valid items");
+                } else {
+                    orders.add(currentOrder);
+                }
+                currentOrder = null;
+            }
+            currentOrderRef = null;
+        }
+
+        private void flushBatch() {
+            if (!customers.isEmpty()) {
+                // With unique contacts, customers whose email or phone is taken are left out
+                int added = customerService.addCustomers(customers);
+                imported += added;
+                rejected += customers.size() - added;
+                customers.clear();
+            }
+            if (!products.isEmpty()) {
+                productService.addProducts(products);
+                imported += products.size();
+                products.clear();
+            }
+            if (!orders.isEmpty()) {
+                int created = orderService.createOrders(orders);
+                imported += created;
+                rejected += orders.size() - created;
+                orders.clear();
+            }
+            if (listener != null) {
+                listener.onProgress(progress());
+            }
+        }
+
+        private void reject(String reason) {
+            reject(in.getLineNumber(), reason);
+        }
+
+        private void reject(int line, String reason) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Line " + line + ": " + reason);
+            }
+        }
+
+        private Progress progress() {
+            return new Progress(rows, imported, rejected, counted.count, totalBytes, System.nanoTime() - start,
+                    Collections.unmodifiableList(new ArrayList<>(errors)));
+        }
+    }
+
+    // Reads one record, or null at the end of the input. Quoted fields may span lines.
+    static List<String> readRecord(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString().trim());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (!quoted || (line = in.readLine()) == null) {
+                break;
+            }
+            field.append('\n');
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    // Counts bytes read from the file, for percent-complete reporting
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.crm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Builds synthetic customers, products and orders in any quantity, the same ones for
+// the same seed, for benchmarks, load tests and trying the application at scale.
+// Every customer gets its own email address and phone number, so all of them are
+// accepted when contacts must be unique. Run
+//   java -cp <classes> com.example.crm.DataGenerator --customers 100000 --products 500 --orders 200000
+// to add that much data to the data directory (-Dcrm.dataDir, "data" by default);
+// --items 1-5 sets how many items orders have, --days how far back they go.
+// See also LoadDriver.
+class DataGenerator {
+    private static final String[] NAME_WORDS = {"Acme", "Apex", "Blue", "Bright", "Cedar", "Delta", "Eagle", "Evergreen",
+            "Falcon", "Granite", "Harbor", "Iron", "Juniper", "Keystone", "Lakeside", "Maple", "Northern", "Orion",
+            "Pioneer", "Quantum", "River", "Summit", "Titan", "United", "Vertex", "Western", "Zenith"};
+    private static final String[] NAME_ENDINGS = {"Corporation", "Industries", "Systems", "Logistics", "Holdings",
+            "Partners", "Labs", "Trading", "Foods", "Energy", "Consulting", "Manufacturing", "Retail", "Group"};
+    private static final String[] FIRST_NAMES = {"Alice", "Bob", "Carmen", "David", "Elena", "Farid", "Grace", "Hiro",
+            "Ines", "James", "Kofi", "Lena", "Mateo", "Nora", "Omar", "Priya", "Quinn", "Rosa", "Sven", "Tara"};
+    private static final String[] LAST_NAMES = {"Anderson", "Brown", "Chen", "Dubois", "Evans", "Garcia", "Hughes",
+            "Ivanova", "Jensen", "Kim", "Lopez", "Muller", "Nakamura", "Okafor", "Patel", "Rossi", "Silva", "Walker"};
+    private static final String[] PRODUCT_ADJECTIVES = {"Compact", "Deluxe", "Ergonomic", "Heavy-Duty", "Portable",
+            "Premium", "Smart", "Wireless", "Modular", "Eco"};
+    private static final String[] PRODUCT_NOUNS = {"Chair", "Desk", "Lamp", "Monitor", "Keyboard", "Mouse", "Headset",
+            "Webcam", "Printer", "Router", "Cabinet", "Whiteboard", "Projector", "Speaker", "Dock"};
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    // Entities are handed to the services in batches of this many
+    private static final int BATCH_SIZE = 10_000;
+
+    private final Random random;
+    // Items per order are uniform between these, quantities between 1 and maxQuantity
+    private int minItems = 1;
+    private int maxItems = 5;
+    private int maxQuantity = 10;
+
+    DataGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    DataGenerator itemsPerOrder(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Items per order must be 1 or more, got " + min + "-" + max);
+        }
+        minItems = min;
+        maxItems = max;
+        return this;
+    }
+
+    DataGenerator maxQuantity(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Quantity must be 1 or more, got " + max);
+        }
+        maxQuantity = max;
+        return this;
+    }
+
+    // Customer number n (from 0); its email and phone number are derived from n
+    Customer customer(int n) {
+        String first = pick(FIRST_NAMES);
+        String last = pick(LAST_NAMES);
+        String name = pick(NAME_WORDS) + " " + pick(NAME_WORDS) + " " + pick(NAME_ENDINGS);
+        String digits = Long.toString(2_000_000_000L + n);
+        String phone = digits.substring(0, 3) + "-" + digits.substring(3, 6) + "-" + digits.substring(6);
+        String email = first.toLowerCase() + "." + last.toLowerCase() + n + "@example.com";
+        return new Customer(0, name, first + " " + last, phone, email);
+    }
+
+    List<Customer> customers(int first, int count) {
+        List<Customer> customers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            customers.add(customer(first + i));
+        }
+        return customers;
+    }
+
+    Product product(int n) {
+        String noun = pick(PRODUCT_NOUNS);
+        String name = pick(PRODUCT_ADJECTIVES) + " " + noun + " " + (100 + n);
+        String description = pick(PRODUCT_ADJECTIVES).toLowerCase() + " " + noun.toLowerCase() + ", model " + (100 + n);
+        // $5.99 to $1,999.99
+        long priceCents = (5 + random.nextInt(1995)) * 100L + 99;
+        return new Product(0, name, description, priceCents);
+    }
+
+    List<Product> products(int first, int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(product(first + i));
+        }
+        return products;
+    }
+
+    // An order of minItems to maxItems items. A few customers and products get most of
+    // the orders, as in real sales data: picks are skewed towards the start of the lists.
+    Order order(List<Customer> customers, List<Product> products) {
+        Order order = new Order(0, pickCustomer(customers));
+        int items = itemCount();
+        for (int i = 0; i < items; i++) {
+            order.addOrderItem(new OrderItem(pickProduct(products), quantity()));
+        }
+        return order;
+    }
+
+    Customer pickCustomer(List<Customer> customers) {
+        return customers.get(skewed(customers.size()));
+    }
+
+    Product pickProduct(List<Product> products) {
+        return products.get(skewed(products.size()));
+    }
+
+    int itemCount() {
+        return minItems + random.nextInt(maxItems - minItems + 1);
+    }
+
+    int quantity() {
+        return 1 + random.nextInt(maxQuantity);
+    }
+
+    // Orders created evenly from "from" up to "to" (epoch milliseconds), oldest first
+    List<Order> orders(int count, List<Customer> customers, List<Product> products, long from, long to) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = order(customers, products);
+            order.setCreatedAt(from + (to - from) * i / count);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private String pick(String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+
+    // An index below size, with lower indexes more likely
+    private int skewed(int size) {
+        double u = random.nextDouble();
+        return Math.min(size - 1, (int) (size * u * u * u));
+    }
+
+    // Adds the customers and products in batches through the services' bulk methods,
+    // then orders created evenly over the last "days" days. Returns the number of
+    // orders created.
+    int populate(CustomerService customerService, ProductService productService, OrderService orderService,
+            int customerCount, int productCount, int orderCount, int days) {
+        int existingCustomers = customerService.getCustomerCount();
+        for (int added = 0; added < customerCount; added += BATCH_SIZE) {
+            customerService.addCustomers(customers(existingCustomers + added, Math.min(BATCH_SIZE, customerCount - added)));
+        }
+        productService.addProducts(products(productService.getProductCount(), productCount));
+        if (orderCount == 0) {
+            return 0;
+        }
+        List<Customer> customers = customerService.getAllCustomers();
+        List<Product> products = productService.getAllProducts();
+        if (customers.isEmpty() || products.isEmpty()) {
+            throw new IllegalStateException("Orders need at least one customer and one product");
+        }
+        long to = System.currentTimeMillis();
+        long from = to - days * DAY_MILLIS;
+        int created = 0;
+        for (int added = 0; added < orderCount; added += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, orderCount - added);
+            created += orderService.createOrders(orders(count, customers, products,
+                    from + (to - from) * added / orderCount, from + (to - from) * (added + count) / orderCount));
+        }
+        return created;
+    }
+
+    public static void main(String[] args) {
+        int customerCount = 0;
+        int productCount = 0;
+        int orderCount = 0;
+        int days = 365;
+        long seed = 42;
+        int minItems = 1;
+        int maxItems = 5;
+        int maxQuantity = 10;
+        try {
+            if (args.length == 0 || args.length % 2 != 0) {
+                throw new IllegalArgumentException("Missing option value");
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--customers" -> customerCount = Integer.parseInt(value);
+                    case "--products" -> productCount = Integer.parseInt(value);
+                    case "--orders" -> orderCount = Integer.parseInt(value);
+                    case "--days" -> days = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--items" -> {
+                        int dash = value.indexOf('-');
+                        minItems = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+                        maxItems = Integer.parseInt(dash < 0 ? value : value.substring(dash + 1));
+                    }
+                    case "--max-quantity" -> maxQuantity = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: DataGenerator [--customers N] [--products N] [--orders N] [--items MIN-MAX]"
+                    + " [--max-quantity N] [--days N] [--seed N]");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        DataGenerator generator = new DataGenerator(seed).itemsPerOrder(minItems, maxItems).maxQuantity(maxQuantity);
+        CustomerService customerService = new CustomerService();
+        ProductService productService = new ProductService();
+        OrderService orderService = new OrderService(customerService, productService);
+        int created;
+        try {
+            created = generator.populate(customerService, productService, orderService,
+                    customerCount, productCount, orderCount, days);
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage() + ".");
+            System.exit(1);
+            return;
+        }
+        DataStorage.flush();
+        System.out.printf("Generated %,d customers, %,d products and %,d orders in %.1f s%n",
+                customerCount, productCount, created, (System.nanoTime() - start) / 1e9);
+        System.exit(0);
+    }
+}
@@ -1,14 +1,178 @@
 package com.example.crm;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 public class DataStorage {
-    private static final String DATA_DIR = "data";
+    // Relative to the working directory unless -Dcrm.dataDir says otherwise
+    private static final String DATA_DIR = System.getProperty("crm.dataDir", "data");
     private static final String CUSTOMERS_FILE = DATA_DIR + "/customers.dat";
     private static final String PRODUCTS_FILE = DATA_DIR + "/products.dat";
     private static final String ORDERS_FILE = DATA_DIR + "/orders.dat";
+    // ID -> offset index into customers.dat, used by the memory-mapped customer table
+    private static final String CUSTOMERS_INDEX_FILE = DATA_DIR + "/customers.idx";
+    // Each snapshot write keeps the snapshot it replaces under this suffix, and the journal
+    // keeps the log that led from it to the new one (see EntityJournal), so a damaged
+    // snapshot can be rebuilt from the generation before it
+    private static final String PREVIOUS_SUFFIX = ".prev";
+    // A snapshot that failed to load is kept under this suffix once the data is recovered
+    private static final String DAMAGED_SUFFIX = ".damaged";
+    // Checkpoints kept for incremental backups (see checkpoint() and Backup)
+    private static final String CHECKPOINTS_DIR = DATA_DIR + "/checkpoints";
+    
+    // Each mutation is appended to a per-entity journal; once a journal grows past
+    // this size it is folded into the .dat snapshot by a background compaction.
+    private static final long COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+    // Journal records are queued by the services and written in batches by a background
+    // thread; -Dcrm.flushIntervalMs sets how often queued changes are written
+    private static final PersistenceWriter WRITER = new PersistenceWriter(Long.getLong("crm.flushIntervalMs", 100));
+    private static final Store<Customer> CUSTOMERS = new Store<>(CUSTOMERS_FILE, CUSTOMERS_INDEX_FILE,
+            DATA_DIR + "/customers.log", RecordCodec.CUSTOMER, "customers");
+    private static final Store<Product> PRODUCTS = new Store<>(PRODUCTS_FILE, null,
+            DATA_DIR + "/products.log", RecordCodec.PRODUCT, "products");
+    private static final Store<Order> ORDERS = new Store<>(ORDERS_FILE, null,
+            DATA_DIR + "/orders.log", RecordCodec.ORDER, "orders");
+    private static final List<Store<?>> STORES = List.of(CUSTOMERS, PRODUCTS, ORDERS);
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "crm-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    // Files, journal and codec that make up the persistent form of one entity type,
+    // plus the changes queued for the persistence writer
+    private static final class Store<T extends BaseEntity> implements PersistenceWriter.Sink {
+        final String snapshotFile;
+        final String indexFile;
+        final EntityJournal journal;
+        final RecordCodec<T> codec;
+        final String label;
+        // Latest queued change per entity ID, in first-queued order; a null value is a delete.
+        // Entities are encoded when written, so repeated updates collapse into one record.
+        private Map<Integer, T> pending = new LinkedHashMap<>();
+        private volatile Supplier<List<T>> listing;
+        // Set while a compaction of this store is queued or running in this process
+        volatile boolean compactionQueued;
+        
+        Store(String snapshotFile, String indexFile, String journalFile, RecordCodec<T> codec, String label) {
+            this.snapshotFile = snapshotFile;
+            this.indexFile = indexFile;
+            this.journal = new EntityJournal(journalFile, RecordCodec.VERSION);
+            this.codec = codec;
+            this.label = label;
+            WRITER.register(this);
+        }
+        
+        synchronized void enqueue(int id, T entity, Supplier<List<T>> all) {
+            pending.put(id, entity);
+            listing = all;
+        }
+        
+        synchronized void enqueueAll(Collection<T> entities, Supplier<List<T>> all) {
+            for (T entity : entities) {
+                pending.put(entity.getId(), entity);
+            }
+            listing = all;
+        }
+        
+        @Override
+        public synchronized int pendingCount() {
+            return pending.size();
+        }
+        
+        @Override
+        public int writePending() throws IOException {
+            Map<Integer, T> batch = takePending();
+            write(batch);
+            return batch.size();
+        }
+        
+        synchronized Map<Integer, T> takePending() {
+            Map<Integer, T> batch = pending;
+            pending = new LinkedHashMap<>();
+            return batch;
+        }
+        
+        void write(Map<Integer, T> batch) throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                for (Map.Entry<Integer, T> change : batch.entrySet()) {
+                    T entity = change.getValue();
+                    if (entity == null) {
+                        journal.append(EntityJournal.DELETE, change.getKey(), new byte[0]);
+                    } else {
+                        byte[] payload;
+                        // Services hold the entity's monitor while changing it
+                        synchronized (entity) {
+                            payload = codec.toBytes(entity);
+                        }
+                        journal.append(EntityJournal.PUT, change.getKey(), payload);
+                    }
+                }
+                journal.flush();
+            } catch (IOException e) {
+                // Requeue whatever hasn't been superseded and retry on the next run
+                synchronized (this) {
+                    batch.forEach(pending::putIfAbsent);
+                }
+                throw e;
+            }
+            if (journal.size() >= COMPACTION_THRESHOLD_BYTES && journal.isCompactable() && !journal.isCompacting()) {
+                compact(this, listing);
+            }
+        }
+        
+        @Override
+        public void sync() throws IOException {
+            journal.sync();
+        }
+        
+        // Link the snapshot and logs into the checkpoint. Snapshots are renamed into place
+        // under the journal's lock (see writeSnapshot()), so the files seen here belong together.
+        void freeze(Checkpoint checkpoint) throws IOException {
+            synchronized (journal) {
+                File snapshot = new File(snapshotFile);
+                File frozenSnapshot = snapshot.exists() ? link(snapshot, checkpoint.getDir()) : null;
+                List<Checkpoint.Log> logs = new ArrayList<>();
+                freezeLog(logs, Checkpoint.Role.PREVIOUS, journal.previousPath(), checkpoint.getDir());
+                freezeLog(logs, Checkpoint.Role.SEALED, journal.sealedPath(), checkpoint.getDir());
+                freezeLog(logs, Checkpoint.Role.ACTIVE, journal.activePath(), checkpoint.getDir());
+                checkpoint.add(new Checkpoint.StoreFiles(label, frozenSnapshot, logs));
+            }
+        }
+        
+        private static void freezeLog(List<Checkpoint.Log> logs, Checkpoint.Role role, String path, File dir)
+                throws IOException {
+            File log = new File(path);
+            if (log.exists()) {
+                long length = log.length();
+                logs.add(new Checkpoint.Log(role, link(log, dir), length));
+            }
+        }
+        
+        private static File link(File file, File dir) throws IOException {
+            File link = new File(dir, file.getName());
+            try {
+                Files.createLink(link.toPath(), file.toPath());
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(file.toPath(), link.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return link;
+        }
+    }
     
     static {
         // Create data directory if it doesn't exist
@@ -37,17 +201,17 @@ public class DataStorage {
         
         if (productService.getAllProducts().isEmpty()) {
             System.out.println("Initializing sample products...");
-            // Add 10 sample products
-            productService.addProduct(new Product(0, "Office Chair", "Ergonomic office chair with lumbar support", 149.99));
-            productService.addProduct(new Product(0, "Desk Lamp", "LED desk lamp with adjustable brightness", 39.99));
-            productService.addProduct(new Product(0, "Laptop", "15-inch laptop with 16GB RAM and 512GB SSD", 899.99));
-            productService.addProduct(new Product(0, "Monitor", "27-inch 4K monitor with HDR", 349.99));
-            productService.addProduct(new Product(0, "Keyboard", "Mechanical keyboard with RGB lighting", 79.99));
-            productService.addProduct(new Product(0, "Mouse", "Wireless ergonomic mouse", 29.99));
-            productService.addProduct(new Product(0, "Headphones", "Noise-cancelling headphones", 129.99));
-            productService.addProduct(new Product(0, "Desk", "Height-adjustable standing desk", 299.99));
-            productService.addProduct(new Product(0, "Webcam", "1080p HD webcam with microphone", 59.99));
-            productService.addProduct(new Product(0, "Docking Station", "USB-C docking station with multiple ports", 89.99));
+            // Add 10 sample products (prices in cents)
+            productService.addProduct(new Product(0, "Office Chair", "Ergonomic office chair with lumbar support", 14999));
+            productService.addProduct(new Product(0, "Desk Lamp", "LED desk lamp with adjustable brightness", 3999));
+            productService.addProduct(new Product(0, "Laptop", "15-inch laptop with 16GB RAM and 512GB SSD", 89999));
+            productService.addProduct(new Product(0, "Monitor", "27-inch 4K monitor with HDR", 34999));
+            productService.addProduct(new Product(0, "Keyboard", "Mechanical keyboard with RGB lighting", 7999));
+            productService.addProduct(new Product(0, "Mouse", "Wireless ergonomic mouse", 2999));
+            productService.addProduct(new Product(0, "Headphones", "Noise-cancelling headphones", 12999));
+            productService.addProduct(new Product(0, "Desk", "Height-adjustable standing desk", 29999));
+            productService.addProduct(new Product(0, "Webcam", "1080p HD webcam with microphone", 5999));
+            productService.addProduct(new Product(0, "Docking Station", "USB-C docking station with multiple ports", 8999));
         }
         
         if (orderService.getAllOrders().isEmpty() && !customerService.getAllCustomers().isEmpty() && !productService.getAllProducts().isEmpty()) {
@@ -57,144 +221,484 @@ public class DataStorage {
             
             // Create 10 sample orders for different customers with various products
             // Order 1
-            orderService.createOrder(customers.get(0).getId());
-            Order order1 = orderService.getAllOrders().get(0);
+            Order order1 = orderService.createOrder(customers.get(0).getId());
             orderService.addProductToOrder(order1.getId(), products.get(0).getId(), 2); // 2 chairs
             orderService.addProductToOrder(order1.getId(), products.get(1).getId(), 3); // 3 lamps
             
             // Order 2
-            orderService.createOrder(customers.get(1).getId());
-            Order order2 = orderService.getAllOrders().get(1);
+            Order order2 = orderService.createOrder(customers.get(1).getId());
             orderService.addProductToOrder(order2.getId(), products.get(2).getId(), 1); // 1 laptop
             orderService.addProductToOrder(order2.getId(), products.get(4).getId(), 1); // 1 keyboard
             orderService.addProductToOrder(order2.getId(), products.get(5).getId(), 1); // 1 mouse
             
             // Order 3
-            orderService.createOrder(customers.get(2).getId());
-            Order order3 = orderService.getAllOrders().get(2);
+            Order order3 = orderService.createOrder(customers.get(2).getId());
             orderService.addProductToOrder(order3.getId(), products.get(7).getId(), 1); // 1 desk
             orderService.addProductToOrder(order3.getId(), products.get(0).getId(), 1); // 1 chair
             
             // Order 4
-            orderService.createOrder(customers.get(3).getId());
-            Order order4 = orderService.getAllOrders().get(3);
+            Order order4 = orderService.createOrder(customers.get(3).getId());
             orderService.addProductToOrder(order4.getId(), products.get(2).getId(), 5); // 5 laptops
             orderService.addProductToOrder(order4.getId(), products.get(3).getId(), 5); // 5 monitors
             
             // Order 5
-            orderService.createOrder(customers.get(4).getId());
-            Order order5 = orderService.getAllOrders().get(4);
+            Order order5 = orderService.createOrder(customers.get(4).getId());
             orderService.addProductToOrder(order5.getId(), products.get(6).getId(), 10); // 10 headphones
             
             // Order 6
-            orderService.createOrder(customers.get(5).getId());
-            Order order6 = orderService.getAllOrders().get(5);
+            Order order6 = orderService.createOrder(customers.get(5).getId());
             orderService.addProductToOrder(order6.getId(), products.get(8).getId(), 15); // 15 webcams
             orderService.addProductToOrder(order6.getId(), products.get(9).getId(), 15); // 15 docking stations
             
             // Order 7
-            orderService.createOrder(customers.get(6).getId());
-            Order order7 = orderService.getAllOrders().get(6);
+            Order order7 = orderService.createOrder(customers.get(6).getId());
             orderService.addProductToOrder(order7.getId(), products.get(0).getId(), 20); // 20 chairs
             orderService.addProductToOrder(order7.getId(), products.get(7).getId(), 20); // 20 desks
             
             // Order 8
-            orderService.createOrder(customers.get(7).getId());
-            Order order8 = orderService.getAllOrders().get(7);
+            Order order8 = orderService.createOrder(customers.get(7).getId());
             orderService.addProductToOrder(order8.getId(), products.get(2).getId(), 3); // 3 laptops
             orderService.addProductToOrder(order8.getId(), products.get(3).getId(), 3); // 3 monitors
             orderService.addProductToOrder(order8.getId(), products.get(4).getId(), 3); // 3 keyboards
             orderService.addProductToOrder(order8.getId(), products.get(5).getId(), 3); // 3 mice
             
             // Order 9
-            orderService.createOrder(customers.get(8).getId());
-            Order order9 = orderService.getAllOrders().get(8);
+            Order order9 = orderService.createOrder(customers.get(8).getId());
             orderService.addProductToOrder(order9.getId(), products.get(9).getId(), 30); // 30 docking stations
             
             // Order 10
-            orderService.createOrder(customers.get(9).getId());
-            Order order10 = orderService.getAllOrders().get(9);
+            Order order10 = orderService.createOrder(customers.get(9).getId());
             for (int i = 0; i < products.size(); i++) {
                 orderService.addProductToOrder(order10.getId(), products.get(i).getId(), 1); // 1 of each product
             }
         }
     }
     
-    // Save customers
+    // Save customers (full snapshot, used by compaction)
     public static void saveCustomers(List<Customer> customers) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(CUSTOMERS_FILE))) {
-            oos.writeObject(customers);
+        invalidateCheckpoints(CUSTOMERS);
+        if (writeSnapshot(CUSTOMERS, customers)) {
             System.out.println("Customers saved successfully.");
-        } catch (IOException e) {
-            System.err.println("Error saving customers: " + e.getMessage());
         }
     }
     
     // Load customers
-    @SuppressWarnings("unchecked")
     public static List<Customer> loadCustomers() {
-        File file = new File(CUSTOMERS_FILE);
-        if (!file.exists()) {
-            return new ArrayList<>();
-        }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(CUSTOMERS_FILE))) {
-            return (List<Customer>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading customers: " + e.getMessage());
-            return new ArrayList<>();
+        return load(CUSTOMERS);
+    }
+    
+    // Open customers.dat memory-mapped, decoding records only when they are accessed.
+    // The journal is folded into the snapshot first if it has grown large, because the
+    // mapped file can't be replaced by background compaction while it is in use.
+    public static EntityTable<Customer> openMappedCustomers() {
+        File snapshot = new File(CUSTOMERS_FILE);
+        File index = new File(CUSTOMERS_INDEX_FILE);
+        try {
+            boolean rewrite = !snapshot.exists() || isJavaSerialized(snapshot)
+                    || CUSTOMERS.journal.size() >= COMPACTION_THRESHOLD_BYTES;
+            MappedCustomerTable table = null;
+            if (!rewrite) {
+                try {
+                    table = MappedCustomerTable.open(snapshot, index);
+                } catch (IOException e) {
+                    // Missing or stale index, or a damaged snapshot: rebuild both through load(),
+                    // which falls back to the previous generation if it has to
+                    rewrite = true;
+                }
+            }
+            if (rewrite) {
+                List<Customer> customers = loadCustomers();
+                if (!writeSnapshot(CUSTOMERS, customers)) {
+                    return new EntityIndex<>(customers);
+                }
+                retireJournal(CUSTOMERS);
+                table = MappedCustomerTable.open(snapshot, index);
+            }
+            MappedCustomerTable mapped = table;
+            CUSTOMERS.journal.replay((op, id, payload, format) -> {
+                if (op == EntityJournal.PUT) {
+                    mapped.add(RecordCodec.CUSTOMER.fromBytes(payload, format));
+                } else {
+                    mapped.remove(id);
+                }
+            });
+            CUSTOMERS.journal.setCompactable(false);
+            return mapped;
+        } catch (IOException e) {
+            System.err.println("Error mapping customers: " + e.getMessage());
+            return new EntityIndex<>(loadCustomers());
         }
     }
     
-    // Save products
+    // Record an added or updated customer in the journal
+    public static void appendCustomer(Customer customer, Supplier<List<Customer>> customers) {
+        append(CUSTOMERS, EntityJournal.PUT, customer.getId(), customer, customers);
+    }
+    
+    // Record a batch of added customers in the journal
+    public static void appendCustomers(Collection<Customer> added, Supplier<List<Customer>> customers) {
+        CUSTOMERS.enqueueAll(added, customers);
+    }
+    
+    // Record a deleted customer in the journal
+    public static void appendCustomerDeletion(int id, Supplier<List<Customer>> customers) {
+        append(CUSTOMERS, EntityJournal.DELETE, id, null, customers);
+    }
+    
+    // Save products (full snapshot, used by compaction)
     public static void saveProducts(List<Product> products) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(PRODUCTS_FILE))) {
-            oos.writeObject(products);
+        invalidateCheckpoints(PRODUCTS);
+        if (writeSnapshot(PRODUCTS, products)) {
             System.out.println("Products saved successfully.");
-        } catch (IOException e) {
-            System.err.println("Error saving products: " + e.getMessage());
         }
     }
     
     // Load products
-    @SuppressWarnings("unchecked")
     public static List<Product> loadProducts() {
-        File file = new File(PRODUCTS_FILE);
-        if (!file.exists()) {
-            return new ArrayList<>();
+        return load(PRODUCTS);
+    }
+    
+    // Record an added or updated product in the journal
+    public static void appendProduct(Product product, Supplier<List<Product>> products) {
+        append(PRODUCTS, EntityJournal.PUT, product.getId(), product, products);
+    }
+    
+    // Record a batch of added products in the journal
+    public static void appendProducts(Collection<Product> added, Supplier<List<Product>> products) {
+        PRODUCTS.enqueueAll(added, products);
+    }
+    
+    // Record a deleted product in the journal
+    public static void appendProductDeletion(int id, Supplier<List<Product>> products) {
+        append(PRODUCTS, EntityJournal.DELETE, id, null, products);
+    }
+    
+    // Save orders (full snapshot, used by compaction)
+    public static void saveOrders(List<Order> orders) {
+        invalidateCheckpoints(ORDERS);
+        if (writeSnapshot(ORDERS, orders)) {
+            System.out.println("Orders saved successfully.");
+        }
+    }
+    
+    // Load orders. Orders saved before orders had a creation time are given the time
+    // their files were last written, which none of them can be newer than, and saved
+    // again straight away so this happens once.
+    public static List<Order> loadOrders() {
+        List<Order> orders = load(ORDERS);
+        long writtenAt = 0L;
+        for (String path : new String[] {ORDERS_FILE, ORDERS.journal.activePath(), ORDERS.journal.sealedPath()}) {
+            writtenAt = Math.max(writtenAt, new File(path).lastModified());
+        }
+        if (writtenAt == 0L) {
+            writtenAt = System.currentTimeMillis();
+        }
+        int migrated = 0;
+        for (Order order : orders) {
+            if (order.getCreatedAt() == 0L) {
+                order.setCreatedAt(writtenAt);
+                migrated++;
+            }
+        }
+        if (migrated > 0) {
+            System.out.println("Giving " + migrated + " orders saved without a creation time the time "
+                    + TextFormat.formatDateTime(writtenAt) + "...");
+            invalidateCheckpoints(ORDERS);
+            saveCoveringJournal(ORDERS, orders);
+        }
+        return orders;
+    }
+    
+    // Record a created or changed order in the journal
+    public static void appendOrder(Order order, Supplier<List<Order>> orders) {
+        append(ORDERS, EntityJournal.PUT, order.getId(), order, orders);
+    }
+    
+    // Record a batch of created orders in the journal
+    public static void appendOrders(Collection<Order> added, Supplier<List<Order>> orders) {
+        ORDERS.enqueueAll(added, orders);
+    }
+    
+    // Read the snapshot, then replay the journal on top of it. Files written with Java
+    // serialization by older versions are read once and rewritten in the binary format.
+    // If the snapshot is missing or damaged (bad checksum, truncated), the previous
+    // generation and every log since are loaded instead and saved as a fresh snapshot.
+    // The first snapshot has no previous one; its previous log then starts from no data.
+    // Data that can't be loaded either way is an error rather than an empty list, so
+    // sample data is never written over it.
+    private static <T extends BaseEntity> List<T> load(Store<T> store) {
+        File file = new File(store.snapshotFile);
+        File previous = new File(store.snapshotFile + PREVIOUS_SUFFIX);
+        boolean[] legacy = {false};
+        IOException failure;
+        try {
+            if (file.exists() || (!previous.exists() && !store.journal.hasPrevious())) {
+                List<T> entities = loadGeneration(store, file, false, legacy);
+                if (legacy[0]) {
+                    System.out.println("Migrating " + store.label + " to the binary format...");
+                    invalidateCheckpoints(store);
+                    saveCoveringJournal(store, entities);
+                } else if (store.journal.isCompacting() && !store.compactionQueued) {
+                    // A sealed log left by a compaction the last run didn't finish
+                    System.out.println("Finishing an interrupted compaction of " + store.label + "...");
+                    saveCoveringJournal(store, entities);
+                }
+                return entities;
+            }
+            failure = new FileNotFoundException(file.getName() + " is missing");
+        } catch (IOException e) {
+            failure = e;
         }
         
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(PRODUCTS_FILE))) {
-            return (List<Product>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading products: " + e.getMessage());
-            return new ArrayList<>();
+        System.err.println("Error loading " + store.label + ": " + failure.getMessage());
+        if (!previous.exists() && !store.journal.hasPrevious()) {
+            throw new UncheckedIOException("Could not load " + store.label
+                    + " and there is no previous generation to recover from", failure);
         }
+        System.err.println("Recovering " + store.label + " from "
+                + (previous.exists() ? previous.getName() + " and its journal" : "its journal") + "...");
+        List<T> entities;
+        try {
+            entities = loadGeneration(store, previous, true, legacy);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            throw new UncheckedIOException("Could not load " + store.label + " from " + file.getName()
+                    + " or " + previous.getName(), failure);
+        }
+        invalidateCheckpoints(store);
+        try {
+            // Set the damaged file aside so the new snapshot doesn't take the previous one's place
+            if (file.exists()) {
+                Files.move(file.toPath(), new File(store.snapshotFile + DAMAGED_SUFFIX).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (writeSnapshot(store, entities)) {
+                // The previous generation is older than the snapshot just written, with logs in between
+                previous.delete();
+                store.journal.reset();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving recovered " + store.label + ": " + e.getMessage());
+        }
+        return entities;
     }
     
-    // Save orders
-    public static void saveOrders(List<Order> orders) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ORDERS_FILE))) {
-            oos.writeObject(orders);
-            System.out.println("Orders saved successfully.");
+    private static <T extends BaseEntity> List<T> loadGeneration(Store<T> store, File file, boolean previous,
+            boolean[] legacy) throws IOException {
+        List<T> snapshot;
+        if (!file.exists()) {
+            snapshot = new ArrayList<>();
+        } else if (isJavaSerialized(file)) {
+            snapshot = readLegacySnapshot(file);
+            legacy[0] = true;
+        } else {
+            snapshot = store.codec.readFile(file);
+        }
+        if (store.journal.isEmpty() && !legacy[0] && !previous) {
+            return snapshot;
+        }
+        EntityIndex<T> index = new EntityIndex<>(snapshot);
+        store.journal.replay((op, id, payload, format) -> {
+            if (op == EntityJournal.PUT) {
+                if (isJavaSerialized(payload)) {
+                    legacy[0] = true;
+                    index.add(readLegacyRecord(payload));
+                } else {
+                    index.add(store.codec.fromBytes(payload, format));
+                }
+            } else {
+                index.remove(id);
+            }
+        }, previous);
+        return new ArrayList<>(index.list());
+    }
+    
+    // Write a snapshot that covers the whole journal, then retire the journal
+    private static <T extends BaseEntity> void saveCoveringJournal(Store<T> store, List<T> entities) {
+        if (writeSnapshot(store, entities)) {
+            try {
+                retireJournal(store);
+            } catch (IOException e) {
+                System.err.println("Error retiring the " + store.label + " journal: " + e.getMessage());
+            }
+        }
+    }
+    
+    // After a snapshot that covers the whole journal, the journal becomes the log of the
+    // snapshot it replaced. A journal split over two files can't be kept that way, so the
+    // previous generation is dropped instead, snapshot first.
+    private static void retireJournal(Store<?> store) throws IOException {
+        if (store.journal.isSplit()) {
+            new File(store.snapshotFile + PREVIOUS_SUFFIX).delete();
+            store.journal.reset();
+        } else {
+            store.journal.retire();
+        }
+    }
+    
+    // Write all queued changes and force the journals to disk
+    public static void flush() {
+        WRITER.flush();
+    }
+    
+    static PersistenceWriter getPersistenceWriter() {
+        return WRITER;
+    }
+    
+    // Freeze the current generation of all data into dir, which must not exist yet (see
+    // Checkpoint). The queues of all stores are taken at the same instant and written
+    // first, so the checkpoint holds every change made before it and none made after,
+    // across all entity types. Costs one journal write and a few hard links.
+    static Checkpoint checkpoint(File dir) throws IOException {
+        Files.createDirectories(dir.getParentFile().toPath());
+        Files.createDirectory(dir.toPath());
+        return WRITER.exclusive(() -> {
+            Map<Integer, Customer> customers;
+            Map<Integer, Product> products;
+            Map<Integer, Order> orders;
+            synchronized (CUSTOMERS) {
+                synchronized (PRODUCTS) {
+                    synchronized (ORDERS) {
+                        customers = CUSTOMERS.takePending();
+                        products = PRODUCTS.takePending();
+                        orders = ORDERS.takePending();
+                    }
+                }
+            }
+            CUSTOMERS.write(customers);
+            PRODUCTS.write(products);
+            ORDERS.write(orders);
+            Checkpoint checkpoint = new Checkpoint(dir, System.currentTimeMillis());
+            for (Store<?> store : STORES) {
+                store.sync();
+                store.freeze(checkpoint);
+            }
+            return checkpoint;
+        });
+    }
+    
+    // Where checkpoints kept between backups live; on the data directory's file system,
+    // so they can be hard links
+    static File checkpointDir(String name) {
+        return new File(CHECKPOINTS_DIR, name);
+    }
+    
+    // A snapshot written from anything but the journal has changes no log holds, so kept
+    // checkpoints can't be followed past it: drop their links to the store's files, and
+    // the next backup copies the store in full
+    private static void invalidateCheckpoints(Store<?> store) {
+        File[] checkpoints = new File(CHECKPOINTS_DIR).listFiles(File::isDirectory);
+        if (checkpoints == null) {
+            return;
+        }
+        String prefix = new File(store.snapshotFile).getName().replace(".dat", ".");
+        for (File checkpoint : checkpoints) {
+            File[] links = checkpoint.listFiles((dir, name) -> name.startsWith(prefix));
+            if (links != null) {
+                for (File link : links) {
+                    link.delete();
+                }
+            }
+        }
+    }
+    
+    private static <T extends BaseEntity> void append(Store<T> store, byte op, int id, T entity, Supplier<List<T>> all) {
+        store.enqueue(id, op == EntityJournal.PUT ? entity : null, all);
+    }
+    
+    // Fold the journal into a fresh snapshot in the background. Services change their
+    // tables before queuing a change, and the listing is taken after the journal is
+    // sealed, so the snapshot covers every sealed record.
+    private static <T extends BaseEntity> void compact(Store<T> store, Supplier<List<T>> all) {
+        try {
+            if (!store.journal.seal()) {
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting " + store.label + ": " + e.getMessage());
+            return;
+        }
+        List<T> snapshot = all.get();
+        store.compactionQueued = true;
+        COMPACTOR.execute(() -> {
+            try {
+                if (writeSnapshot(store, snapshot)) {
+                    store.journal.retireSealed();
+                }
+            } catch (IOException e) {
+                System.err.println("Error compacting " + store.label + ": " + e.getMessage());
+            } finally {
+                store.compactionQueued = false;
+            }
+        });
+    }
+    
+    // Write to a temporary file, force it to disk and rename it into place; the snapshot
+    // it replaces is renamed to .prev rather than deleted, so no data is copied. A crash
+    // between the two renames leaves no snapshot, and load() falls back to .prev.
+    // The index, if any, is renamed after the snapshot; a crash in between leaves an index
+    // whose checksum no longer matches, and it is rebuilt on the next mapped open
+    private static <T extends BaseEntity> boolean writeSnapshot(Store<T> store, List<T> entities) {
+        File target = new File(store.snapshotFile);
+        File temp = new File(store.snapshotFile + ".tmp");
+        File indexTemp = store.indexFile != null ? new File(store.indexFile + ".tmp") : null;
+        try {
+            store.codec.writeFile(temp, entities, indexTemp);
+            synchronized (store.journal) {
+                if (target.exists()) {
+                    Files.move(target.toPath(), new File(store.snapshotFile + PREVIOUS_SUFFIX).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (indexTemp != null) {
+                    Files.move(indexTemp.toPath(), new File(store.indexFile).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            syncDirectory(target.getAbsoluteFile().getParentFile());
+            return true;
         } catch (IOException e) {
-            System.err.println("Error saving orders: " + e.getMessage());
+            System.err.println("Error saving " + target.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Make renames in the directory durable. Not every platform can open a directory
+    // (Windows can't); there the renames are as durable as the file system makes them.
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here
+        }
+    }
+    
+    // Java serialization streams start with 0xACED
+    private static boolean isJavaSerialized(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == 0xAC && in.read() == 0xED;
         }
     }
     
-    // Load orders
+    private static boolean isJavaSerialized(byte[] payload) {
+        return payload.length >= 2 && (payload[0] & 0xFF) == 0xAC && (payload[1] & 0xFF) == 0xED;
+    }
+    
     @SuppressWarnings("unchecked")
-    public static List<Order> loadOrders() {
-        File file = new File(ORDERS_FILE);
-        if (!file.exists()) {
-            return new ArrayList<>();
+    private static <T> List<T> readLegacySnapshot(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return new ArrayList<>((List<T>) ois.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
         }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ORDERS_FILE))) {
-            return (List<Order>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading orders: " + e.getMessage());
-            return new ArrayList<>();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T readLegacyRecord(byte[] payload) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (T) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+package com.example.crm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Result of checking a list of customers for duplicate emails and phone numbers;
+// see CustomerService.dedupeLeads() and dedupeCustomers()
+class DedupeReport {
+    // A customer of the list and what it duplicates: an existing customer, or the
+    // customer at an earlier row of the list
+    static final class Duplicate {
+        final int row;
+        final Customer customer;
+        final String field;
+        final Customer existing;
+        final int earlierRow;
+
+        Duplicate(int row, Customer customer, String field, Customer existing, int earlierRow) {
+            this.row = row;
+            this.customer = customer;
+            this.field = field;
+            this.existing = existing;
+            this.earlierRow = earlierRow;
+        }
+
+        @Override
+        public String toString() {
+            String value = field.equals("email") ? customer.getEmail() : customer.getPhone();
+            String original = existing != null ? "customer " + existing.getId() + " (" + existing.getName() + ")"
+                    : "row " + earlierRow;
+            return "Row " + row + " (" + customer.getName() + "): " + field + " " + value + " matches " + original;
+        }
+    }
+
+    private final int checked;
+    private final List<Duplicate> duplicates = new ArrayList<>();
+
+    DedupeReport(int checked) {
+        this.checked = checked;
+    }
+
+    void add(int row, Customer customer, String field, Customer existing, int earlierRow) {
+        duplicates.add(new Duplicate(row, customer, field, existing, earlierRow));
+    }
+
+    public int getChecked() {
+        return checked;
+    }
+
+    public int getUnique() {
+        return checked - duplicates.size();
+    }
+
+    public List<Duplicate> getDuplicates() {
+        return Collections.unmodifiableList(duplicates);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d checked, %,d duplicates, %,d unique", checked, duplicates.size(), getUnique());
+    }
+}
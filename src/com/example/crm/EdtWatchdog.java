@@ -0,0 +1,116 @@
+package com.example.crm;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+
+// Times every event dispatched on the Event Dispatch Thread and logs those that run
+// longer than the threshold. A monitor thread also reports an event while it is still
+// running past the threshold, with the EDT's stack, so a hang shows where it is stuck.
+// Events that open a modal dialog keep pumping events until it closes; they aren't
+// counted as blocking.
+class EdtWatchdog extends EventQueue {
+    private static final int STACK_DEPTH = 8;
+
+    private final long thresholdNanos;
+    private volatile Thread edt;
+    // Start of the event being dispatched right now, or 0 between events
+    private volatile long dispatchStart;
+    private volatile long reportedStart;
+    // Counts dispatches, so an event can tell whether others ran inside it (modal loop)
+    private long dispatched;
+
+    // Metrics, guarded by this
+    private long slowEvents;
+    private long maxNanos;
+
+    private EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    static EdtWatchdog install(long thresholdMillis) {
+        EdtWatchdog watchdog = new EdtWatchdog(thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(watchdog);
+        Thread monitor = new Thread(() -> watchdog.monitor(Math.max(10, thresholdMillis / 2)), "crm-edt-watchdog");
+        monitor.setDaemon(true);
+        monitor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(watchdog), "crm-edt-watchdog-summary"));
+        return watchdog;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        edt = Thread.currentThread();
+        long start = System.nanoTime();
+        long before = ++dispatched;
+        dispatchStart = start;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            // Back in an event loop (the main one or a modal dialog's)
+            dispatchStart = 0;
+            if (dispatched == before && elapsed > thresholdNanos) {
+                synchronized (this) {
+                    slowEvents++;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                }
+                System.err.printf("EDT blocked for %d ms by %s%n", elapsed / 1_000_000, describe(event));
+            }
+        }
+    }
+
+    private void monitor(long intervalMillis) {
+        while (true) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = dispatchStart;
+            Thread thread = edt;
+            if (start == 0 || start == reportedStart || System.nanoTime() - start < thresholdNanos) {
+                continue;
+            }
+            StackTraceElement[] stack = thread.getStackTrace();
+            if (isWaitingForEvents(stack)) {
+                continue;
+            }
+            reportedStart = start;
+            StringBuilder message = new StringBuilder("EDT still busy after ")
+                    .append((System.nanoTime() - start) / 1_000_000).append(" ms, at:");
+            for (int i = 0; i < Math.min(STACK_DEPTH, stack.length); i++) {
+                message.append("\n    ").append(stack[i]);
+            }
+            System.err.println(message);
+        }
+    }
+
+    // A modal dialog waiting for input runs a nested event loop inside the event that opened it
+    private static boolean isWaitingForEvents(StackTraceElement[] stack) {
+        for (int i = 0; i < Math.min(STACK_DEPTH, stack.length); i++) {
+            if (stack[i].getClassName().equals("java.awt.EventQueue") && stack[i].getMethodName().equals("getNextEvent")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(AWTEvent event) {
+        return event.getClass().getSimpleName() + " from " + event.getSource().getClass().getSimpleName();
+    }
+
+    public synchronized long slowEvents() {
+        return slowEvents;
+    }
+
+    public synchronized double maxBlockedMillis() {
+        return maxNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EDT: %d events over %d ms, longest %.1f ms",
+                slowEvents(), thresholdNanos / 1_000_000, maxBlockedMillis());
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.crm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+// Primary-key index for a service: O(1) lookup by ID through int-keyed hash maps,
+// plus an ID-ordered list so getAllX() keeps its insertion order. IDs are handed out
+// in increasing order, so the list stays sorted and deletes can binary-search it.
+//
+// Safe for concurrent use. Lookups are split over lock stripes by ID so readers and
+// writers of different entities rarely contend; a writer holds its stripe lock and
+// then the list lock. list() hands out an immutable snapshot that is rebuilt lazily
+// after a write, so callers can iterate while other threads keep writing.
+class EntityIndex<T extends BaseEntity> implements EntityTable<T> {
+    private static final int STRIPES = 16;
+
+    private final IntObjectMap<T>[] stripes;
+    private final List<T> ordered;
+    private volatile List<T> snapshot;
+
+    public EntityIndex(List<T> entities) {
+        stripes = newStripes(entities.size() / STRIPES);
+        ordered = new ArrayList<>(entities);
+        ordered.sort(Comparator.comparingInt(BaseEntity::getId));
+        for (T entity : ordered) {
+            stripe(entity.getId()).put(entity.getId(), entity);
+        }
+    }
+
+    private static <T> IntObjectMap<T>[] newStripes(int expectedSize) {
+        @SuppressWarnings("unchecked")
+        IntObjectMap<T>[] stripes = (IntObjectMap<T>[]) new IntObjectMap<?>[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new IntObjectMap<>(expectedSize);
+        }
+        return stripes;
+    }
+
+    // Consecutive IDs land on different stripes
+    private IntObjectMap<T> stripe(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    @Override
+    public T get(int id) {
+        IntObjectMap<T> stripe = stripe(id);
+        synchronized (stripe) {
+            return stripe.get(id);
+        }
+    }
+
+    @Override
+    public void add(T entity) {
+        int id = entity.getId();
+        IntObjectMap<T> stripe = stripe(id);
+        synchronized (stripe) {
+            boolean replaced = stripe.put(id, entity) != null;
+            synchronized (ordered) {
+                if (replaced) {
+                    ordered.set(position(id), entity);
+                } else if (ordered.isEmpty() || ordered.get(ordered.size() - 1).getId() < id) {
+                    ordered.add(entity);
+                } else {
+                    ordered.add(-position(id) - 1, entity);
+                }
+                snapshot = null;
+            }
+        }
+    }
+
+    @Override
+    public T remove(int id) {
+        IntObjectMap<T> stripe = stripe(id);
+        synchronized (stripe) {
+            T removed = stripe.remove(id);
+            if (removed != null) {
+                synchronized (ordered) {
+                    ordered.remove(position(id));
+                    snapshot = null;
+                }
+            }
+            return removed;
+        }
+    }
+
+    // Holds every stripe lock and then the list lock, so the batch appears all at once.
+    // Freshly allocated IDs sort after the existing ones and are appended in one go.
+    @Override
+    public void addAll(Collection<T> entities) {
+        List<T> batch = new ArrayList<>(entities);
+        batch.sort(Comparator.comparingInt(BaseEntity::getId));
+        withAllStripes(0, () -> {
+            boolean replaced = false;
+            for (T entity : batch) {
+                replaced |= stripe(entity.getId()).put(entity.getId(), entity) != null;
+            }
+            synchronized (ordered) {
+                if (!replaced && !batch.isEmpty()
+                        && (ordered.isEmpty() || ordered.get(ordered.size() - 1).getId() < batch.get(0).getId())) {
+                    ordered.addAll(batch);
+                } else {
+                    for (T entity : batch) {
+                        int position = position(entity.getId());
+                        if (position >= 0) {
+                            ordered.set(position, entity);
+                        } else {
+                            ordered.add(-position - 1, entity);
+                        }
+                    }
+                }
+                snapshot = null;
+            }
+        });
+    }
+
+    // Stripe locks are always taken in index order, and single-entity writers only
+    // ever hold one, so this can't deadlock
+    private void withAllStripes(int from, Runnable action) {
+        if (from == STRIPES) {
+            action.run();
+            return;
+        }
+        synchronized (stripes[from]) {
+            withAllStripes(from + 1, action);
+        }
+    }
+
+    // Binary search over the ID-sorted list; same contract as Collections.binarySearch.
+    // Callers hold the list lock.
+    private int position(int id) {
+        int low = 0;
+        int high = ordered.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = ordered.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public int maxId() {
+        synchronized (ordered) {
+            return ordered.isEmpty() ? 0 : ordered.get(ordered.size() - 1).getId();
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (ordered) {
+            return ordered.size();
+        }
+    }
+
+    // Found in the list itself and copied, so a page costs O(log n + limit) even right
+    // after a write, when list() would first have to copy every entity
+    @Override
+    public List<T> page(int afterId, int limit) {
+        synchronized (ordered) {
+            int from = position(afterId);
+            from = from >= 0 ? from + 1 : -from - 1;
+            return List.copyOf(ordered.subList(from, (int) Math.min(ordered.size(), (long) from + limit)));
+        }
+    }
+
+    // Likewise copied straight from the list, in O(limit)
+    @Override
+    public List<T> slice(int offset, int limit) {
+        synchronized (ordered) {
+            int from = Math.min(offset, ordered.size());
+            return List.copyOf(ordered.subList(from, (int) Math.min(ordered.size(), (long) from + limit)));
+        }
+    }
+
+    @Override
+    public List<T> list() {
+        List<T> current = snapshot;
+        if (current == null) {
+            synchronized (ordered) {
+                current = snapshot;
+                if (current == null) {
+                    current = List.copyOf(ordered);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+}
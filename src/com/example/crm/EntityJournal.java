@@ -0,0 +1,235 @@
+package com.example.crm;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+// Append-only log of entity mutations stored next to a snapshot .dat file.
+// Each record is [op][id][payload length][payload]; deletes carry no payload.
+// Whenever the log is opened for appending, a FORMAT record whose ID field holds the
+// payload format version (the RecordCodec version) comes first, so records written by
+// different versions can be told apart. Records before any FORMAT record were written
+// before logs recorded their format, and are reported as format 0.
+// Once a snapshot covers a log, the log is kept as the previous log (.prev) rather than
+// deleted: it holds the changes from the previous snapshot generation to the current one.
+class EntityJournal {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte FORMAT = 3;
+
+    interface RecordHandler {
+        void onRecord(byte op, int id, byte[] payload, int format) throws IOException;
+    }
+
+    private final File activeFile;
+    private final File sealedFile;
+    private final File previousFile;
+    private final int format;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long size;
+    private volatile boolean compactable = true;
+
+    EntityJournal(String path, int format) {
+        this.activeFile = new File(path);
+        this.sealedFile = new File(path + ".old");
+        this.previousFile = new File(path + ".prev");
+        this.format = format;
+        this.size = activeFile.length();
+    }
+
+    // Buffered; call flush() after a batch of appends
+    public synchronized void append(byte op, int id, byte[] payload) throws IOException {
+        if (out == null) {
+            fileOut = new FileOutputStream(activeFile, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+            out.writeByte(FORMAT);
+            out.writeInt(format);
+            out.writeInt(0);
+            size += 9;
+        }
+        out.writeByte(op);
+        out.writeInt(id);
+        out.writeInt(payload.length);
+        out.write(payload);
+        size += 9 + payload.length;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    // Flush and force the log to disk
+    public synchronized void sync() throws IOException {
+        if (out != null) {
+            out.flush();
+            fileOut.getFD().sync();
+        }
+    }
+
+    String activePath() {
+        return activeFile.getPath();
+    }
+
+    String sealedPath() {
+        return sealedFile.getPath();
+    }
+
+    String previousPath() {
+        return previousFile.getPath();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0 && !sealedFile.exists();
+    }
+
+    // Discard all logs, including the previous one
+    public synchronized void reset() {
+        close();
+        activeFile.delete();
+        sealedFile.delete();
+        previousFile.delete();
+        size = 0;
+    }
+
+    // Once a freshly written snapshot covers the whole log, keep it as the previous log.
+    // Only one file can be kept, so the log must not be split (see isSplit()).
+    public synchronized void retire() throws IOException {
+        close();
+        File covered = sealedFile.exists() ? sealedFile : activeFile;
+        if (covered.exists()) {
+            Files.move(covered.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            previousFile.delete();
+        }
+        size = 0;
+    }
+
+    // A previous log means a snapshot has been written before
+    public boolean hasPrevious() {
+        return previousFile.exists();
+    }
+
+    // Both a sealed and an active log, left by a compaction that didn't finish
+    public synchronized boolean isSplit() {
+        return sealedFile.exists() && activeFile.exists();
+    }
+
+    // Turned off while the snapshot is memory-mapped and can't be replaced
+    public void setCompactable(boolean compactable) {
+        this.compactable = compactable;
+    }
+
+    public boolean isCompactable() {
+        return compactable;
+    }
+
+    // A sealed log exists while a compaction is folding it into the snapshot
+    public boolean isCompacting() {
+        return sealedFile.exists();
+    }
+
+    // Move the active log aside so new appends start a fresh file.
+    // Everything in the sealed log must be covered by the next snapshot.
+    public synchronized boolean seal() throws IOException {
+        if (sealedFile.exists()) {
+            return false;
+        }
+        close();
+        if (activeFile.exists() && !activeFile.renameTo(sealedFile)) {
+            throw new IOException("Could not seal journal " + activeFile);
+        }
+        size = 0;
+        return true;
+    }
+
+    // Keep the sealed log as the previous log once the compaction's snapshot covers it
+    public synchronized void retireSealed() throws IOException {
+        Files.move(sealedFile.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Replay the sealed log (left over from an interrupted compaction) and then the active log
+    public synchronized void replay(RecordHandler handler) throws IOException {
+        replay(handler, false);
+    }
+
+    // With includePrevious, the previous log comes first, for loading the previous snapshot.
+    // Its records may already be in that snapshot; replaying them again is harmless because
+    // every later change to the same entity follows in the sealed or active log.
+    public synchronized void replay(RecordHandler handler, boolean includePrevious) throws IOException {
+        close();
+        if (includePrevious) {
+            replayFile(previousFile, handler);
+        }
+        replayFile(sealedFile, handler);
+        long validLength = replayFile(activeFile, handler);
+        if (validLength < activeFile.length()) {
+            // Cut off a torn tail so new appends don't land behind garbage
+            try (RandomAccessFile raf = new RandomAccessFile(activeFile, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        size = activeFile.length();
+    }
+
+    // Returns the length of the intact prefix of the file
+    private static long replayFile(File file, RecordHandler handler) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long offset = 0;
+        long length = file.length();
+        int format = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return offset;
+                }
+                try {
+                    int id = in.readInt();
+                    int payloadLength = in.readInt();
+                    if (payloadLength < 0 || payloadLength > length - offset - 9) {
+                        // A damaged length; nothing from here on can be trusted
+                        System.err.println("Ignoring records from a damaged one at offset " + offset + " of " + file.getName());
+                        return offset;
+                    }
+                    byte[] payload = new byte[payloadLength];
+                    in.readFully(payload);
+                    if (op == FORMAT) {
+                        format = id;
+                    } else {
+                        handler.onRecord(op, id, payload, format);
+                    }
+                    offset += 9 + payload.length;
+                } catch (EOFException e) {
+                    // Torn record from a crash mid-append; everything before it is intact
+                    System.err.println("Ignoring incomplete record at end of " + file.getName());
+                    return offset;
+                }
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal " + activeFile.getName() + ": " + e.getMessage());
+            }
+            out = null;
+            fileOut = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.crm;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Search field plus result list for choosing one entity out of many. Each pause in
+// typing runs one search for the top matches in the background, so the picker opens
+// instantly and never holds more than a page of entities, however large the data set.
+class EntityPicker<T extends BaseEntity> extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int RESULT_LIMIT = 20;
+    private static final int DEBOUNCE_MILLIS = 150;
+
+    private final BiFunction<String, Integer, List<T>> search;
+    private final JTextField queryField = new JTextField(25);
+    private final DefaultListModel<T> results = new DefaultListModel<>();
+    private final JList<T> resultList = new JList<>(results);
+    private final Timer debounce;
+    // Only the latest search may fill the list; older ones finish into the void
+    private int searchSequence;
+
+    EntityPicker(BiFunction<String, Integer, List<T>> search, Function<T, String> label) {
+        super(new BorderLayout(5, 5));
+        this.search = search;
+
+        resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        resultList.setVisibleRowCount(8);
+        resultList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                @SuppressWarnings("unchecked")
+                T entity = (T) value;
+                setText(label.apply(entity));
+                return this;
+            }
+        });
+
+        debounce = new Timer(DEBOUNCE_MILLIS, e -> runSearch());
+        debounce.setRepeats(false);
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                debounce.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                debounce.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                debounce.restart();
+            }
+        });
+
+        add(queryField, BorderLayout.NORTH);
+        add(new JScrollPane(resultList), BorderLayout.CENTER);
+        runSearch();
+    }
+
+    public T getSelected() {
+        return resultList.getSelectedValue();
+    }
+
+    private void runSearch() {
+        int sequence = ++searchSequence;
+        String query = queryField.getText();
+        new SwingWorker<List<T>, Void>() {
+            @Override
+            protected List<T> doInBackground() {
+                return search.apply(query, RESULT_LIMIT);
+            }
+
+            @Override
+            protected void done() {
+                if (sequence != searchSequence) {
+                    return;
+                }
+                try {
+                    List<T> matches = get();
+                    results.clear();
+                    results.addAll(matches);
+                    if (!matches.isEmpty()) {
+                        resultList.setSelectedIndex(0);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Search failed: " + e.getMessage());
+                    results.clear();
+                }
+            }
+        }.execute();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.crm;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Storage behind a service: lookup by primary key plus an ID-ordered listing.
+// Implementations are safe for concurrent use.
+interface EntityTable<T extends BaseEntity> {
+    T get(int id);
+
+    // Adds the entity, or replaces the one with the same ID
+    void add(T entity);
+
+    // Same as add() for each entity, but cheaper for large batches
+    void addAll(Collection<T> entities);
+
+    T remove(int id);
+
+    int maxId();
+
+    int size();
+
+    // Read-only, ID-ordered listing of the entities present when it was taken;
+    // later adds and removes don't show up in it
+    List<T> list();
+
+    // Up to limit entities with IDs above afterId, in ID order: a page that the next
+    // one continues from its last ID, however entities are added or removed in between.
+    // Starts with afterId 0. Found by binary search in a listing.
+    default List<T> page(int afterId, int limit) {
+        List<T> all = list();
+        int low = 0;
+        int high = all.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (all.get(mid).getId() <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return List.copyOf(all.subList(low, (int) Math.min(all.size(), (long) low + limit)));
+    }
+
+    // Up to limit entities from position offset of the ID order on, for offset-based
+    // pages; an offset past the end gives an empty list. Taken from a listing.
+    default List<T> slice(int offset, int limit) {
+        List<T> all = list();
+        int from = Math.min(offset, all.size());
+        return List.copyOf(all.subList(from, (int) Math.min(all.size(), (long) from + limit)));
+    }
+
+    // The entities of a listing, split evenly for parallel streams
+    default Stream<T> stream() {
+        return StreamSupport.stream(new SnapshotSpliterator<>(list()), false);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.crm;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+// Read-only table model over a whole service table, in ID order, or over a page of
+// search results, best first. A table is read through its size and offset slices (see
+// EntityTable.slice()): only a block of rows around the ones being painted is fetched,
+// so opening, scrolling and refreshing copy no more than that block, whatever the table's
+// size. Cells are read from the entities when the table paints them.
+// Changes made through the GUI are announced as single-row events that carry just the
+// changed entity; showTable() and showRows() are for anything larger, such as an import.
+// Used on the EDT only.
+class EntityTableModel<T extends BaseEntity> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    // Rows fetched at a time; more than a screenful, so painting one fetches once
+    private static final int BLOCK = 256;
+
+    private final List<String> columnNames = new ArrayList<>();
+    private final List<Function<T, ?>> columnValues = new ArrayList<>();
+
+    // The table shown, or null while showing search results
+    private IntSupplier size;
+    private BiFunction<Integer, Integer, List<T>> slice;
+    private int rowCount;
+    // Rows blockStart onwards of the table, as last fetched
+    private int blockStart;
+    private List<T> block = List.of();
+    // Search results, when no table is shown
+    private List<T> rows = new ArrayList<>();
+
+    EntityTableModel<T> column(String name, Function<T, ?> value) {
+        columnNames.add(name);
+        columnValues.add(value);
+        return this;
+    }
+
+    // Shows a whole table, given its size and a slice of it (offset, limit) in ID order
+    public void showTable(IntSupplier size, BiFunction<Integer, Integer, List<T>> slice) {
+        this.size = size;
+        this.slice = slice;
+        rows = new ArrayList<>();
+        refresh();
+    }
+
+    public void showRows(List<T> results) {
+        size = null;
+        slice = null;
+        block = List.of();
+        rows = new ArrayList<>(results);
+        fireTableDataChanged();
+    }
+
+    // Reads the size of the table shown again and repaints every row
+    public void refresh() {
+        if (size != null) {
+            rowCount = size.getAsInt();
+            block = List.of();
+        }
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return size != null ? rowCount : rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames.get(column);
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        T entity = getEntityAt(row);
+        return entity == null ? null : columnValues.get(column).apply(entity);
+    }
+
+    // Null if the table has shrunk past the row since its size was read
+    public T getEntityAt(int row) {
+        if (size == null) {
+            return rows.get(row);
+        }
+        if (row < blockStart || row >= blockStart + block.size()) {
+            blockStart = Math.max(0, row - BLOCK / 2);
+            block = slice.apply(blockStart, BLOCK);
+        }
+        int index = row - blockStart;
+        return index < block.size() ? block.get(index) : null;
+    }
+
+    // The events below fall back to a refresh when the table changed by more than the
+    // one entity (e.g. another thread wrote meanwhile). Search results only change
+    // with a new search, apart from updates and deletes of the rows they show.
+
+    public void entityAdded(T entity) {
+        if (size == null) {
+            return;
+        }
+        // New IDs are the highest, so the entity normally becomes the last row
+        T last = rowCount == 0 ? null : getEntityAt(rowCount - 1);
+        block = List.of();
+        if (size.getAsInt() == rowCount + 1 && (last == null || last.getId() < entity.getId())) {
+            rowCount++;
+            fireTableRowsInserted(rowCount - 1, rowCount - 1);
+        } else {
+            refresh();
+        }
+    }
+
+    public void entityUpdated(T entity) {
+        int row = rowOf(entity.getId());
+        if (size != null) {
+            block = List.of();
+        }
+        if (row >= 0) {
+            if (size == null) {
+                rows.set(row, entity);
+            }
+            fireTableRowsUpdated(row, row);
+        } else if (getRowCount() > 0) {
+            // Not among the rows fetched, so not on screen either; repainting is enough
+            fireTableRowsUpdated(0, getRowCount() - 1);
+        }
+    }
+
+    public void entityRemoved(int id) {
+        int row = rowOf(id);
+        if (size == null) {
+            if (row >= 0) {
+                rows.remove(row);
+                fireTableRowsDeleted(row, row);
+            }
+            return;
+        }
+        block = List.of();
+        if (row >= 0 && size.getAsInt() == rowCount - 1) {
+            rowCount--;
+            fireTableRowsDeleted(row, row);
+        } else {
+            refresh();
+        }
+    }
+
+    // Search results are looked through; the table's rows are sorted by ID, so a row
+    // in the block fetched last is found by binary search. Returns -1 if it isn't there.
+    private int rowOf(int id) {
+        if (size == null) {
+            for (int row = 0; row < rows.size(); row++) {
+                if (rows.get(row).getId() == id) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+        int low = 0;
+        int high = block.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = block.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return blockStart + mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.crm;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load test for the API server (see ApiServer): a number of threads send requests in a
+// loop, mostly reads with some orders created, and the requests per second and latency
+// percentiles of each kind of request are reported at the end. Run
+//   java -cp <classes> com.example.crm.HttpLoadClient --url http://localhost:8080 --threads 16 --seconds 30
+// against a running server. Like LoadDriver, each thread waits for its response before
+// sending the next request.
+class HttpLoadClient {
+    // One kind of request, with its weight among the reads or the writes
+    private enum Request {
+        GET_CUSTOMER("GET customer", false, 40),
+        LIST_CUSTOMERS("GET customers page", false, 15),
+        GET_ORDER("GET order", false, 25),
+        CUSTOMER_ORDERS("GET customer orders", false, 10),
+        STATS("GET stats", false, 10),
+        CREATE_ORDER("POST order", true, 80),
+        UPDATE_CUSTOMER("PUT customer", true, 20);
+
+        final String label;
+        final boolean write;
+        final int weight;
+
+        Request(String label, boolean write, int weight) {
+            this.label = label;
+            this.write = write;
+            this.weight = weight;
+        }
+    }
+
+    private static final Request[] REQUESTS = Request.values();
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final int writePercent;
+    private final long seed;
+    private final int customers;
+    private final int products;
+    private final int orders;
+    // Responses other than 2xx and 404 (random IDs may miss), and failed requests
+    private final AtomicLong errors = new AtomicLong();
+
+    HttpLoadClient(String baseUrl, int writePercent, long seed) throws IOException, InterruptedException {
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.writePercent = writePercent;
+        this.seed = seed;
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(this.baseUrl + "/api/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("GET /api/stats answered " + response.statusCode());
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) JsonParser.parse(response.body());
+        customers = ((Long) stats.get("customers")).intValue();
+        products = ((Long) stats.get("products")).intValue();
+        orders = ((Long) stats.get("orders")).intValue();
+        if (customers == 0 || products == 0) {
+            throw new IOException("The server has no customers or products to work with");
+        }
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+
+    // Runs "threads" threads for warmup + measured milliseconds and returns the
+    // latencies of the measured part, by kind of request
+    LatencyHistogram[] run(int threads, long warmupMillis, long measuredMillis) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmupMillis * 1_000_000;
+        long until = measureFrom + measuredMillis * 1_000_000;
+        List<Sender> senders = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Sender sender = new Sender(new SplittableRandom(seed + i), measureFrom, until);
+            sender.setName("crm-load-" + i);
+            senders.add(sender);
+            sender.start();
+        }
+        LatencyHistogram[] merged = newHistograms();
+        for (Sender sender : senders) {
+            sender.join();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i].add(sender.histograms[i]);
+            }
+        }
+        return merged;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[REQUESTS.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private final class Sender extends Thread {
+        final SplittableRandom random;
+        final long measureFrom;
+        final long until;
+        final LatencyHistogram[] histograms = newHistograms();
+        final int readWeights;
+        final int writeWeights;
+
+        Sender(SplittableRandom random, long measureFrom, long until) {
+            this.random = random;
+            this.measureFrom = measureFrom;
+            this.until = until;
+            int reads = 0;
+            int writes = 0;
+            for (Request request : REQUESTS) {
+                if (request.write) {
+                    writes += request.weight;
+                } else {
+                    reads += request.weight;
+                }
+            }
+            readWeights = reads;
+            writeWeights = writes;
+        }
+
+        @Override
+        public void run() {
+            long start;
+            while ((start = System.nanoTime()) < until) {
+                Request request = pick();
+                try {
+                    int status = client.send(build(request), HttpResponse.BodyHandlers.discarding()).statusCode();
+                    if (status >= 300 && status != 404) {
+                        errors.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (start >= measureFrom) {
+                    histograms[request.ordinal()].record(System.nanoTime() - start);
+                }
+            }
+        }
+
+        private Request pick() {
+            boolean write = random.nextInt(100) < writePercent;
+            int n = random.nextInt(write ? writeWeights : readWeights);
+            for (Request request : REQUESTS) {
+                if (request.write == write) {
+                    n -= request.weight;
+                    if (n < 0) {
+                        return request;
+                    }
+                }
+            }
+            throw new AssertionError();
+        }
+
+        private HttpRequest build(Request request) {
+            int customerId = 1 + random.nextInt(customers);
+            return switch (request) {
+                case GET_CUSTOMER -> get("/api/customers/" + customerId);
+                case LIST_CUSTOMERS -> get("/api/customers?after=" + random.nextInt(customers) + "&limit=50");
+                case GET_ORDER -> get("/api/orders/" + (1 + random.nextInt(Math.max(1, orders))));
+                case CUSTOMER_ORDERS -> get("/api/customers/" + customerId + "/orders?limit=20");
+                case STATS -> get("/api/stats");
+                case CREATE_ORDER -> send("POST", "/api/orders", "{\"customerId\":" + customerId
+                        + ",\"items\":[{\"productId\":" + (1 + random.nextInt(products)) + ",\"quantity\":"
+                        + (1 + random.nextInt(10)) + "}]}");
+                case UPDATE_CUSTOMER -> send("PUT", "/api/customers/" + customerId,
+                        "{\"contactPerson\":\"Load Test " + random.nextInt(1_000_000) + "\"}");
+            };
+        }
+
+        private HttpRequest get(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).build();
+        }
+
+        private HttpRequest send(String method, String path, String json) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(json)).build();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String url = "http://localhost:8080";
+        int threads = 16;
+        int seconds = 30;
+        int warmup = 5;
+        int writePercent = 10;
+        long seed = 42;
+        try {
+            if (args.length % 2 != 0) {
+                throw new IllegalArgumentException("Missing option value");
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--url" -> url = value;
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--seconds" -> seconds = Integer.parseInt(value);
+                    case "--warmup" -> warmup = Integer.parseInt(value);
+                    case "--write-percent" -> writePercent = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (threads < 1 || seconds < 1 || warmup < 0 || writePercent < 0 || writePercent > 100) {
+                throw new IllegalArgumentException("Out of range option value");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: HttpLoadClient [--url URL] [--threads N] [--seconds N] [--warmup N]"
+                    + " [--write-percent 0-100] [--seed N]");
+            System.exit(1);
+        }
+
+        HttpLoadClient loadClient;
+        try {
+            loadClient = new HttpLoadClient(url, writePercent, seed);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not reach the server at " + url + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.printf("Sending requests to %s from %d threads, %d%% writes, for %d s after %d s of warmup...%n",
+                url, threads, writePercent, seconds, warmup);
+        LatencyHistogram[] results = loadClient.run(threads, warmup * 1000L, seconds * 1000L);
+
+        System.out.println();
+        System.out.printf("%-20s %12s %10s %10s %10s %10s %10s %10s%n",
+                "Request", "Count", "Req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Max ms");
+        LatencyHistogram all = new LatencyHistogram();
+        for (Request request : REQUESTS) {
+            LatencyHistogram histogram = results[request.ordinal()];
+            all.add(histogram);
+            print(request.label, histogram, seconds);
+        }
+        print("All", all, seconds);
+        System.out.printf("%nFailed requests (including warmup): %,d%n", loadClient.getErrors());
+        System.exit(0);
+    }
+
+    private static void print(String label, LatencyHistogram histogram, int seconds) {
+        System.out.printf("%-20s %,12d %,10.0f %10.2f %10.2f %10.2f %10.2f %10.2f%n", label, histogram.getCount(),
+                histogram.getCount() / (double) seconds, histogram.percentile(50) / 1e6, histogram.percentile(90) / 1e6,
+                histogram.percentile(99) / 1e6, histogram.percentile(99.9) / 1e6, histogram.getMax() / 1e6);
+    }
+}
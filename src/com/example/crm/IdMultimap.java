@@ -0,0 +1,65 @@
+package com.example.crm;
+
+import java.util.Arrays;
+
+// Maps an entity ID to a sorted set of other entity IDs, e.g. a customer to its orders.
+// Keys and values are primitive ints, so a million links cost a few megabytes.
+// All access is synchronized on this object.
+class IdMultimap {
+    private static final int[] NONE = new int[0];
+
+    // Sorted IDs with room to grow
+    private static final class Ids {
+        int[] ids = new int[2];
+        int size;
+    }
+
+    private final IntObjectMap<Ids> links = new IntObjectMap<>();
+
+    // Adds id under key; does nothing if it's already there
+    public synchronized void add(int key, int id) {
+        Ids set = links.get(key);
+        if (set == null) {
+            set = new Ids();
+            links.put(key, set);
+        }
+        int at = set.size;
+        // IDs are usually added in increasing order, so this is usually an append
+        if (at > 0 && set.ids[at - 1] >= id) {
+            at = Arrays.binarySearch(set.ids, 0, set.size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+        }
+        if (set.size == set.ids.length) {
+            set.ids = Arrays.copyOf(set.ids, set.size * 2);
+        }
+        System.arraycopy(set.ids, at, set.ids, at + 1, set.size - at);
+        set.ids[at] = id;
+        set.size++;
+    }
+
+    public synchronized void remove(int key, int id) {
+        Ids set = links.get(key);
+        int at = set == null ? -1 : Arrays.binarySearch(set.ids, 0, set.size, id);
+        if (at < 0) {
+            return;
+        }
+        System.arraycopy(set.ids, at + 1, set.ids, at, set.size - at - 1);
+        if (--set.size == 0) {
+            links.remove(key);
+        }
+    }
+
+    // A copy of the IDs under key, in increasing order
+    public synchronized int[] get(int key) {
+        Ids set = links.get(key);
+        return set == null ? NONE : Arrays.copyOf(set.ids, set.size);
+    }
+
+    public synchronized int count(int key) {
+        Ids set = links.get(key);
+        return set == null ? 0 : set.size;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.crm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// Hash index from a normalized key of an entity (e.g. its email address) to the IDs of
+// the entities with that key. Buckets are keyed by the key's hash code, so the key
+// strings aren't kept twice; a lookup checks each candidate's current key. Entities
+// without a key (null) aren't indexed.
+//
+// The index is built on first use, so it costs nothing until something looks a key
+// up, and kept up to date on every change after that. Safe for concurrent use.
+class KeyIndex<T extends BaseEntity> {
+    private final Function<T, String> key;
+    private final IntFunction<T> lookup;
+    private final Supplier<List<T>> listing;
+
+    // Sorted IDs per key hash code
+    private final IntObjectMap<int[]> buckets = new IntObjectMap<>();
+    private boolean built;
+
+    KeyIndex(Function<T, String> key, IntFunction<T> lookup, Supplier<List<T>> listing) {
+        this.key = key;
+        this.lookup = lookup;
+        this.listing = listing;
+    }
+
+    // The entity's normalized key; take it before changing the entity and pass it to changed()
+    public String keyOf(T entity) {
+        return key.apply(entity);
+    }
+
+    // Index a new entity. Call after the entity is in its table.
+    public synchronized void add(T entity) {
+        if (built) {
+            insert(keyOf(entity), entity.getId());
+        }
+    }
+
+    public synchronized void changed(String oldKey, T entity) {
+        if (built) {
+            delete(oldKey, entity.getId());
+            insert(keyOf(entity), entity.getId());
+        }
+    }
+
+    public synchronized void removed(T entity) {
+        if (built) {
+            delete(keyOf(entity), entity.getId());
+        }
+    }
+
+    // The entity with the lowest ID whose key is the given (normalized) key, or null
+    public synchronized T first(String normalizedKey) {
+        if (normalizedKey == null) {
+            return null;
+        }
+        int[] ids = bucket(normalizedKey);
+        for (int id : ids) {
+            T entity = lookup.apply(id);
+            if (entity != null && normalizedKey.equals(keyOf(entity))) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    // Every entity with the given key, by ID
+    public synchronized List<T> all(String normalizedKey) {
+        List<T> found = new ArrayList<>();
+        if (normalizedKey == null) {
+            return found;
+        }
+        for (int id : bucket(normalizedKey)) {
+            T entity = lookup.apply(id);
+            if (entity != null && normalizedKey.equals(keyOf(entity))) {
+                found.add(entity);
+            }
+        }
+        return found;
+    }
+
+    private int[] bucket(String normalizedKey) {
+        if (!built) {
+            built = true;
+            for (T entity : listing.get()) {
+                insert(keyOf(entity), entity.getId());
+            }
+        }
+        int[] ids = buckets.get(normalizedKey.hashCode());
+        return ids != null ? ids : new int[0];
+    }
+
+    private void insert(String normalizedKey, int id) {
+        if (normalizedKey == null) {
+            return;
+        }
+        int hash = normalizedKey.hashCode();
+        int[] ids = buckets.get(hash);
+        if (ids == null) {
+            buckets.put(hash, new int[] {id});
+            return;
+        }
+        int at = Arrays.binarySearch(ids, id);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        int[] grown = new int[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, at);
+        grown[at] = id;
+        System.arraycopy(ids, at, grown, at + 1, ids.length - at);
+        buckets.put(hash, grown);
+    }
+
+    private void delete(String normalizedKey, int id) {
+        if (normalizedKey == null) {
+            return;
+        }
+        int hash = normalizedKey.hashCode();
+        int[] ids = buckets.get(hash);
+        int at = ids == null ? -1 : Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            buckets.remove(hash);
+            return;
+        }
+        int[] shrunk = new int[ids.length - 1];
+        System.arraycopy(ids, 0, shrunk, 0, at);
+        System.arraycopy(ids, at + 1, shrunk, at, ids.length - at - 1);
+        buckets.put(hash, shrunk);
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.crm;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless load test: a number of threads call the services in a loop with a mix of
+// reads and writes, the way the GUI and console would, and each operation's throughput
+// and latency percentiles are reported at the end. Run
+//   java -cp <classes> -Dcrm.dataDir=loadtest com.example.crm.LoadDriver --threads 8 --seconds 30
+// against a data directory filled by DataGenerator; an empty one is first filled with
+// --customers, --products and --orders (100,000, 500 and 200,000 by default).
+//
+// Threads start the next operation as soon as the last one returns, so a slow operation
+// delays the ones behind it instead of being measured by them (no coordinated-omission
+// correction); compare runs at the same thread count.
+class LoadDriver {
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // One kind of call, with its weight among the reads or the writes
+    private enum Operation {
+        GET_CUSTOMER("Get customer", false, 30),
+        SEARCH_CUSTOMERS("Search customers", false, 10),
+        CUSTOMER_ORDERS("Customer orders", false, 15),
+        GET_ORDER("Get order", false, 20),
+        SALES_BETWEEN("Sales for a week", false, 10),
+        STATUS("Status totals", false, 15),
+        ADD_CUSTOMER("Add customer", true, 25),
+        UPDATE_CUSTOMER("Update customer", true, 25),
+        CREATE_ORDER("Create order", true, 40),
+        UPDATE_PRICE("Update price", true, 10);
+
+        final String label;
+        final boolean write;
+        final int weight;
+
+        Operation(String label, boolean write, int weight) {
+            this.label = label;
+            this.write = write;
+            this.weight = weight;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final CustomerService customerService;
+    private final ProductService productService;
+    private final OrderService orderService;
+    private final int writePercent;
+    private final long seed;
+    // Numbers for new customers, so their contact details stay unique
+    private final AtomicInteger nextCustomer;
+
+    LoadDriver(CustomerService customerService, ProductService productService, OrderService orderService,
+            int writePercent, long seed) {
+        this.customerService = customerService;
+        this.productService = productService;
+        this.orderService = orderService;
+        this.writePercent = writePercent;
+        this.seed = seed;
+        // Well past the numbers DataGenerator gave the existing customers
+        this.nextCustomer = new AtomicInteger(customerService.getCustomerCount() + 100_000_000);
+    }
+
+    // Runs "threads" threads for warmup + measured milliseconds and returns the
+    // latencies of the measured part, by operation
+    LatencyHistogram[] run(int threads, long warmupMillis, long measuredMillis) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmupMillis * 1_000_000;
+        long until = measureFrom + measuredMillis * 1_000_000;
+        List<Worker> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(new SplittableRandom(seed + i), new DataGenerator(seed + i), measureFrom, until);
+            worker.setName("crm-load-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        LatencyHistogram[] merged = newHistograms();
+        for (Worker worker : workers) {
+            worker.join();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i].add(worker.histograms[i]);
+            }
+        }
+        return merged;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private final class Worker extends Thread {
+        final SplittableRandom random;
+        final DataGenerator generator;
+        final long measureFrom;
+        final long until;
+        final LatencyHistogram[] histograms = newHistograms();
+        final int readWeights;
+        final int writeWeights;
+
+        Worker(SplittableRandom random, DataGenerator generator, long measureFrom, long until) {
+            this.random = random;
+            this.generator = generator;
+            this.measureFrom = measureFrom;
+            this.until = until;
+            int reads = 0;
+            int writes = 0;
+            for (Operation operation : OPERATIONS) {
+                if (operation.write) {
+                    writes += operation.weight;
+                } else {
+                    reads += operation.weight;
+                }
+            }
+            readWeights = reads;
+            writeWeights = writes;
+        }
+
+        @Override
+        public void run() {
+            long start;
+            while ((start = System.nanoTime()) < until) {
+                Operation operation = pick();
+                perform(operation);
+                if (start >= measureFrom) {
+                    histograms[operation.ordinal()].record(System.nanoTime() - start);
+                }
+            }
+        }
+
+        private Operation pick() {
+            boolean write = random.nextInt(100) < writePercent;
+            int n = random.nextInt(write ? writeWeights : readWeights);
+            for (Operation operation : OPERATIONS) {
+                if (operation.write == write) {
+                    n -= operation.weight;
+                    if (n < 0) {
+                        return operation;
+                    }
+                }
+            }
+            throw new AssertionError();
+        }
+
+        private void perform(Operation operation) {
+            switch (operation) {
+                case GET_CUSTOMER -> customerService.getCustomerById(customerId());
+                case SEARCH_CUSTOMERS -> {
+                    Customer customer = customerService.getCustomerById(customerId());
+                    if (customer != null) {
+                        customerService.searchCustomers(customer.getContactPerson(), 20);
+                    }
+                }
+                case CUSTOMER_ORDERS -> orderService.getOrdersForCustomer(customerId());
+                case GET_ORDER -> orderService.getOrderById(1 + random.nextInt(Math.max(1, orderService.getOrderCount())));
+                case SALES_BETWEEN -> {
+                    long to = System.currentTimeMillis() - random.nextInt(365) * DAY_MILLIS;
+                    orderService.getSalesCentsBetween(to - 7 * DAY_MILLIS, to);
+                }
+                case STATUS -> {
+                    customerService.getCustomerCount();
+                    productService.getProductCount();
+                    orderService.getOrderCount();
+                    Money.format(orderService.getTotalSalesCents());
+                }
+                case ADD_CUSTOMER -> customerService.addCustomer(generator.customer(nextCustomer.getAndIncrement()));
+                case UPDATE_CUSTOMER -> {
+                    Customer customer = customerService.getCustomerById(customerId());
+                    if (customer != null) {
+                        // New details from a fresh customer number, so they stay unique
+                        Customer details = generator.customer(nextCustomer.getAndIncrement());
+                        customerService.updateCustomer(customer.getId(), customer.getName(), details.getContactPerson(),
+                                details.getPhone(), details.getEmail());
+                    }
+                }
+                case CREATE_ORDER -> {
+                    Order order = orderService.createOrder(customerId());
+                    if (order != null) {
+                        int items = generator.itemCount();
+                        for (int i = 0; i < items; i++) {
+                            orderService.addProductToOrder(order.getId(), productId(), generator.quantity());
+                        }
+                    }
+                }
+                case UPDATE_PRICE -> {
+                    Product product = productService.getProductById(productId());
+                    if (product != null) {
+                        productService.updateProduct(product.getId(), product.getName(), product.getDescription(),
+                                Math.max(1, product.getPriceCents() + random.nextInt(-100, 101)));
+                    }
+                }
+            }
+        }
+
+        // IDs from 1 to the count; IDs of deleted entities simply miss
+        private int customerId() {
+            return 1 + random.nextInt(Math.max(1, customerService.getCustomerCount()));
+        }
+
+        private int productId() {
+            return 1 + random.nextInt(Math.max(1, productService.getProductCount()));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seconds = 30;
+        int warmup = 5;
+        int writePercent = 10;
+        long seed = 42;
+        int customerCount = 100_000;
+        int productCount = 500;
+        int orderCount = 200_000;
+        try {
+            if (args.length % 2 != 0) {
+                throw new IllegalArgumentException("Missing option value");
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                int value = Integer.parseInt(args[i + 1]);
+                switch (args[i]) {
+                    case "--threads" -> threads = value;
+                    case "--seconds" -> seconds = value;
+                    case "--warmup" -> warmup = value;
+                    case "--write-percent" -> writePercent = value;
+                    case "--seed" -> seed = value;
+                    case "--customers" -> customerCount = value;
+                    case "--products" -> productCount = value;
+                    case "--orders" -> orderCount = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (threads < 1 || seconds < 1 || warmup < 0 || writePercent < 0 || writePercent > 100) {
+                throw new IllegalArgumentException("Out of range option value");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadDriver [--threads N] [--seconds N] [--warmup N] [--write-percent 0-100] [--seed N]"
+                    + " [--customers N] [--products N] [--orders N]");
+            System.exit(1);
+        }
+
+        PrintStream out = System.out;
+        long start = System.nanoTime();
+        CustomerService customerService = new CustomerService();
+        ProductService productService = new ProductService();
+        OrderService orderService = new OrderService(customerService, productService);
+        // The services would otherwise print every change, into the measurements
+        customerService.setQuiet(true);
+        productService.setQuiet(true);
+        orderService.setQuiet(true);
+        if (customerService.getCustomerCount() == 0 || productService.getProductCount() == 0) {
+            out.printf("No data yet: generating %,d customers, %,d products and %,d orders...%n",
+                    customerCount, productCount, orderCount);
+            new DataGenerator(seed).populate(customerService, productService, orderService,
+                    customerCount, productCount, orderCount, 365);
+            DataStorage.flush();
+        }
+        out.printf("Loaded %,d customers, %,d products and %,d orders in %.1f s%n", customerService.getCustomerCount(),
+                productService.getProductCount(), orderService.getOrderCount(), (System.nanoTime() - start) / 1e9);
+        out.printf("Running %d threads, %d%% writes, for %d s after %d s of warmup...%n", threads, writePercent, seconds, warmup);
+
+        LatencyHistogram[] results = new LoadDriver(customerService, productService, orderService, writePercent, seed)
+                .run(threads, warmup * 1000L, seconds * 1000L);
+        long flushStart = System.nanoTime();
+        DataStorage.flush();
+        long flushNanos = System.nanoTime() - flushStart;
+
+        out.println();
+        out.printf("%-18s %12s %10s %10s %10s %10s %10s %10s%n",
+                "Operation", "Count", "Ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "Max us");
+        LatencyHistogram all = new LatencyHistogram();
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram histogram = results[operation.ordinal()];
+            all.add(histogram);
+            print(out, operation.label, histogram, seconds);
+        }
+        print(out, "All", all, seconds);
+        out.printf("%nQueued changes written in %.1f ms after the run%n", flushNanos / 1e6);
+        System.exit(0);
+    }
+
+    private static void print(PrintStream out, String label, LatencyHistogram histogram, int seconds) {
+        out.printf("%-18s %,12d %,10.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", label, histogram.getCount(),
+                histogram.getCount() / (double) seconds, histogram.percentile(50) / 1e3, histogram.percentile(90) / 1e3,
+                histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+}
@@ -3,8 +3,23 @@
 // Define the package structure
 package com.example.crm;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
 
 // Base class for common attributes
 abstract class BaseEntity implements Serializable {
@@ -84,13 +99,19 @@ class Customer extends BaseEntity {
 
 class Product extends BaseEntity {
     private static final long serialVersionUID = 1L;
+    // Java-serialized files, written by older versions, hold the price as a double in dollars
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("description", String.class),
+        new ObjectStreamField("price", double.class)
+    };
     private String description;
-    private double price;
+    // In cents; see Money
+    private long priceCents;
 
-    public Product(int id, String name, String description, double price) {
+    public Product(int id, String name, String description, long priceCents) {
         super(id, name);
         this.description = description;
-        this.price = price;
+        this.priceCents = priceCents;
     }
 
     public String getDescription() {
@@ -101,258 +122,1107 @@ class Product extends BaseEntity {
         this.description = description;
     }
 
-    public double getPrice() {
-        return price;
+    public long getPriceCents() {
+        return priceCents;
     }
 
-    public void setPrice(double price) {
-        this.price = price;
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("description", description);
+        fields.put("price", Money.toDouble(priceCents));
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        description = (String) fields.get("description", null);
+        priceCents = Money.fromDouble(fields.get("price", 0.0));
     }
 
     @Override
     public String toString() {
-        return super.toString() + ", Description: " + description + ", Price: $" + String.format("%.2f", price);
+        return super.toString() + ", Description: " + description + ", Price: " + Money.format(priceCents);
     }
 }
 
 class Order extends BaseEntity {
     private static final long serialVersionUID = 1L;
-    private Customer customer;
+    // Orders are persisted with the customer ID only; "customer" is still declared so
+    // files written before orders were normalized (which embed a full Customer) load.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("customerId", int.class),
+        new ObjectStreamField("customer", Customer.class),
+        new ObjectStreamField("orderItems", List.class),
+        new ObjectStreamField("totalAmount", double.class),
+        new ObjectStreamField("createdAt", long.class)
+    };
+    // A rendered one-line summary and the customer name it was rendered with; the
+    // customer can be renamed without the order changing
+    private static final class Summary {
+        final String customerName;
+        final String text;
+
+        Summary(String customerName, String text) {
+            this.customerName = customerName;
+            this.text = text;
+        }
+    }
+
+    private int customerId;
+    private transient Customer customer;
+    // Copy-on-write so readers can walk the items while another thread adds one
     private List<OrderItem> orderItems;
-    private double totalAmount;
+    // In cents; see Money
+    private volatile long totalCents;
+    // Milliseconds since the epoch; 0 for orders saved before orders had a creation
+    // time, until DataStorage.loadOrders() gives them one
+    private long createdAt;
+    // Display strings, rendered on first use (e.g. by a table cell that is repainted
+    // often) and dropped when the order changes
+    private transient volatile String createdText;
+    private transient volatile String totalText;
+    private transient volatile Summary summary;
 
     public Order(int id, Customer customer) {
         super(id, "Order for " + customer.getName());
+        this.customerId = customer.getId();
         this.customer = customer;
-        this.orderItems = new ArrayList<>();
-        this.totalAmount = 0.0;
+        this.orderItems = new CopyOnWriteArrayList<>();
+        this.totalCents = 0;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    // Used when decoding a stored order; the customer is attached afterwards
+    Order(int id, String name, int customerId, List<OrderItem> orderItems, long totalCents, long createdAt) {
+        super(id, name);
+        this.customerId = customerId;
+        this.orderItems = new CopyOnWriteArrayList<>(orderItems);
+        this.totalCents = totalCents;
+        this.createdAt = createdAt;
+    }
+
+    public int getCustomerId() {
+        return customerId;
     }
 
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    // Shown to the minute, in the local time zone
+    public String getCreatedText() {
+        String text = createdText;
+        if (text == null) {
+            text = TextFormat.formatDateTime(createdAt);
+            createdText = text;
+        }
+        return text;
+    }
+
+    // Only for migrating orders loaded without a creation time, and for generated history
+    // (see DataGenerator) before the order is created
+    void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+        createdText = null;
+        summary = null;
+    }
+
+    // May be null after a reload if the customer has since been deleted
     public Customer getCustomer() {
         return customer;
     }
 
+    public String getCustomerName() {
+        return customer != null ? customer.getName() : "Customer #" + customerId;
+    }
+
+    // Point this order at the service's live customer after loading
+    void attachCustomer(Customer customer) {
+        this.customer = customer;
+        summary = null;
+    }
+
     public List<OrderItem> getOrderItems() {
         return orderItems;
     }
 
-    public double getTotalAmount() {
-        return totalAmount;
+    public long getTotalCents() {
+        return totalCents;
     }
 
-    public void addOrderItem(OrderItem orderItem) {
-        this.orderItems.add(orderItem);
-        this.totalAmount += orderItem.getQuantity() * orderItem.getProduct().getPrice();
-        setName("Order for " + customer.getName() + " (Total: $" + String.format("%.2f", totalAmount) + ")");
+    public String getTotalText() {
+        String text = totalText;
+        if (text == null) {
+            text = Money.format(totalCents);
+            totalText = text;
+        }
+        return text;
+    }
+
+    // "#id  created  customer  total", for listings
+    public String getSummary() {
+        String customerName = getCustomerName();
+        Summary current = summary;
+        if (current == null || !current.customerName.equals(customerName)) {
+            StringBuilder sb = new StringBuilder(64).append('#').append(getId()).append("  ");
+            TextFormat.appendDateTime(sb, createdAt).append("  ").append(customerName).append("  ");
+            current = new Summary(customerName, Money.append(sb, totalCents, false).toString());
+            summary = current;
+        }
+        return current.text;
     }
 
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder(super.toString());
-        sb.append(", Customer: ").append(customer.getName()).append("\n");
+    public synchronized void addOrderItem(OrderItem orderItem) {
+        this.orderItems.add(orderItem);
+        this.totalCents += orderItem.getSubtotalCents();
+        totalText = null;
+        summary = null;
+        StringBuilder name = new StringBuilder(64).append("Order for ").append(getCustomerName()).append(" (Total: ");
+        setName(Money.append(name, totalCents, false).append(')').toString());
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("customerId", customerId);
+        fields.put("customer", null);
+        fields.put("orderItems", orderItems);
+        fields.put("totalAmount", Money.toDouble(totalCents));
+        fields.put("createdAt", createdAt);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Customer legacyCustomer = (Customer) fields.get("customer", null);
+        customerId = legacyCustomer != null ? legacyCustomer.getId() : fields.get("customerId", 0);
+        orderItems = new CopyOnWriteArrayList<>((List<OrderItem>) fields.get("orderItems", null));
+        totalCents = Money.fromDouble(fields.get("totalAmount", 0.0));
+        createdAt = fields.get("createdAt", 0L);
+    }
+
+    // Appends what toString() returns; with a reused builder this allocates nothing
+    public StringBuilder appendTo(StringBuilder sb) {
+        sb.append("ID: ").append(getId()).append(", Name: ").append(getName());
+        sb.append(", Customer: ").append(getCustomerName()).append(", Created: ");
+        TextFormat.appendDateTime(sb, createdAt).append('\n');
         sb.append("Order Items:\n");
         for (OrderItem item : orderItems) {
-            sb.append("- ").append(item).append("\n");
+            item.appendTo(sb.append("- ")).append('\n');
         }
-        sb.append("Total Amount: $").append(String.format("%.2f", totalAmount));
-        return sb.toString();
+        return Money.append(sb.append("Total Amount: "), totalCents, false);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(256)).toString();
     }
 }
 
 class OrderItem implements Serializable {
     private static final long serialVersionUID = 1L;
-    private Product product;
+    // Items are persisted with the product ID and the unit price at the time of sale;
+    // "product" is still declared so files that embed a full Product load.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("productId", int.class),
+        new ObjectStreamField("product", Product.class),
+        new ObjectStreamField("quantity", int.class),
+        new ObjectStreamField("unitPrice", double.class)
+    };
+    private int productId;
+    private transient Product product;
     private int quantity;
+    // In cents; see Money
+    private long unitPriceCents;
 
     public OrderItem(Product product, int quantity) {
+        this.productId = product.getId();
         this.product = product;
         this.quantity = quantity;
+        this.unitPriceCents = product.getPriceCents();
+    }
+
+    // Used when decoding a stored item; the product is attached afterwards
+    OrderItem(int productId, int quantity, long unitPriceCents) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.unitPriceCents = unitPriceCents;
+    }
+
+    public int getProductId() {
+        return productId;
     }
 
+    // May be null after a reload if the product has since been deleted
     public Product getProduct() {
         return product;
     }
 
+    public String getProductName() {
+        return product != null ? product.getName() : "Product #" + productId;
+    }
+
+    // Point this item at the service's live product after loading
+    void attachProduct(Product product) {
+        this.product = product;
+    }
+
     public int getQuantity() {
         return quantity;
     }
 
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    public long getSubtotalCents() {
+        return Money.times(unitPriceCents, quantity);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("productId", productId);
+        fields.put("product", null);
+        fields.put("quantity", quantity);
+        fields.put("unitPrice", Money.toDouble(unitPriceCents));
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Product legacyProduct = (Product) fields.get("product", null);
+        quantity = fields.get("quantity", 0);
+        if (legacyProduct != null) {
+            productId = legacyProduct.getId();
+            unitPriceCents = legacyProduct.getPriceCents();
+        } else {
+            productId = fields.get("productId", 0);
+            unitPriceCents = Money.fromDouble(fields.get("unitPrice", 0.0));
+        }
+    }
+
+    public StringBuilder appendTo(StringBuilder sb) {
+        sb.append(getProductName()).append(" (Quantity: ").append(quantity).append(", Price per unit: ");
+        Money.append(sb, unitPriceCents, false).append(", Subtotal: ");
+        return Money.append(sb, getSubtotalCents(), false).append(')');
+    }
+
     @Override
     public String toString() {
-        return product.getName() + " (Quantity: " + quantity + ", Price per unit: $" + String.format("%.2f", product.getPrice()) + ", Subtotal: $" + String.format("%.2f", quantity * product.getPrice()) + ")";
+        return appendTo(new StringBuilder(96)).toString();
     }
 }
 
+// The services are safe to call from several threads (e.g. a background import next
+// to the Swing UI). IDs come from atomic counters, the tables lock internally, and each
+// update or delete holds the entity's monitor while it changes the entity and queues
+// the change. Changes are written to disk by DataStorage's background writer.
 class CustomerService {
-    private List<Customer> customers = new ArrayList<>();
-    private int nextCustomerId = 1;
+    // Start with -Dcrm.customers.mapped=true to memory-map customers.dat and decode
+    // customers on access instead of loading them all up front
+    private static final boolean MAPPED = Boolean.getBoolean("crm.customers.mapped");
+
+    private EntityTable<Customer> customers;
+    private final AtomicInteger nextCustomerId = new AtomicInteger(1);
+    // Full-text search over name, contact person, email and phone, in that order of weight
+    private final SearchIndex<Customer> searchIndex = new SearchIndex<>(
+            customer -> new String[] {customer.getName(), customer.getContactPerson(), customer.getEmail(), customer.getPhone()},
+            4, this::getCustomerById, this::getAllCustomers);
+    // Lookups by normalized email and phone, for duplicate checks
+    private final KeyIndex<Customer> emailIndex = new KeyIndex<>(
+            customer -> normalizeEmail(customer.getEmail()), this::getCustomerById, this::getAllCustomers);
+    private final KeyIndex<Customer> phoneIndex = new KeyIndex<>(
+            customer -> normalizePhone(customer.getPhone()), this::getCustomerById, this::getAllCustomers);
+    // Start with -Dcrm.customers.uniqueContacts=true to refuse a customer whose email or
+    // phone number another customer already has. Held while checking and changing them.
+    private volatile boolean uniqueContacts = Boolean.getBoolean("crm.customers.uniqueContacts");
+    private final Object contactLock = new Object();
+    // Says why a customer can't be deleted, or returns null; see setDeleteCheck()
+    private volatile IntFunction<String> deleteCheck = id -> null;
+    // See setQuiet()
+    private volatile boolean quiet;
 
     public CustomerService() {
         loadData();
     }
     
     private void loadData() {
-        customers = DataStorage.loadCustomers();
-        if (!customers.isEmpty()) {
-            nextCustomerId = customers.stream()
-                    .mapToInt(Customer::getId)
-                    .max()
-                    .getAsInt() + 1;
+        customers = MAPPED ? DataStorage.openMappedCustomers() : new EntityIndex<>(DataStorage.loadCustomers());
+        nextCustomerId.set(customers.maxId() + 1);
+    }
+
+    // Stops the service printing what each call did, for callers such as the API server
+    // that report it themselves
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    // Tells the console user what a call did
+    private void report(String message) {
+        if (!quiet) {
+            System.out.println(message);
         }
     }
 
-    public void addCustomer(Customer customer) {
-        customer.setId(nextCustomerId++);
-        customers.add(customer);
-        System.out.println("Customer added successfully.");
-        DataStorage.saveCustomers(customers);
+    // Returns false if the customer wasn't added because its contact details are taken
+    public boolean addCustomer(Customer customer) {
+        synchronized (customer) {
+            synchronized (contactLock) {
+                String conflict = contactConflict(0, customer.getEmail(), customer.getPhone());
+                if (conflict != null) {
+                    report(conflict);
+                    return false;
+                }
+                customer.setId(nextCustomerId.getAndIncrement());
+                customers.add(customer);
+                emailIndex.add(customer);
+                phoneIndex.add(customer);
+            }
+            searchIndex.add(customer);
+            DataStorage.appendCustomer(customer, customers::list);
+        }
+        report("Customer added successfully.");
+        return true;
+    }
+
+    // Adds a batch with one ID allocation, one table update and one journal write.
+    // Doesn't print per customer; callers report progress themselves. Returns how many
+    // were added; with unique contacts, customers whose email or phone is taken (by
+    // an existing customer or an earlier one in the batch) are left out.
+    public int addCustomers(Collection<Customer> batch) {
+        List<Customer> added;
+        synchronized (contactLock) {
+            added = uniqueContacts ? withoutTakenContacts(batch) : new ArrayList<>(batch);
+            int id = nextCustomerId.getAndAdd(added.size());
+            for (Customer customer : added) {
+                synchronized (customer) {
+                    customer.setId(id++);
+                }
+            }
+            customers.addAll(added);
+            for (Customer customer : added) {
+                emailIndex.add(customer);
+                phoneIndex.add(customer);
+            }
+        }
+        searchIndex.addAll(added);
+        DataStorage.appendCustomers(added, customers::list);
+        return added.size();
+    }
+
+    private List<Customer> withoutTakenContacts(Collection<Customer> batch) {
+        List<Customer> kept = new ArrayList<>(batch.size());
+        Set<String> emails = new HashSet<>();
+        Set<String> phones = new HashSet<>();
+        for (Customer customer : batch) {
+            String email = normalizeEmail(customer.getEmail());
+            String phone = normalizePhone(customer.getPhone());
+            if (contactConflict(0, customer.getEmail(), customer.getPhone()) == null
+                    && (email == null || !emails.contains(email)) && (phone == null || !phones.contains(phone))) {
+                kept.add(customer);
+                if (email != null) {
+                    emails.add(email);
+                }
+                if (phone != null) {
+                    phones.add(phone);
+                }
+            }
+        }
+        return kept;
+    }
+
+    // Why a customer with this email and phone can't be saved under the given ID
+    // (0 for a new customer), or null if it can. Always null unless contacts are unique.
+    private String contactConflict(int id, String email, String phone) {
+        if (!uniqueContacts) {
+            return null;
+        }
+        Customer other = findByEmail(email);
+        if (other != null && other.getId() != id) {
+            return "Customer " + other.getId() + " already has email " + email + ".";
+        }
+        other = findByPhone(phone);
+        if (other != null && other.getId() != id) {
+            return "Customer " + other.getId() + " already has phone " + phone + ".";
+        }
+        return null;
+    }
+
+    public void setUniqueContacts(boolean unique) {
+        uniqueContacts = unique;
+    }
+
+    public boolean hasUniqueContacts() {
+        return uniqueContacts;
+    }
+
+    // Emails compare case-insensitively and phone numbers by their digits alone;
+    // blank values (null) never match anything
+    static String normalizeEmail(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.length() == 0 ? null : digits.toString();
+    }
+
+    // The customer with this email (or, if several have it, the one with the lowest ID)
+    public Customer findByEmail(String email) {
+        return emailIndex.first(normalizeEmail(email));
+    }
+
+    public Customer findByPhone(String phone) {
+        return phoneIndex.first(normalizePhone(phone));
+    }
+
+    // Customers in the list that share an email or phone with an existing customer or
+    // an earlier one in the list; one hash lookup per key
+    public DedupeReport dedupeLeads(List<Customer> leads) {
+        DedupeReport report = new DedupeReport(leads.size());
+        Map<String, Integer> emailRows = new HashMap<>();
+        Map<String, Integer> phoneRows = new HashMap<>();
+        for (int row = 1; row <= leads.size(); row++) {
+            Customer lead = leads.get(row - 1);
+            String email = normalizeEmail(lead.getEmail());
+            String phone = normalizePhone(lead.getPhone());
+            Customer existing;
+            if ((existing = emailIndex.first(email)) != null) {
+                report.add(row, lead, "email", existing, 0);
+            } else if ((existing = phoneIndex.first(phone)) != null) {
+                report.add(row, lead, "phone", existing, 0);
+            } else if (email != null && emailRows.containsKey(email)) {
+                report.add(row, lead, "email", null, emailRows.get(email));
+            } else if (phone != null && phoneRows.containsKey(phone)) {
+                report.add(row, lead, "phone", null, phoneRows.get(phone));
+            } else {
+                if (email != null) {
+                    emailRows.put(email, row);
+                }
+                if (phone != null) {
+                    phoneRows.put(phone, row);
+                }
+            }
+        }
+        return report;
+    }
+
+    // Customers that share an email or phone with a customer of lower ID
+    public DedupeReport dedupeCustomers() {
+        List<Customer> all = getAllCustomers();
+        DedupeReport report = new DedupeReport(all.size());
+        for (int row = 1; row <= all.size(); row++) {
+            Customer customer = all.get(row - 1);
+            Customer first;
+            if ((first = emailIndex.first(emailIndex.keyOf(customer))) != null && first.getId() < customer.getId()) {
+                report.add(row, customer, "email", first, 0);
+            } else if ((first = phoneIndex.first(phoneIndex.keyOf(customer))) != null && first.getId() < customer.getId()) {
+                report.add(row, customer, "phone", first, 0);
+            }
+        }
+        return report;
     }
 
     public Customer getCustomerById(int id) {
-        return customers.stream().filter(c -> c.getId() == id).findFirst().orElse(null);
+        return customers.get(id);
     }
 
+    // Read-only snapshot in ID order; see EntityTable.list()
     public List<Customer> getAllCustomers() {
-        return customers;
+        return customers.list();
+    }
+
+    // Up to limit customers with IDs above afterId (0 for the first page), in ID order
+    public List<Customer> getCustomersAfter(int afterId, int limit) {
+        return customers.page(afterId, limit);
+    }
+
+    // Up to limit customers from position offset (0 for the first) of the ID order on
+    public List<Customer> getCustomersAt(int offset, int limit) {
+        return customers.slice(offset, limit);
+    }
+
+    // All customers as of now; splits evenly when made parallel()
+    public Stream<Customer> streamCustomers() {
+        return customers.stream();
+    }
+
+    public int getCustomerCount() {
+        return customers.size();
+    }
+
+    // Up to limit customers matching the query, best first (see SearchIndex for the
+    // query syntax); a blank query returns the first customers by ID
+    public List<Customer> searchCustomers(String query, int limit) {
+        if (query.isBlank()) {
+            List<Customer> all = customers.list();
+            return all.subList(0, Math.min(limit, all.size()));
+        }
+        return searchIndex.search(query, limit);
     }
 
-    public void updateCustomer(int id, String name, String contactPerson, String phone, String email) {
+    // Returns false if there's no such customer or its new contact details are taken
+    public boolean updateCustomer(int id, String name, String contactPerson, String phone, String email) {
         Customer customer = getCustomerById(id);
         if (customer != null) {
-            customer.setName(name);
-            customer.setContactPerson(contactPerson);
-            customer.setPhone(phone);
-            customer.setEmail(email);
-            System.out.println("Customer updated successfully.");
-            DataStorage.saveCustomers(customers);
+            synchronized (customer) {
+                // Deleted by another thread since the lookup
+                if (customers.get(id) != customer) {
+                    report("Customer with ID " + id + " not found.");
+                    return false;
+                }
+                String[] oldText = searchIndex.text(customer);
+                synchronized (contactLock) {
+                    String conflict = contactConflict(id, email, phone);
+                    if (conflict != null) {
+                        report(conflict);
+                        return false;
+                    }
+                    String oldEmail = emailIndex.keyOf(customer);
+                    String oldPhone = phoneIndex.keyOf(customer);
+                    customer.setName(name);
+                    customer.setContactPerson(contactPerson);
+                    customer.setPhone(phone);
+                    customer.setEmail(email);
+                    emailIndex.changed(oldEmail, customer);
+                    phoneIndex.changed(oldPhone, customer);
+                }
+                searchIndex.changed(oldText, customer);
+                DataStorage.appendCustomer(customer, customers::list);
+            }
+            report("Customer updated successfully.");
+            return true;
         } else {
-            System.out.println("Customer with ID " + id + " not found.");
+            report("Customer with ID " + id + " not found.");
+            return false;
         }
     }
 
-    public void deleteCustomer(int id) {
+    // Lets the order service refuse to delete customers that orders refer to. The
+    // check runs while the customer's monitor is held, so whoever links an order to the
+    // customer under the same monitor either comes first and is seen, or finds it gone.
+    void setDeleteCheck(IntFunction<String> check) {
+        deleteCheck = check;
+    }
+
+    // Returns false if there's no such customer or it can't be deleted
+    public boolean deleteCustomer(int id) {
         Customer customer = getCustomerById(id);
         if (customer != null) {
-            customers.remove(customer);
-            System.out.println("Customer deleted successfully.");
-            DataStorage.saveCustomers(customers);
+            synchronized (customer) {
+                String refusal = deleteCheck.apply(id);
+                if (refusal != null) {
+                    report(refusal);
+                    return false;
+                }
+                if (customers.remove(id) == null) {
+                    report("Customer with ID " + id + " not found.");
+                    return false;
+                }
+                searchIndex.removed(customer);
+                emailIndex.removed(customer);
+                phoneIndex.removed(customer);
+                DataStorage.appendCustomerDeletion(id, customers::list);
+            }
+            report("Customer deleted successfully.");
+            return true;
         } else {
-            System.out.println("Customer with ID " + id + " not found.");
+            report("Customer with ID " + id + " not found.");
+            return false;
         }
     }
 }
 
 class ProductService {
-    private List<Product> products = new ArrayList<>();
-    private int nextProductId = 1;
+    private EntityIndex<Product> products;
+    private final AtomicInteger nextProductId = new AtomicInteger(1);
+    // Full-text search over name and description
+    private final SearchIndex<Product> searchIndex = new SearchIndex<>(
+            product -> new String[] {product.getName(), product.getDescription()},
+            2, this::getProductById, this::getAllProducts);
+    // Says why a product can't be deleted, or returns null; see setDeleteCheck()
+    private volatile IntFunction<String> deleteCheck = id -> null;
+    // See CustomerService.setQuiet()
+    private volatile boolean quiet;
     
     public ProductService() {
         loadData();
     }
     
     private void loadData() {
-        products = DataStorage.loadProducts();
-        if (!products.isEmpty()) {
-            nextProductId = products.stream()
-                    .mapToInt(Product::getId)
-                    .max()
-                    .getAsInt() + 1;
+        products = new EntityIndex<>(DataStorage.loadProducts());
+        nextProductId.set(products.maxId() + 1);
+    }
+
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    private void report(String message) {
+        if (!quiet) {
+            System.out.println(message);
         }
     }
 
     public void addProduct(Product product) {
-        product.setId(nextProductId++);
-        products.add(product);
-        System.out.println("Product added successfully.");
-        DataStorage.saveProducts(products);
+        synchronized (product) {
+            product.setId(nextProductId.getAndIncrement());
+            products.add(product);
+            searchIndex.add(product);
+            DataStorage.appendProduct(product, products::list);
+        }
+        report("Product added successfully.");
+    }
+
+    // Adds a batch with one ID allocation, one table update and one journal write
+    public void addProducts(Collection<Product> batch) {
+        List<Product> added = new ArrayList<>(batch);
+        int id = nextProductId.getAndAdd(added.size());
+        for (Product product : added) {
+            synchronized (product) {
+                product.setId(id++);
+            }
+        }
+        products.addAll(added);
+        searchIndex.addAll(added);
+        DataStorage.appendProducts(added, products::list);
     }
 
     public Product getProductById(int id) {
-        return products.stream().filter(p -> p.getId() == id).findFirst().orElse(null);
+        return products.get(id);
     }
 
+    // Read-only snapshot in ID order; see EntityTable.list()
     public List<Product> getAllProducts() {
-        return products;
+        return products.list();
+    }
+
+    // Up to limit products with IDs above afterId (0 for the first page), in ID order
+    public List<Product> getProductsAfter(int afterId, int limit) {
+        return products.page(afterId, limit);
     }
 
-    public void updateProduct(int id, String name, String description, double price) {
+    // Up to limit products from position offset (0 for the first) of the ID order on
+    public List<Product> getProductsAt(int offset, int limit) {
+        return products.slice(offset, limit);
+    }
+
+    // All products as of now; splits evenly when made parallel()
+    public Stream<Product> streamProducts() {
+        return products.stream();
+    }
+
+    public int getProductCount() {
+        return products.size();
+    }
+
+    // Up to limit products matching the query, best first (see SearchIndex for the
+    // query syntax); a blank query returns the first products by ID
+    public List<Product> searchProducts(String query, int limit) {
+        if (query.isBlank()) {
+            List<Product> all = products.list();
+            return all.subList(0, Math.min(limit, all.size()));
+        }
+        return searchIndex.search(query, limit);
+    }
+
+    public void updateProduct(int id, String name, String description, long priceCents) {
         Product product = getProductById(id);
         if (product != null) {
-            product.setName(name);
-            product.setDescription(description);
-            product.setPrice(price);
-            System.out.println("Product updated successfully.");
-            DataStorage.saveProducts(products);
+            synchronized (product) {
+                if (products.get(id) != product) {
+                    report("Product with ID " + id + " not found.");
+                    return;
+                }
+                String[] oldText = searchIndex.text(product);
+                product.setName(name);
+                product.setDescription(description);
+                product.setPriceCents(priceCents);
+                searchIndex.changed(oldText, product);
+                DataStorage.appendProduct(product, products::list);
+            }
+            report("Product updated successfully.");
         } else {
-            System.out.println("Product with ID " + id + " not found.");
+            report("Product with ID " + id + " not found.");
         }
     }
 
-    public void deleteProduct(int id) {
+    // Like CustomerService.setDeleteCheck(), for products that order items refer to
+    void setDeleteCheck(IntFunction<String> check) {
+        deleteCheck = check;
+    }
+
+    // Returns false if there's no such product or it can't be deleted
+    public boolean deleteProduct(int id) {
         Product product = getProductById(id);
         if (product != null) {
-            products.remove(product);
-            System.out.println("Product deleted successfully.");
-            DataStorage.saveProducts(products);
+            synchronized (product) {
+                String refusal = deleteCheck.apply(id);
+                if (refusal != null) {
+                    report(refusal);
+                    return false;
+                }
+                if (products.remove(id) == null) {
+                    report("Product with ID " + id + " not found.");
+                    return false;
+                }
+                searchIndex.removed(product);
+                DataStorage.appendProductDeletion(id, products::list);
+            }
+            report("Product deleted successfully.");
+            return true;
         } else {
-            System.out.println("Product with ID " + id + " not found.");
+            report("Product with ID " + id + " not found.");
+            return false;
         }
     }
 }
 
 class OrderService {
-    private List<Order> orders = new ArrayList<>();
-    private int nextOrderId = 1;
+    private static final int WRITE_CHUNK_CHARS = 64 * 1024;
+    private EntityIndex<Order> orders;
+    private final AtomicInteger nextOrderId = new AtomicInteger(1);
+    private final SalesAggregates sales = new SalesAggregates();
+    // Order IDs by customer and by product, so their orders are found without a scan
+    private final IdMultimap ordersByCustomer = new IdMultimap();
+    private final IdMultimap ordersByProduct = new IdMultimap();
+    // Order IDs by creation time, for date range queries
+    private final TimeIndex ordersByTime = new TimeIndex();
     private final CustomerService customerService;
     private final ProductService productService;
+    // See CustomerService.setQuiet()
+    private volatile boolean quiet;
 
     public OrderService(CustomerService customerService, ProductService productService) {
         this.customerService = customerService;
         this.productService = productService;
         loadData();
+        // Orders keep their customer and products: those can't be deleted
+        customerService.setDeleteCheck(id -> {
+            int count = ordersByCustomer.count(id);
+            return count == 0 ? null : "Customer " + id + " has " + count + " order(s) and can't be deleted.";
+        });
+        productService.setDeleteCheck(id -> {
+            int count = ordersByProduct.count(id);
+            return count == 0 ? null : "Product " + id + " is in " + count + " order(s) and can't be deleted.";
+        });
     }
     
     private void loadData() {
-        orders = DataStorage.loadOrders();
-        if (!orders.isEmpty()) {
-            nextOrderId = orders.stream()
-                    .mapToInt(Order::getId)
-                    .max()
-                    .getAsInt() + 1;
+        List<Order> loaded = DataStorage.loadOrders();
+        // Orders are stored by customer/product ID; link them back to the live entities
+        for (Order order : loaded) {
+            order.attachCustomer(customerService.getCustomerById(order.getCustomerId()));
+            ordersByCustomer.add(order.getCustomerId(), order.getId());
+            for (OrderItem item : order.getOrderItems()) {
+                item.attachProduct(productService.getProductById(item.getProductId()));
+                ordersByProduct.add(item.getProductId(), order.getId());
+            }
+            sales.orderCreated(order);
+        }
+        // Sorted first so the time index is built by appending
+        List<Order> byTime = new ArrayList<>(loaded);
+        byTime.sort(Comparator.comparingLong(Order::getCreatedAt).thenComparingInt(Order::getId));
+        for (Order order : byTime) {
+            ordersByTime.add(order.getCreatedAt(), order.getId());
         }
+        orders = new EntityIndex<>(loaded);
+        nextOrderId.set(orders.maxId() + 1);
     }
 
-    public void createOrder(int customerId) {
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    private void report(String message) {
+        if (!quiet) {
+            System.out.println(message);
+        }
+    }
+
+    // Returns the new order, or null if the customer doesn't exist
+    public Order createOrder(int customerId) {
         Customer customer = customerService.getCustomerById(customerId);
         if (customer != null) {
-            Order order = new Order(nextOrderId++, customer);
-            orders.add(order);
-            System.out.println("Order created with ID: " + order.getId());
-            DataStorage.saveOrders(orders);
+            Order order = new Order(nextOrderId.getAndIncrement(), customer);
+            if (!link(order)) {
+                report("Customer not found.");
+                return null;
+            }
+            synchronized (order) {
+                orders.add(order);
+                ordersByTime.add(order.getCreatedAt(), order.getId());
+                sales.orderCreated(order);
+                DataStorage.appendOrder(order, orders::list);
+            }
+            report("Order created with ID: " + order.getId());
+            return order;
         } else {
-            System.out.println("Customer not found.");
+            report("Customer not found.");
+            return null;
         }
     }
 
+    // Creates a batch of orders built with new Order(0, customer) and addOrderItem().
+    // Orders whose customer or products no longer exist are skipped (their IDs are
+    // left unused). Returns the number of orders created.
+    public int createOrders(Collection<Order> batch) {
+        List<Order> created = new ArrayList<>(batch.size());
+        int id = nextOrderId.getAndAdd(batch.size());
+        for (Order order : batch) {
+            synchronized (order) {
+                order.setId(id++);
+            }
+            if (link(order)) {
+                created.add(order);
+            }
+        }
+        // Each order is published and counted under its monitor, as in createOrder(), so an
+        // item added to it in between (see addProductToOrder()) isn't counted twice
+        for (Order order : created) {
+            synchronized (order) {
+                orders.add(order);
+                ordersByTime.add(order.getCreatedAt(), order.getId());
+                sales.orderCreated(order);
+            }
+        }
+        DataStorage.appendOrders(created, orders::list);
+        return created.size();
+    }
+
+    // Records a new order under its customer and products. Each link is made while
+    // holding that entity's monitor, as the delete checks are, so a delete either sees
+    // the link and is refused, or happens first and the link fails. Returns false,
+    // with nothing recorded, if the customer or a product is gone.
+    private boolean link(Order order) {
+        Customer customer = customerService.getCustomerById(order.getCustomerId());
+        if (customer == null) {
+            return false;
+        }
+        synchronized (customer) {
+            if (customerService.getCustomerById(customer.getId()) != customer) {
+                return false;
+            }
+            ordersByCustomer.add(customer.getId(), order.getId());
+        }
+        for (OrderItem item : order.getOrderItems()) {
+            Product product = productService.getProductById(item.getProductId());
+            boolean linked = false;
+            if (product != null) {
+                synchronized (product) {
+                    if (productService.getProductById(product.getId()) == product) {
+                        ordersByProduct.add(product.getId(), order.getId());
+                        linked = true;
+                    }
+                }
+            }
+            if (!linked) {
+                ordersByCustomer.remove(order.getCustomerId(), order.getId());
+                for (OrderItem linkedItem : order.getOrderItems()) {
+                    ordersByProduct.remove(linkedItem.getProductId(), order.getId());
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
     public Order getOrderById(int id) {
-        return orders.stream().filter(o -> o.getId() == id).findFirst().orElse(null);
+        return orders.get(id);
     }
 
+    // Read-only snapshot in ID order; see EntityTable.list()
     public List<Order> getAllOrders() {
-        return orders;
+        return orders.list();
+    }
+
+    // Up to limit orders with IDs above afterId (0 for the first page), in ID order
+    public List<Order> getOrdersAfter(int afterId, int limit) {
+        return orders.page(afterId, limit);
+    }
+
+    // Up to limit orders from position offset (0 for the first) of the ID order on
+    public List<Order> getOrdersAt(int offset, int limit) {
+        return orders.slice(offset, limit);
+    }
+
+    // All orders as of now; splits evenly when made parallel()
+    public Stream<Order> streamOrders() {
+        return orders.stream();
+    }
+
+    public int getOrderCount() {
+        return sales.getOrderCount();
+    }
+
+    // Sum of all order totals in cents, kept up to date as orders change
+    public long getTotalSalesCents() {
+        return sales.getTotalSalesCents();
+    }
+
+    // Grows with every order change; equal counts mean the orders haven't changed
+    public long getChangeCount() {
+        return sales.getChangeCount();
+    }
+
+    // The order changes after the first "from" (a change count), oldest first, or null if
+    // they are no longer all kept; see SalesAggregates
+    public List<SalesAggregates.Change> getChangesSince(long from) {
+        return sales.changesSince(from);
+    }
+
+    public int getCustomerOrderCount(int customerId) {
+        return sales.getCustomerOrderCount(customerId);
+    }
+
+    public long getCustomerRevenueCents(int customerId) {
+        return sales.getCustomerRevenueCents(customerId);
+    }
+
+    public long getProductUnitsSold(int productId) {
+        return sales.getProductUnitsSold(productId);
+    }
+
+    public long getProductRevenueCents(int productId) {
+        return sales.getProductRevenueCents(productId);
+    }
+
+    // The customer's orders, oldest first
+    public List<Order> getOrdersForCustomer(int customerId) {
+        return ordersById(ordersByCustomer.get(customerId));
+    }
+
+    // The orders with at least one item of the product, oldest first
+    public List<Order> getOrdersForProduct(int productId) {
+        return ordersById(ordersByProduct.get(productId));
+    }
+
+    public int getProductOrderCount(int productId) {
+        return ordersByProduct.count(productId);
+    }
+
+    // The orders created from "from" up to but not including "to" (epoch milliseconds),
+    // oldest first
+    public List<Order> getOrdersBetween(long from, long to) {
+        return ordersById(ordersByTime.between(from, to));
+    }
+
+    public int countOrdersBetween(long from, long to) {
+        return ordersByTime.count(from, to);
     }
 
-    public void addProductToOrder(int orderId, int productId, int quantity) {
+    // Sum of the totals, in cents, of the orders created from "from" up to but not including "to"
+    public long getSalesCentsBetween(long from, long to) {
+        long total = 0;
+        for (Order order : getOrdersBetween(from, to)) {
+            total += order.getTotalCents();
+        }
+        return total;
+    }
+
+    // The n most recently created orders, newest first
+    public List<Order> getLatestOrders(int n) {
+        return ordersById(ordersByTime.latest(n));
+    }
+
+    // Orders and revenue per local calendar day, one day per array element, for the days
+    // ending today, oldest day first. Returns the epoch day of the first element.
+    public int getDailyTotals(long[] orders, long[] revenueCents) {
+        int firstDay = SalesAggregates.dayOf(System.currentTimeMillis()) - orders.length + 1;
+        sales.dailyTotals(firstDay, orders, revenueCents);
+        return firstDay;
+    }
+
+    // Revenue in cents of the orders created over the last "days" calendar days, today included
+    public long getSalesCentsForLastDays(int days) {
+        long[] orders = new long[days];
+        long[] revenueCents = new long[days];
+        getDailyTotals(orders, revenueCents);
+        long total = 0;
+        for (long cents : revenueCents) {
+            total += cents;
+        }
+        return total;
+    }
+
+    private List<Order> ordersById(int[] ids) {
+        List<Order> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Order order = orders.get(id);
+            if (order != null) {
+                found.add(order);
+            }
+        }
+        return found;
+    }
+
+    // Returns false, with nothing added, if the quantity isn't positive or the order or
+    // product doesn't exist
+    public boolean addProductToOrder(int orderId, int productId, int quantity) {
+        if (quantity <= 0) {
+            report("Quantity must be at least 1.");
+            return false;
+        }
         Order order = getOrderById(orderId);
         Product product = productService.getProductById(productId);
 
         if (order != null && product != null) {
-            order.addOrderItem(new OrderItem(product, quantity));
-            System.out.println("Product added to order.");
-            DataStorage.saveOrders(orders);
+            OrderItem item;
+            synchronized (product) {
+                // Deleted since the lookup; see link()
+                if (productService.getProductById(productId) != product) {
+                    report("Order or Product not found.");
+                    return false;
+                }
+                item = new OrderItem(product, quantity);
+                ordersByProduct.add(productId, orderId);
+            }
+            synchronized (order) {
+                order.addOrderItem(item);
+                sales.itemAdded(order, item);
+                DataStorage.appendOrder(order, orders::list);
+            }
+            report("Product added to order.");
+            return true;
         } else {
-            System.out.println("Order or Product not found.");
+            report("Order or Product not found.");
+            return false;
+        }
+    }
+
+    // Writes every order as toString() shows it, one per line, and returns how many. Orders
+    // are formatted into one reused builder that is handed to the writer 64 KB at a time,
+    // so the time goes into the writing, not the formatting.
+    public int writeOrders(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder(WRITE_CHUNK_CHARS + 4096);
+        int count = 0;
+        for (Order order : orders.list()) {
+            order.appendTo(sb).append(System.lineSeparator());
+            count++;
+            if (sb.length() >= WRITE_CHUNK_CHARS) {
+                out.append(sb);
+                sb.setLength(0);
+            }
         }
+        out.append(sb);
+        out.flush();
+        return count;
     }
 
     public void displayOrderDetails(int orderId) {
@@ -370,6 +1240,11 @@ class CRMApp {
     private static final CustomerService customerService = new CustomerService();
     private static final ProductService productService = new ProductService();
     private static final OrderService orderService = new OrderService(customerService, productService);
+    private static final SalesReports salesReports = new SalesReports(orderService, customerService, productService);
+    private static final int SEARCH_LIMIT = 20;
+    private static final int DUPLICATES_SHOWN = 20;
+    private static final int ORDERS_SHOWN = 20;
+    private static final int PAGE_SIZE = 20;
 
     public static void main(String[] args) {
         // Initialize sample data if storage is empty
@@ -384,7 +1259,9 @@ class CRMApp {
             System.out.println("\n--- CRM Management System ---");
             System.out.println("1. Add Customer\n2. View Customer\n3. View All Customers\n4. Update Customer\n5. Delete Customer");
             System.out.println("6. Add Product\n7. View Product\n8. View All Products\n9. Update Product\n10. Delete Product");
-            System.out.println("11. Create Order\n12. Add Product to Order\n13. View Order Details\n14. View All Orders\n0. Exit");
+            System.out.println("11. Create Order\n12. Add Product to Order\n13. View Order Details\n14. View All Orders");
+            System.out.println("15. Import from CSV\n16. Search Customers\n17. Search Products\n18. Find Duplicate Customers\n19. Sales Reports");
+            System.out.println("20. Orders by Date\n21. Export Orders to File\n22. Back Up Data\n0. Exit");
             System.out.print("Enter your choice: ");
 
             int choice;
@@ -412,10 +1289,19 @@ class CRMApp {
                 case 12 -> addProductToOrder();
                 case 13 -> viewOrderDetails();
                 case 14 -> viewAllOrders();
+                case 15 -> importCsv();
+                case 16 -> searchCustomers();
+                case 17 -> searchProducts();
+                case 18 -> findDuplicateCustomers();
+                case 19 -> salesReports();
+                case 20 -> ordersByDate();
+                case 21 -> exportOrders();
+                case 22 -> backUpData();
                 case 0 -> running = false;
                 default -> System.out.println("Invalid choice.");
             }
         }
+        DataStorage.flush();
     }
 
     private static void addCustomer() {
@@ -439,7 +1325,28 @@ class CRMApp {
     }
 
     private static void viewAllCustomers() {
-        customerService.getAllCustomers().forEach(System.out::println);
+        showPages(customerService::getCustomersAfter);
+    }
+
+    // Prints entities a page at a time, fetching each page only when it is asked for
+    private static <T extends BaseEntity> void showPages(BiFunction<Integer, Integer, List<T>> pageAfter) {
+        int afterId = 0;
+        while (true) {
+            // One more than is shown tells whether there is another page
+            List<T> page = pageAfter.apply(afterId, PAGE_SIZE + 1);
+            if (afterId == 0 && page.isEmpty()) {
+                System.out.println("None.");
+            }
+            page.subList(0, Math.min(PAGE_SIZE, page.size())).forEach(System.out::println);
+            if (page.size() <= PAGE_SIZE) {
+                return;
+            }
+            afterId = page.get(PAGE_SIZE - 1).getId();
+            System.out.print("Press Enter for more, or q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
+            }
+        }
     }
 
     private static void updateCustomer() {
@@ -475,7 +1382,12 @@ class CRMApp {
         System.out.print("Description: ");
         String desc = scanner.nextLine();
         System.out.print("Price: ");
-        double price = scanner.nextDouble(); scanner.nextLine();
+        long price;
+        try {
+            price = Money.parse(scanner.nextLine());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid price."); return;
+        }
         productService.addProduct(new Product(0, name, desc, price));
     }
 
@@ -487,7 +1399,7 @@ class CRMApp {
     }
 
     private static void viewAllProducts() {
-        productService.getAllProducts().forEach(System.out::println);
+        showPages(productService::getProductsAfter);
     }
 
     private static void updateProduct() {
@@ -499,8 +1411,14 @@ class CRMApp {
         String name = scanner.nextLine();
         System.out.print("New description (" + p.getDescription() + "): ");
         String desc = scanner.nextLine();
-        System.out.print("New price (" + p.getPrice() + "): ");
-        double price = scanner.nextDouble(); scanner.nextLine();
+        System.out.print("New price (" + Money.toPlainString(p.getPriceCents()) + "): ");
+        String priceText = scanner.nextLine();
+        long price;
+        try {
+            price = priceText.isBlank() ? p.getPriceCents() : Money.parse(priceText);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid price."); return;
+        }
         productService.updateProduct(id, name.isEmpty() ? p.getName() : name,
                 desc.isEmpty() ? p.getDescription() : desc,
                 price);
@@ -535,6 +1453,164 @@ class CRMApp {
     }
 
     private static void viewAllOrders() {
-        orderService.getAllOrders().forEach(System.out::println);
+        // Not closed: that would close System.out
+        Writer out = new OutputStreamWriter(System.out);
+        try {
+            orderService.writeOrders(out);
+        } catch (IOException e) {
+            System.out.println("Could not write orders: " + e.getMessage());
+        }
+    }
+
+    private static void exportOrders() {
+        System.out.print("File to write: ");
+        java.io.File file = new java.io.File(scanner.nextLine().trim());
+        long start = System.nanoTime();
+        try (Writer out = Files.newBufferedWriter(file.toPath())) {
+            int count = orderService.writeOrders(out);
+            System.out.printf("Wrote %,d orders to %s in %.0f ms%n", count, file, (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.out.println("Could not write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void backUpData() {
+        System.out.print("Backup directory [" + Backup.DEFAULT_DIR + "]: ");
+        String dir = scanner.nextLine().trim();
+        System.out.print("Full backup even if there is an earlier one? (y/n): ");
+        boolean full = scanner.nextLine().trim().equalsIgnoreCase("y");
+        try {
+            System.out.println("Wrote " + Backup.backup(new java.io.File(dir.isEmpty() ? Backup.DEFAULT_DIR : dir), full));
+        } catch (IOException e) {
+            System.out.println("Backup failed: " + e.getMessage());
+        }
+    }
+
+    private static void searchCustomers() {
+        System.out.print("Search (words, prefix*, \"phrase\"): ");
+        String query = scanner.nextLine();
+        long start = System.nanoTime();
+        List<Customer> found = customerService.searchCustomers(query, SEARCH_LIMIT);
+        found.forEach(System.out::println);
+        System.out.printf("%d matches in %.2f ms%n", found.size(), (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void searchProducts() {
+        System.out.print("Search (words, prefix*, \"phrase\"): ");
+        String query = scanner.nextLine();
+        long start = System.nanoTime();
+        List<Product> found = productService.searchProducts(query, SEARCH_LIMIT);
+        found.forEach(System.out::println);
+        System.out.printf("%d matches in %.2f ms%n", found.size(), (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void importCsv() {
+        System.out.print("Import 1. Customers 2. Products 3. Orders: ");
+        int type = scanner.nextInt(); scanner.nextLine();
+        if (type < 1 || type > 3) {
+            System.out.println("Invalid choice."); return;
+        }
+        CsvImporter.Kind kind = CsvImporter.Kind.values()[type - 1];
+        System.out.println("Columns: " + kind.columns());
+        System.out.print("CSV file: ");
+        java.io.File file = new java.io.File(scanner.nextLine().trim());
+        if (!file.isFile()) {
+            System.out.println("File not found."); return;
+        }
+        try {
+            CsvImporter.Progress result = new CsvImporter(customerService, productService, orderService)
+                    .importFile(kind, file, progress -> System.out.print("\r" + progress));
+            System.out.println("\rImport finished: " + result);
+            result.errors.forEach(System.out::println);
+        } catch (IOException e) {
+            System.out.println("\nImport failed: " + e.getMessage());
+        }
+    }
+
+    private static void salesReports() {
+        System.out.print("Report 1. Top customers 2. Top products 3. Order value 4. Daily sales: ");
+        int type = scanner.nextInt(); scanner.nextLine();
+        if (type < 1 || type > 4) {
+            System.out.println("Invalid choice."); return;
+        }
+        int n = 0;
+        if (type != 3) {
+            int max = type == 4 ? SalesReports.MAX_DAYS : SalesReports.MAX_TOP;
+            while (true) {
+                System.out.print((type == 4 ? "How many days" : "How many") + " (1-" + max + "): ");
+                n = scanner.nextInt(); scanner.nextLine();
+                if (n >= 1 && n <= max) {
+                    break;
+                }
+                System.out.println("Enter a number from 1 to " + max + ".");
+            }
+        }
+        SalesReports.Report report = switch (type) {
+            case 1 -> salesReports.topCustomers(n);
+            case 2 -> salesReports.topProducts(n);
+            case 4 -> salesReports.dailySales(n);
+            default -> salesReports.orderValue();
+        };
+        System.out.println(report);
+    }
+
+    private static void ordersByDate() {
+        LocalDate from;
+        LocalDate to;
+        try {
+            System.out.print("From date (yyyy-MM-dd): ");
+            from = LocalDate.parse(scanner.nextLine().trim());
+            System.out.print("To date, inclusive (yyyy-MM-dd): ");
+            to = LocalDate.parse(scanner.nextLine().trim());
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date."); return;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long start = System.nanoTime();
+        List<Order> found = orderService.getOrdersBetween(from.atStartOfDay(zone).toInstant().toEpochMilli(),
+                to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+        long total = 0;
+        for (Order order : found) {
+            total += order.getTotalCents();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Order order : found.subList(0, Math.min(found.size(), ORDERS_SHOWN))) {
+            System.out.println(order.getSummary());
+        }
+        if (found.size() > ORDERS_SHOWN) {
+            System.out.println("... and " + (found.size() - ORDERS_SHOWN) + " more");
+        }
+        System.out.printf("%,d orders totalling %s in %.2f ms%n", found.size(), Money.formatGrouped(total), elapsed / 1e6);
+    }
+
+    private static void findDuplicateCustomers() {
+        System.out.print("Check 1. Existing customers 2. A customer CSV file (e.g. leads): ");
+        int type = scanner.nextInt(); scanner.nextLine();
+        DedupeReport report;
+        long start = System.nanoTime();
+        if (type == 1) {
+            report = customerService.dedupeCustomers();
+        } else if (type == 2) {
+            System.out.println("Columns: " + CsvImporter.Kind.CUSTOMERS.columns());
+            System.out.print("CSV file: ");
+            java.io.File file = new java.io.File(scanner.nextLine().trim());
+            if (!file.isFile()) {
+                System.out.println("File not found."); return;
+            }
+            start = System.nanoTime();
+            try {
+                report = customerService.dedupeLeads(CsvImporter.readCustomers(file));
+            } catch (IOException e) {
+                System.out.println("Could not read file: " + e.getMessage()); return;
+            }
+        } else {
+            System.out.println("Invalid choice."); return;
+        }
+        List<DedupeReport.Duplicate> duplicates = report.getDuplicates();
+        duplicates.stream().limit(DUPLICATES_SHOWN).forEach(System.out::println);
+        if (duplicates.size() > DUPLICATES_SHOWN) {
+            System.out.printf("... and %,d more%n", duplicates.size() - DUPLICATES_SHOWN);
+        }
+        System.out.printf("%s in %.0f ms%n", report, (System.nanoTime() - start) / 1e6);
     }
 }
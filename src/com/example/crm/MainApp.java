@@ -1,27 +1,30 @@
 package com.example.crm;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class MainApp {
     public static void main(String[] args) {
-        CustomerService customerService = new CustomerService();
-        ProductService productService = new ProductService();
-        OrderService orderService = new OrderService(customerService, productService);
-        
-        // Initialize sample data if storage is empty
-        DataStorage.initializeSampleData(customerService, productService, orderService);
-        
         // Check if we should run in console mode
         if (args.length > 0 && args[0].equals("--console")) {
             System.out.println("Starting CRM in console mode...");
-            CRMApp.main(args); // Run the console app
+            CRMApp.main(args); // Run the console app; it loads its own data
+        } else if (args.length > 0 && args[0].equals("--server")) {
+            System.out.println("Starting CRM API server...");
+            try {
+                ApiServer.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.err.println("Could not start the server: " + e.getMessage());
+                System.exit(1);
+            }
         } else {
             System.out.println("Starting CRM with graphical interface...");
-            runGuiApp(customerService, productService, orderService);
+            runGuiApp();
         }
     }
     
-    private static void runGuiApp(CustomerService customerService, ProductService productService, OrderService orderService) {
+    private static void runGuiApp() {
         try {
             // Set system look and feel
             javax.swing.UIManager.setLookAndFeel(javax.swing.UIManager.getSystemLookAndFeelClassName());
@@ -29,9 +32,14 @@ public class MainApp {
             System.out.println("Could not set system look and feel: " + e.getMessage());
         }
         
+        // Log any EDT event that takes longer than -Dcrm.edtWarnMs (default 100 ms)
+        EdtWatchdog.install(Long.getLong("crm.edtWarnMs", 100));
+        
+        // Show the window right away; the data is loaded in the background
         javax.swing.SwingUtilities.invokeLater(() -> {
-            CRMGui gui = new CRMGui(customerService, productService, orderService);
+            CRMGui gui = new CRMGui();
             gui.setVisible(true);
+            gui.loadData();
         });
     }
 } 
\ No newline at end of file
@@ -0,0 +1,220 @@
+package com.example.crm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+// Customer table over a memory-mapped customers.dat. The ID and offset arrays are
+// mapped from the customers.idx sidecar, so opening costs no decoding, only a checksum
+// pass over the records; a record becomes a Customer object only when it is looked up.
+// Looked-up, updated and newly added customers live on the heap, so heap use follows
+// the working set.
+// The snapshot is mapped as a single buffer, which limits it to 2 GB.
+// Access is serialized on the table, since even lookups fill the decode cache.
+class MappedCustomerTable implements EntityTable<Customer> {
+    private final ByteBuffer data;
+    private final IntBuffer ids;
+    private final LongBuffer offsets;
+    private final int baseCount;
+
+    // Base records that have been decoded (and possibly updated since)
+    private final IntObjectMap<Customer> materialized = new IntObjectMap<>();
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    // Customers added after the snapshot was written; their IDs are above every base ID
+    private final EntityIndex<Customer> appended = new EntityIndex<>(new ArrayList<>());
+    // Base positions still alive, rebuilt lazily after a delete. Never modified once
+    // built, so listings can hold on to it.
+    private int[] livePositions;
+
+    private MappedCustomerTable(ByteBuffer data, IntBuffer ids, LongBuffer offsets) {
+        this.data = data;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.baseCount = ids.limit();
+    }
+
+    static MappedCustomerTable open(File snapshotFile, File indexFile) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.capacity() < RecordCodec.HEADER_SIZE) {
+            throw new IOException(snapshotFile.getName() + " is truncated");
+        }
+        if (data.getInt(0) != RecordCodec.MAGIC || data.get(6) != RecordCodec.CUSTOMER.type()) {
+            throw new IOException(snapshotFile.getName() + " is not a customer snapshot");
+        }
+        int count = data.getInt(7);
+        long checksum = data.getLong(11);
+        // One sequential pass over the mapped records, without decoding them
+        CRC32 crc = new CRC32();
+        if (data.getShort(4) >= RecordCodec.HEADER_CHECKSUM_VERSION) {
+            crc.update(data.duplicate().limit(RecordCodec.CHECKSUM_OFFSET));
+        }
+        crc.update(data.duplicate().position(RecordCodec.HEADER_SIZE));
+        if (crc.getValue() != checksum) {
+            throw new IOException(snapshotFile.getName() + " failed its checksum");
+        }
+
+        MappedByteBuffer index;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (index.capacity() != RecordCodec.INDEX_HEADER_SIZE + count * 12L
+                || index.getInt(0) != RecordCodec.INDEX_MAGIC
+                || index.getInt(4) != count
+                || index.getLong(8) != checksum) {
+            throw new IOException(indexFile.getName() + " does not match " + snapshotFile.getName());
+        }
+        IntBuffer ids = index.position(RecordCodec.INDEX_HEADER_SIZE).slice().asIntBuffer().limit(count);
+        LongBuffer offsets = index.position(RecordCodec.INDEX_HEADER_SIZE + count * 4).slice().asLongBuffer();
+        return new MappedCustomerTable(data, ids, offsets);
+    }
+
+    private Customer decode(int position) {
+        return RecordCodec.CUSTOMER.read(data.duplicate().position((int) offsets.get(position)));
+    }
+
+    private int basePosition(int id) {
+        int low = 0;
+        int high = baseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = ids.get(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return deleted.get(mid) ? -1 : mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized Customer get(int id) {
+        Customer customer = materialized.get(id);
+        if (customer != null) {
+            return customer;
+        }
+        int position = basePosition(id);
+        if (position >= 0) {
+            customer = decode(position);
+            materialized.put(id, customer);
+            return customer;
+        }
+        return appended.get(id);
+    }
+
+    @Override
+    public synchronized void add(Customer customer) {
+        if (basePosition(customer.getId()) >= 0) {
+            materialized.put(customer.getId(), customer);
+        } else {
+            appended.add(customer);
+        }
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Customer> customers) {
+        List<Customer> added = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            if (basePosition(customer.getId()) >= 0) {
+                materialized.put(customer.getId(), customer);
+            } else {
+                added.add(customer);
+            }
+        }
+        appended.addAll(added);
+    }
+
+    @Override
+    public synchronized Customer remove(int id) {
+        int position = basePosition(id);
+        if (position < 0) {
+            return appended.remove(id);
+        }
+        Customer removed = materialized.remove(id);
+        deleted.set(position);
+        deletedCount++;
+        livePositions = null;
+        return removed != null ? removed : decode(position);
+    }
+
+    @Override
+    public synchronized int maxId() {
+        int maxBaseId = baseCount > 0 ? ids.get(baseCount - 1) : 0;
+        return Math.max(maxBaseId, appended.maxId());
+    }
+
+    @Override
+    public synchronized int size() {
+        return baseCount - deletedCount + appended.size();
+    }
+
+    @Override
+    public synchronized List<Customer> list() {
+        return new ListView(baseCount - deletedCount, deletedCount == 0 ? null : livePositions(), appended.list());
+    }
+
+    // Listing decodes records on the fly without caching them, so a full scan
+    // doesn't pull the whole file onto the heap. Membership is fixed when the
+    // listing is taken; base records deleted later still decode from the file.
+    private class ListView extends AbstractList<Customer> implements RandomAccess {
+        private final int liveBase;
+        private final int[] positions;
+        private final List<Customer> appendedSnapshot;
+
+        ListView(int liveBase, int[] positions, List<Customer> appendedSnapshot) {
+            this.liveBase = liveBase;
+            this.positions = positions;
+            this.appendedSnapshot = appendedSnapshot;
+        }
+
+        @Override
+        public Customer get(int index) {
+            if (index >= liveBase) {
+                return appendedSnapshot.get(index - liveBase);
+            }
+            if (index < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            int position = positions == null ? index : positions[index];
+            synchronized (MappedCustomerTable.this) {
+                Customer customer = materialized.get(ids.get(position));
+                return customer != null ? customer : decode(position);
+            }
+        }
+
+        @Override
+        public int size() {
+            return liveBase + appendedSnapshot.size();
+        }
+    }
+
+    private int[] livePositions() {
+        if (livePositions == null) {
+            int[] positions = new int[baseCount - deletedCount];
+            int next = 0;
+            for (int i = deleted.nextClearBit(0); i < baseCount; i = deleted.nextClearBit(i + 1)) {
+                positions[next++] = i;
+            }
+            livePositions = positions;
+        }
+        return livePositions;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.crm;
+
+// Money amounts are longs holding cents (minor units). Adding cents is exact, however
+// many order lines are summed, where doubles drift; and the helpers here parse and
+// format the digits directly, without String.format or BigDecimal, so formatting into
+// a caller's StringBuilder allocates nothing.
+final class Money {
+    private Money() {
+    }
+
+    // Price times quantity; fails rather than wrapping around
+    static long times(long cents, int quantity) {
+        return Math.multiplyExact(cents, quantity);
+    }
+
+    // Nearest cent of an amount in dollars; used to migrate data stored as doubles
+    static long fromDouble(double dollars) {
+        return Math.round(dollars * 100.0);
+    }
+
+    static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    // Parses "149.99", "-5", "$1,234.5" and the like. Digits past the cents are rounded
+    // half up. Throws NumberFormatException like Double.parseDouble().
+    static long parse(String text) {
+        String s = text.trim();
+        int i = 0;
+        boolean negative = false;
+        if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i++) == '-';
+        }
+        if (i < s.length() && s.charAt(i) == '$') {
+            i++;
+        }
+        long cents = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        try {
+            for (; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits++;
+                    if (decimals < 2) {
+                        cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+                        if (decimals >= 0) {
+                            decimals++;
+                        }
+                    } else if (decimals == 2) {
+                        roundUp = c >= '5';
+                        decimals++;
+                    }
+                } else if (c == '.' && decimals < 0) {
+                    decimals = 0;
+                } else if (c != ',' || decimals >= 0) {
+                    throw new NumberFormatException("Not an amount: \"" + text + "\"");
+                }
+            }
+            if (digits == 0) {
+                throw new NumberFormatException("Not an amount: \"" + text + "\"");
+            }
+            for (int d = Math.max(decimals, 0); d < 2; d++) {
+                cents = Math.multiplyExact(cents, 10);
+            }
+            if (roundUp) {
+                cents = Math.addExact(cents, 1);
+            }
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: \"" + text + "\"");
+        }
+        return negative ? -cents : cents;
+    }
+
+    // "$1234.56", as String.format("$%.2f") gave for doubles
+    static String format(long cents) {
+        return append(new StringBuilder(16), cents, false).toString();
+    }
+
+    // "$1,234,567.89", as String.format("$%,.2f") gave for doubles
+    static String formatGrouped(long cents) {
+        return append(new StringBuilder(20), cents, true).toString();
+    }
+
+    // "1234.56": no symbol, for editing and CSV
+    static String toPlainString(long cents) {
+        return appendDigits(new StringBuilder(16), cents, false).toString();
+    }
+
+    // Appends the amount with a dollar sign, e.g. "-$5.00"
+    static StringBuilder append(StringBuilder sb, long cents, boolean grouped) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        sb.append('$');
+        return appendUnsigned(sb, cents, grouped);
+    }
+
+    private static StringBuilder appendDigits(StringBuilder sb, long cents, boolean grouped) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        return appendUnsigned(sb, cents, grouped);
+    }
+
+    // Works on the magnitude of the quotient and remainder, which also covers Long.MIN_VALUE
+    private static StringBuilder appendUnsigned(StringBuilder sb, long cents, boolean grouped) {
+        long units = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+        if (grouped) {
+            appendGrouped(sb, units);
+        } else {
+            sb.append(units);
+        }
+        return sb.append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+
+    private static void appendGrouped(StringBuilder sb, long units) {
+        if (units < 1000) {
+            sb.append(units);
+            return;
+        }
+        appendGrouped(sb, units / 1000);
+        int group = (int) (units % 1000);
+        sb.append(',');
+        if (group < 100) {
+            sb.append('0');
+        }
+        if (group < 10) {
+            sb.append('0');
+        }
+        sb.append(group);
+    }
+}
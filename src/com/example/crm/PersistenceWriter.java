@@ -0,0 +1,119 @@
+package com.example.crm;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Background thread that writes queued journal records. Services only mark entities
+// dirty; every flush interval each sink writes what has queued up since the last run,
+// so a burst of changes to one entity type becomes a single journal write.
+class PersistenceWriter {
+    // Something with queued changes to persist
+    interface Sink {
+        int pendingCount();
+
+        // Write everything queued so far; returns the number of records written
+        int writePending() throws IOException;
+
+        void sync() throws IOException;
+    }
+
+    // Work done while no batch is being written (see exclusive())
+    interface Action<T> {
+        T run() throws IOException;
+    }
+
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor;
+
+    // Metrics, guarded by this
+    private long batchesWritten;
+    private long recordsWritten;
+    private long totalWriteNanos;
+    private long maxWriteNanos;
+
+    PersistenceWriter(long flushIntervalMillis) {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "crm-persistence");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::drain, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "crm-persistence-shutdown"));
+    }
+
+    void register(Sink sink) {
+        sinks.add(sink);
+    }
+
+    private synchronized void drain() {
+        for (Sink sink : sinks) {
+            if (sink.pendingCount() == 0) {
+                continue;
+            }
+            long start = System.nanoTime();
+            int written;
+            try {
+                written = sink.writePending();
+            } catch (IOException e) {
+                System.err.println("Error writing journal: " + e.getMessage());
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            batchesWritten++;
+            recordsWritten += written;
+            totalWriteNanos += elapsed;
+            maxWriteNanos = Math.max(maxWriteNanos, elapsed);
+        }
+    }
+
+    // Write everything queued so far and force it to disk, on the caller's thread
+    public synchronized void flush() {
+        drain();
+        for (Sink sink : sinks) {
+            try {
+                sink.sync();
+            } catch (IOException e) {
+                System.err.println("Error syncing journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Run action on the caller's thread while no batch is written by anyone else
+    public synchronized <T> T exclusive(Action<T> action) throws IOException {
+        return action.run();
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (Sink sink : sinks) {
+            depth += sink.pendingCount();
+        }
+        return depth;
+    }
+
+    public synchronized long batchesWritten() {
+        return batchesWritten;
+    }
+
+    public synchronized long recordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized double averageWriteMillis() {
+        return batchesWritten == 0 ? 0.0 : totalWriteNanos / 1e6 / batchesWritten;
+    }
+
+    public synchronized double maxWriteMillis() {
+        return maxWriteNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Persistence: queue=%d, batches=%d, records=%d, avg write=%.2f ms, max write=%.2f ms",
+                queueDepth(), batchesWritten(), recordsWritten(), averageWriteMillis(), maxWriteMillis());
+    }
+}
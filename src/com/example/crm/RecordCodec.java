@@ -0,0 +1,386 @@
+package com.example.crm;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Schema-explicit binary encoding for entities. Strings are length-prefixed UTF-8
+// (-1 for null) and numbers are fixed width. A snapshot file is
+//   [magic "CRMD"][version][entity type][record count][CRC32][records...]
+// Version 2 added the order creation time, version 3 stores money as long cents
+// instead of double dollars, and from version 4 the CRC32 covers the header before it
+// as well as the records (the record count included); older files are still read.
+// Counts and lengths read from a file or journal record are checked against the bytes
+// left before anything is allocated for them, so damaged data is an IOException.
+abstract class RecordCodec<T extends BaseEntity> {
+    static final int MAGIC = 0x43524D44;
+    static final short VERSION = 4;
+    static final short FIRST_VERSION = 1;
+    static final short HEADER_CHECKSUM_VERSION = 4;
+    static final int HEADER_SIZE = 4 + 2 + 1 + 4 + 8;
+    static final int CHECKSUM_OFFSET = HEADER_SIZE - 8;
+    // Every record starts with its ID
+    private static final int MIN_RECORD_SIZE = 4;
+    // Product ID, quantity and unit price
+    private static final int ORDER_ITEM_SIZE = 4 + 4 + 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final RecordCodec<Customer> CUSTOMER = new RecordCodec<>((byte) 1) {
+        @Override
+        void write(DataOutput out, Customer customer) throws IOException {
+            out.writeInt(customer.getId());
+            writeString(out, customer.getName());
+            writeString(out, customer.getContactPerson());
+            writeString(out, customer.getPhone());
+            writeString(out, customer.getEmail());
+        }
+
+        @Override
+        Customer read(DataInput in, short version) throws IOException {
+            return new Customer(in.readInt(), readString(in), readString(in), readString(in), readString(in));
+        }
+
+        @Override
+        Customer read(ByteBuffer in) {
+            return new Customer(in.getInt(), readString(in), readString(in), readString(in), readString(in));
+        }
+    };
+
+    static final RecordCodec<Product> PRODUCT = new RecordCodec<>((byte) 2) {
+        @Override
+        void write(DataOutput out, Product product) throws IOException {
+            out.writeInt(product.getId());
+            writeString(out, product.getName());
+            writeString(out, product.getDescription());
+            out.writeLong(product.getPriceCents());
+        }
+
+        @Override
+        Product read(DataInput in, short version) throws IOException {
+            return new Product(in.readInt(), readString(in), readString(in), readMoney(in, version));
+        }
+
+        @Override
+        Product read(ByteBuffer in) {
+            return new Product(in.getInt(), readString(in), readString(in), in.getLong());
+        }
+    };
+
+    static final RecordCodec<Order> ORDER = new RecordCodec<>((byte) 3) {
+        @Override
+        void write(DataOutput out, Order order) throws IOException {
+            out.writeInt(order.getId());
+            writeString(out, order.getName());
+            out.writeInt(order.getCustomerId());
+            out.writeLong(order.getTotalCents());
+            List<OrderItem> items = order.getOrderItems();
+            out.writeInt(items.size());
+            for (OrderItem item : items) {
+                out.writeInt(item.getProductId());
+                out.writeInt(item.getQuantity());
+                out.writeLong(item.getUnitPriceCents());
+            }
+            out.writeLong(order.getCreatedAt());
+        }
+
+        @Override
+        Order read(DataInput in, short version) throws IOException {
+            int id = in.readInt();
+            String name = readString(in);
+            int customerId = in.readInt();
+            long totalCents = readMoney(in, version);
+            int itemCount = fitting(in, in.readInt(), ORDER_ITEM_SIZE);
+            List<OrderItem> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                items.add(new OrderItem(in.readInt(), in.readInt(), readMoney(in, version)));
+            }
+            long createdAt = version >= 2 ? in.readLong() : 0L;
+            return new Order(id, name, customerId, items, totalCents, createdAt);
+        }
+
+        @Override
+        Order read(ByteBuffer in) {
+            int id = in.getInt();
+            String name = readString(in);
+            int customerId = in.getInt();
+            long totalCents = in.getLong();
+            int itemCount = in.getInt();
+            if (itemCount < 0 || (long) itemCount * ORDER_ITEM_SIZE > in.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            List<OrderItem> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                items.add(new OrderItem(in.getInt(), in.getInt(), in.getLong()));
+            }
+            return new Order(id, name, customerId, items, totalCents, in.getLong());
+        }
+
+        // Unversioned journal records are version 1 or 2; those written before orders had
+        // a creation time end after the items
+        @Override
+        Order fromBytes(byte[] payload, int format) throws IOException {
+            if (format != 0) {
+                return super.fromBytes(payload, format);
+            }
+            RecordInput in = new RecordInput(new ByteArrayInputStream(payload), payload.length);
+            Order order = read(in, FIRST_VERSION);
+            if (in.remaining() >= 8) {
+                order.setCreatedAt(in.readLong());
+            }
+            return order;
+        }
+    };
+
+    private final byte type;
+
+    private RecordCodec(byte type) {
+        this.type = type;
+    }
+
+    byte type() {
+        return type;
+    }
+
+    abstract void write(DataOutput out, T entity) throws IOException;
+
+    // Decode one record written in the given snapshot version
+    abstract T read(DataInput in, short version) throws IOException;
+
+    // Decode one record of the current version at the buffer's position, advancing it
+    // past the record
+    abstract T read(ByteBuffer in);
+
+    byte[] toBytes(T entity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        write(new DataOutputStream(bytes), entity);
+        return bytes.toByteArray();
+    }
+
+    // Decode a journal record; see EntityJournal for its format number, 0 if unknown
+    T fromBytes(byte[] payload, int format) throws IOException {
+        return read(new RecordInput(new ByteArrayInputStream(payload), payload.length), format == 0 ? FIRST_VERSION : (short) format);
+    }
+
+    // Write a complete snapshot; the checksum slot in the header is filled in last, and
+    // the file is forced to disk before returning so it can safely be renamed into place.
+    // When indexFile is given, an ID -> file offset index is written next to it.
+    void writeFile(File file, List<T> entities, File indexFile) throws IOException {
+        int[] ids = indexFile != null ? new int[entities.size()] : null;
+        long[] offsets = indexFile != null ? new long[entities.size()] : null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).put(type)
+                    .putInt(entities.size()).putLong(0L);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, CHECKSUM_OFFSET);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            OutputStream channelOut = Channels.newOutputStream(channel);
+            DataOutputStream records = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(channelOut, crc), BUFFER_SIZE));
+            long offset = HEADER_SIZE;
+            int i = 0;
+            for (T entity : entities) {
+                if (ids != null) {
+                    ids[i] = entity.getId();
+                    offsets[i++] = offset;
+                }
+                int before = records.size();
+                write(records, entity);
+                offset += records.size() - before;
+            }
+            records.flush();
+            ByteBuffer checksum = ByteBuffer.allocate(8).putLong(crc.getValue());
+            checksum.flip();
+            channel.write(checksum, CHECKSUM_OFFSET);
+            channel.force(true);
+            if (indexFile != null) {
+                writeIndex(indexFile, ids, offsets, crc.getValue());
+            }
+        }
+    }
+
+    // Index file: [magic "CRMI"][record count][snapshot checksum][ids...][offsets...]
+    static final int INDEX_MAGIC = 0x43524D49;
+    static final int INDEX_HEADER_SIZE = 4 + 4 + 8;
+
+    static void writeIndex(File indexFile, int[] ids, long[] offsets, long snapshotChecksum) throws IOException {
+        try (FileOutputStream fileOut = new FileOutputStream(indexFile);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(ids.length);
+            out.writeLong(snapshotChecksum);
+            for (int id : ids) {
+                out.writeInt(id);
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+    }
+
+    // The checksum is verified in a first pass over the file, before anything is decoded
+    List<T> readFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Until the header is read or the file ends
+            }
+            if (header.hasRemaining()) {
+                throw new IOException(file.getName() + " is truncated");
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a CRM data file");
+            }
+            short version = header.getShort();
+            if (version < FIRST_VERSION || version > VERSION) {
+                throw new IOException(file.getName() + " has unsupported version " + version);
+            }
+            if (header.get() != type) {
+                throw new IOException(file.getName() + " holds a different entity type");
+            }
+            int count = header.getInt();
+            long expectedChecksum = header.getLong();
+            if (count < 0 || count > (size - HEADER_SIZE) / MIN_RECORD_SIZE) {
+                throw new IOException(file.getName() + " claims " + count + " records, more than it can hold");
+            }
+
+            CRC32 crc = new CRC32();
+            if (version >= HEADER_CHECKSUM_VERSION) {
+                crc.update(header.array(), 0, CHECKSUM_OFFSET);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+            if (crc.getValue() != expectedChecksum) {
+                throw new IOException(file.getName() + " failed its checksum");
+            }
+
+            channel.position(HEADER_SIZE);
+            RecordInput in = new RecordInput(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE),
+                    size - HEADER_SIZE);
+            List<T> entities = new ArrayList<>(count);
+            try {
+                for (int i = 0; i < count; i++) {
+                    entities.add(read(in, version));
+                }
+            } catch (EOFException e) {
+                throw new IOException(file.getName() + " is truncated");
+            }
+            if (in.read() >= 0) {
+                throw new IOException(file.getName() + " has trailing data after " + count + " records");
+            }
+            return entities;
+        }
+    }
+
+    // Keeps count of the bytes left, for fitting()
+    static final class RecordInput extends DataInputStream {
+        RecordInput(InputStream in, long length) {
+            super(new Counter(in, length));
+        }
+
+        long remaining() {
+            return ((Counter) in).remaining;
+        }
+
+        private static final class Counter extends FilterInputStream {
+            long remaining;
+
+            Counter(InputStream in, long length) {
+                super(in);
+                remaining = length;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                remaining -= skipped;
+                return skipped;
+            }
+        }
+    }
+
+    // A count of things of bytesEach bytes read from in: an IOException if it is negative
+    // or, where the bytes left are known (RecordInput), more than there is room for
+    static int fitting(DataInput in, int count, int bytesEach) throws IOException {
+        if (count < 0 || in instanceof RecordInput && (long) count * bytesEach > ((RecordInput) in).remaining()) {
+            throw new IOException("A count of " + count + " runs past the end of the record");
+        }
+        return count;
+    }
+
+    // Money is long cents from version 3 on, and double dollars before
+    static long readMoney(DataInput in, short version) throws IOException {
+        return version >= 3 ? in.readLong() : Money.fromDouble(in.readDouble());
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        fitting(in, length, 1);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.crm;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+// Running sales totals kept by OrderService, so the status bar and dashboard don't
+// have to rescan every order. Each update is O(1); all access is synchronized on
+// this object, so a reader always sees the count and totals of the same moment.
+class SalesAggregates {
+    // Per-customer: count = orders, cents = revenue. Per-product: count = units sold,
+    // cents = revenue.
+    private static final class Tally {
+        long count;
+        long cents;
+    }
+
+    // How many of the latest changes are kept for changesSince()
+    private static final int RECENT_CHANGES = 1 << 16;
+
+    // One change: an order was created (item is null; its items follow as changes of their
+    // own) or an item was added to it
+    static final class Change {
+        final Order order;
+        final OrderItem item;
+
+        Change(Order order, OrderItem item) {
+            this.order = order;
+            this.item = item;
+        }
+    }
+
+    private int orderCount;
+    // Money is summed in cents (see Money), so totals stay exact
+    private long totalSalesCents;
+    // Bumped by every change, so derived data (e.g. report columns) knows when it's stale
+    private long changes;
+    private final IntObjectMap<Tally> byCustomer = new IntObjectMap<>();
+    private final IntObjectMap<Tally> byProduct = new IntObjectMap<>();
+    // Per local calendar day (as an epoch day) the order was created: count = orders,
+    // cents = revenue. A rolling window of d days is a sum of d tallies.
+    private final IntObjectMap<Tally> byDay = new IntObjectMap<>();
+    // The latest changes, change n at n % RECENT_CHANGES
+    private final Change[] recent = new Change[RECENT_CHANGES];
+
+    // Counts a new order, including any items it already has
+    public synchronized void orderCreated(Order order) {
+        orderCount++;
+        recent[(int) (changes++ % RECENT_CHANGES)] = new Change(order, null);
+        tally(byCustomer, order.getCustomerId()).count++;
+        tally(byDay, dayOf(order.getCreatedAt())).count++;
+        for (OrderItem item : order.getOrderItems()) {
+            itemAdded(order, item);
+        }
+    }
+
+    public synchronized void itemAdded(Order order, OrderItem item) {
+        recent[(int) (changes++ % RECENT_CHANGES)] = new Change(order, item);
+        long subtotal = item.getSubtotalCents();
+        totalSalesCents += subtotal;
+        tally(byCustomer, order.getCustomerId()).cents += subtotal;
+        tally(byDay, dayOf(order.getCreatedAt())).cents += subtotal;
+        Tally product = tally(byProduct, item.getProductId());
+        product.count += item.getQuantity();
+        product.cents += subtotal;
+    }
+
+    // The local calendar day of a time, as days since 1970-01-01
+    static int dayOf(long millis) {
+        return (int) LocalDate.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).toEpochDay();
+    }
+
+    private static Tally tally(IntObjectMap<Tally> tallies, int id) {
+        Tally tally = tallies.get(id);
+        if (tally == null) {
+            tally = new Tally();
+            tallies.put(id, tally);
+        }
+        return tally;
+    }
+
+    public synchronized int getOrderCount() {
+        return orderCount;
+    }
+
+    public synchronized long getTotalSalesCents() {
+        return totalSalesCents;
+    }
+
+    public synchronized long getChangeCount() {
+        return changes;
+    }
+
+    // The changes made after the first "from" (a change count), oldest first, or null
+    // if they are no longer all kept
+    public synchronized List<Change> changesSince(long from) {
+        if (from < changes - RECENT_CHANGES || from > changes) {
+            return null;
+        }
+        List<Change> since = new ArrayList<>((int) (changes - from));
+        for (long n = from; n < changes; n++) {
+            since.add(recent[(int) (n % RECENT_CHANGES)]);
+        }
+        return since;
+    }
+
+    public synchronized int getCustomerOrderCount(int customerId) {
+        Tally tally = byCustomer.get(customerId);
+        return tally != null ? (int) tally.count : 0;
+    }
+
+    public synchronized long getCustomerRevenueCents(int customerId) {
+        Tally tally = byCustomer.get(customerId);
+        return tally != null ? tally.cents : 0;
+    }
+
+    public synchronized long getProductUnitsSold(int productId) {
+        Tally tally = byProduct.get(productId);
+        return tally != null ? tally.count : 0;
+    }
+
+    public synchronized long getProductRevenueCents(int productId) {
+        Tally tally = byProduct.get(productId);
+        return tally != null ? tally.cents : 0;
+    }
+
+    // Orders and revenue in cents for the days firstDay, firstDay + 1, ... (epoch days), one per
+    // element of the arrays, all from the same moment
+    public synchronized void dailyTotals(int firstDay, long[] orders, long[] revenueCents) {
+        for (int i = 0; i < orders.length; i++) {
+            Tally tally = byDay.get(firstDay + i);
+            orders[i] = tally != null ? tally.count : 0;
+            revenueCents[i] = tally != null ? tally.cents : 0;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.crm;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Sales reports computed from a column-oriented copy of the orders: one primitive array
+// per field, with customers and products renumbered to dense slots so totals can be
+// summed into plain arrays. Each report is a single pass over the columns. Once there
+// are enough rows to be worth it, the pass is split into one range per core, run on the
+// common fork/join pool, each summing into its own arrays. The columns are built on
+// the first report; after that, each report first applies the order changes made since
+// the last one (see SalesAggregates.Change), so a change costs O(1) rather than a
+// rebuild. Only a report that finds more changes than are kept rebuilds the columns.
+class SalesReports {
+    // Below this many rows a single thread is faster than splitting the work
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    // Width of the rolling window in the daily sales report
+    private static final int ROLLING_DAYS = 7;
+    // Largest n for the top-n reports, and the most days the daily sales report covers
+    static final int MAX_TOP = 10_000;
+    static final int MAX_DAYS = 3660;
+
+    // A finished report: a small table plus how it was computed
+    static final class Report {
+        final String title;
+        final String[] columns;
+        final List<Object[]> rows;
+        final int rowsScanned;
+        final boolean parallel;
+        final long elapsedNanos;
+
+        Report(String title, String[] columns, List<Object[]> rows, int rowsScanned, boolean parallel, long elapsedNanos) {
+            this.title = title;
+            this.columns = columns;
+            this.rows = rows;
+            this.rowsScanned = rowsScanned;
+            this.parallel = parallel;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        String timing() {
+            return String.format("%,d rows in %.1f ms%s", rowsScanned, elapsedNanos / 1e6, parallel ? " (parallel)" : "");
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(title).append('\n');
+            sb.append(String.join(" | ", columns)).append('\n');
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    sb.append(i == 0 ? "" : " | ").append(row[i]);
+                }
+                sb.append('\n');
+            }
+            return sb.append(timing()).toString();
+        }
+    }
+
+    // The orders as columns: a row per order and a row per item, each in the order they
+    // were added, so a change appends rows or adds to an order's row
+    private static final class Columns {
+        long changeCount;
+        int orderCount;
+        int[] orderCustomer = new int[16];
+        // Money columns are in cents; see Money
+        long[] orderTotal = new long[16];
+        int[] orderItems = new int[16];
+        int itemCount;
+        int[] itemProduct = new int[16];
+        int[] itemQuantity = new int[16];
+        long[] itemSubtotal = new long[16];
+        // Order ID to row; customer and product IDs to slots
+        final Slots orders = new Slots();
+        final Slots customers = new Slots();
+        final Slots products = new Slots();
+
+        Columns(long changeCount, List<Order> orders) {
+            this.changeCount = changeCount;
+            for (Order order : orders) {
+                int row = addOrder(order);
+                for (OrderItem item : order.getOrderItems()) {
+                    addItem(row, item);
+                }
+            }
+        }
+
+        // Orders listed after the change count was read may already hold later changes,
+        // so a change the columns have is skipped: an order that has a row, or an item
+        // within the number of items its order row has. Items are added to an order one
+        // at a time, in the order of its item list.
+        void apply(SalesAggregates.Change change) {
+            int row = orders.find(change.order.getId());
+            if (row < 0) {
+                row = addOrder(change.order);
+            }
+            if (change.item != null && indexOf(change.order.getOrderItems(), change.item) >= orderItems[row]) {
+                addItem(row, change.item);
+            }
+        }
+
+        private int addOrder(Order order) {
+            int row = orders.slot(order.getId());
+            if (row == orderCustomer.length) {
+                orderCustomer = Arrays.copyOf(orderCustomer, row * 2);
+                orderTotal = Arrays.copyOf(orderTotal, row * 2);
+                orderItems = Arrays.copyOf(orderItems, row * 2);
+            }
+            orderCustomer[row] = customers.slot(order.getCustomerId());
+            orderCount++;
+            return row;
+        }
+
+        private void addItem(int row, OrderItem item) {
+            if (itemCount == itemProduct.length) {
+                itemProduct = Arrays.copyOf(itemProduct, itemCount * 2);
+                itemQuantity = Arrays.copyOf(itemQuantity, itemCount * 2);
+                itemSubtotal = Arrays.copyOf(itemSubtotal, itemCount * 2);
+            }
+            itemProduct[itemCount] = products.slot(item.getProductId());
+            itemQuantity[itemCount] = item.getQuantity();
+            itemSubtotal[itemCount] = item.getSubtotalCents();
+            itemCount++;
+            orderTotal[row] += item.getSubtotalCents();
+            orderItems[row]++;
+        }
+
+        private static int indexOf(List<OrderItem> items, OrderItem item) {
+            int i = 0;
+            for (OrderItem candidate : items) {
+                if (candidate == item) {
+                    return i;
+                }
+                i++;
+            }
+            return i;
+        }
+    }
+
+    // Numbers entity IDs 0, 1, 2... in order of first appearance
+    private static final class Slots {
+        private final IntObjectMap<Integer> slots = new IntObjectMap<>();
+        private int[] ids = new int[16];
+
+        int slot(int id) {
+            Integer slot = slots.get(id);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(id, slot);
+                if (slot == ids.length) {
+                    ids = Arrays.copyOf(ids, slot * 2);
+                }
+                ids[slot] = id;
+            }
+            return slot;
+        }
+
+        // The slot of an ID, or -1 if it has none
+        int find(int id) {
+            Integer slot = slots.get(id);
+            return slot != null ? slot : -1;
+        }
+
+        int id(int slot) {
+            return ids[slot];
+        }
+
+        int size() {
+            return slots.size();
+        }
+    }
+
+    // Per-slot sums over a range of rows, amounts in cents; ranges are merged by adding
+    private static final class Sums {
+        final long[] amount;
+        final long[] count;
+
+        Sums(int slots) {
+            amount = new long[slots];
+            count = new long[slots];
+        }
+
+        Sums merge(Sums other) {
+            for (int i = 0; i < amount.length; i++) {
+                amount[i] += other.amount[i];
+                count[i] += other.count[i];
+            }
+            return this;
+        }
+    }
+
+    private final OrderService orderService;
+    private final CustomerService customerService;
+    private final ProductService productService;
+    private Columns columns;
+
+    SalesReports(OrderService orderService, CustomerService customerService, ProductService productService) {
+        this.orderService = orderService;
+        this.customerService = customerService;
+        this.productService = productService;
+    }
+
+    // Brings the columns up to date with the changes since the last report, or builds them
+    // from the orders if there is no last report or too much has changed since. Reports hold
+    // this object's lock while they read the columns, so they don't change under a report.
+    private Columns columns() {
+        if (columns != null) {
+            List<SalesAggregates.Change> changes = orderService.getChangesSince(columns.changeCount);
+            if (changes != null) {
+                for (SalesAggregates.Change change : changes) {
+                    columns.apply(change);
+                }
+                columns.changeCount += changes.size();
+                return columns;
+            }
+        }
+        long changeCount = orderService.getChangeCount();
+        columns = new Columns(changeCount, orderService.getAllOrders());
+        return columns;
+    }
+
+    private static void checkRange(String what, int value, int max) {
+        if (value < 1 || value > max) {
+            throw new IllegalArgumentException(what + " must be from 1 to " + max + ", not " + value);
+        }
+    }
+
+    // The n customers with the highest revenue
+    public synchronized Report topCustomers(int n) {
+        checkRange("n", n, MAX_TOP);
+        long start = System.nanoTime();
+        Columns c = columns();
+        boolean parallel = isWorthSplitting(c.orderCount);
+        Sums sums = sum(c.orderCount, parallel, c.customers.size(), (sum, from, to) -> {
+            for (int i = from; i < to; i++) {
+                sum.amount[c.orderCustomer[i]] += c.orderTotal[i];
+                sum.count[c.orderCustomer[i]]++;
+            }
+        });
+        List<Object[]> rows = new ArrayList<>();
+        int rank = 1;
+        for (int slot : top(sums.amount, c.customers, n)) {
+            Customer customer = customerService.getCustomerById(c.customers.id(slot));
+            rows.add(new Object[] {rank++, c.customers.id(slot), customer != null ? customer.getName() : "(deleted)",
+                    sums.count[slot], Money.formatGrouped(sums.amount[slot])});
+        }
+        return new Report("Top " + n + " customers by revenue", new String[] {"Rank", "ID", "Customer", "Orders", "Revenue"},
+                rows, c.orderCount, parallel, System.nanoTime() - start);
+    }
+
+    // The n products with the highest revenue, with the units sold
+    public synchronized Report topProducts(int n) {
+        checkRange("n", n, MAX_TOP);
+        long start = System.nanoTime();
+        Columns c = columns();
+        int items = c.itemCount;
+        boolean parallel = isWorthSplitting(items);
+        Sums sums = sum(items, parallel, c.products.size(), (sum, from, to) -> {
+            for (int i = from; i < to; i++) {
+                sum.amount[c.itemProduct[i]] += c.itemSubtotal[i];
+                sum.count[c.itemProduct[i]] += c.itemQuantity[i];
+            }
+        });
+        List<Object[]> rows = new ArrayList<>();
+        int rank = 1;
+        for (int slot : top(sums.amount, c.products, n)) {
+            Product product = productService.getProductById(c.products.id(slot));
+            rows.add(new Object[] {rank++, c.products.id(slot), product != null ? product.getName() : "(deleted)",
+                    sums.count[slot], Money.formatGrouped(sums.amount[slot])});
+        }
+        return new Report("Top " + n + " products by revenue", new String[] {"Rank", "ID", "Product", "Units Sold", "Revenue"},
+                rows, items, parallel, System.nanoTime() - start);
+    }
+
+    // Order count, total and average value, items per order and the largest order
+    public synchronized Report orderValue() {
+        long start = System.nanoTime();
+        Columns c = columns();
+        boolean parallel = isWorthSplitting(c.orderCount);
+        // Slot 0: orders and sales; slot 1: items and the largest order total
+        Sums sums = sum(c.orderCount, parallel, 2, (sum, from, to) -> {
+            for (int i = from; i < to; i++) {
+                sum.amount[0] += c.orderTotal[i];
+                sum.count[0]++;
+                sum.count[1] += c.orderItems[i];
+                sum.amount[1] = Math.max(sum.amount[1], c.orderTotal[i]);
+            }
+        }, (a, b) -> {
+            long largest = Math.max(a.amount[1], b.amount[1]);
+            a.merge(b).amount[1] = largest;
+            return a;
+        });
+        long orders = sums.count[0];
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] {"Orders", String.format("%,d", orders)});
+        rows.add(new Object[] {"Total sales", Money.formatGrouped(sums.amount[0])});
+        rows.add(new Object[] {"Average order value", Money.formatGrouped(orders == 0 ? 0 : Math.round((double) sums.amount[0] / orders))});
+        rows.add(new Object[] {"Average items per order", String.format("%.2f", orders == 0 ? 0.0 : (double) sums.count[1] / orders)});
+        rows.add(new Object[] {"Largest order", Money.formatGrouped(sums.amount[1])});
+        return new Report("Order value", new String[] {"Measure", "Value"}, rows, c.orderCount, parallel, System.nanoTime() - start);
+    }
+
+    // Orders and revenue for each of the last n days, newest first, with the revenue of
+    // the seven days ending on each day. Read from the running per-day totals, so no
+    // orders are scanned.
+    public Report dailySales(int days) {
+        checkRange("days", days, MAX_DAYS);
+        long start = System.nanoTime();
+        long[] orders = new long[days + ROLLING_DAYS - 1];
+        long[] revenue = new long[orders.length];
+        int firstDay = orderService.getDailyTotals(orders, revenue);
+        long[] rolling = new long[orders.length];
+        long window = 0;
+        for (int i = 0; i < orders.length; i++) {
+            window += revenue[i] - (i >= ROLLING_DAYS ? revenue[i - ROLLING_DAYS] : 0);
+            rolling[i] = window;
+        }
+        List<Object[]> rows = new ArrayList<>(days);
+        for (int i = orders.length - 1; i >= ROLLING_DAYS - 1; i--) {
+            rows.add(new Object[] {LocalDate.ofEpochDay(firstDay + i), orders[i],
+                    Money.formatGrouped(revenue[i]), Money.formatGrouped(rolling[i])});
+        }
+        return new Report("Daily sales, last " + days + " days", new String[] {"Date", "Orders", "Revenue", "7-Day Revenue"},
+                rows, orders.length, false, System.nanoTime() - start);
+    }
+
+    private interface RangeSummer {
+        void sum(Sums sums, int from, int to);
+    }
+
+    private interface SumsMerger {
+        Sums merge(Sums a, Sums b);
+    }
+
+    private static boolean isWorthSplitting(int rows) {
+        return rows >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    private static Sums sum(int rows, boolean parallel, int slots, RangeSummer summer) {
+        return sum(rows, parallel, slots, summer, Sums::merge);
+    }
+
+    private static Sums sum(int rows, boolean parallel, int slots, RangeSummer summer, SumsMerger merger) {
+        if (!parallel) {
+            Sums sums = new Sums(slots);
+            summer.sum(sums, 0, rows);
+            return sums;
+        }
+        // One range per core rather than many small ones: each range needs its own
+        // per-slot arrays, and there may be a slot for every customer
+        int ranges = ForkJoinPool.getCommonPoolParallelism() + 1;
+        return IntStream.range(0, ranges).parallel()
+                .mapToObj(range -> {
+                    Sums sums = new Sums(slots);
+                    summer.sum(sums, (int) ((long) rows * range / ranges), (int) ((long) rows * (range + 1) / ranges));
+                    return sums;
+                })
+                .reduce(merger::merge)
+                .orElseGet(() -> new Sums(slots));
+    }
+
+    // Slots of the n largest values, largest first; equal values by ID, lowest first, so
+    // the result doesn't depend on how the slots were numbered
+    private static int[] top(long[] values, Slots slots, int n) {
+        Comparator<Integer> ranking = (a, b) -> values[a] != values[b]
+                ? Long.compare(values[a], values[b]) : Integer.compare(slots.id(b), slots.id(a));
+        PriorityQueue<Integer> smallest = new PriorityQueue<>(Math.max(1, Math.min(n, values.length)), ranking);
+        for (int slot = 0; slot < values.length && n > 0; slot++) {
+            if (smallest.size() < n) {
+                smallest.add(slot);
+            } else if (ranking.compare(slot, smallest.peek()) > 0) {
+                smallest.poll();
+                smallest.add(slot);
+            }
+        }
+        int[] top = new int[smallest.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = smallest.poll();
+        }
+        return top;
+    }
+}
@@ -0,0 +1,521 @@
+package com.example.crm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// Inverted index over some text fields of an entity. Every lower-cased word maps to
+// the sorted IDs of the entities containing it, each with a bit per field it was
+// found in. A query is a list of words that must all match:
+//   acme john      both words, in any field
+//   acm*           a word starting with "acm"
+//   "john doe"     the words next to each other in one field
+// A word with punctuation inside, like an email address or a phone number, is
+// searched as a phrase. Matches are ranked by how rare the matched words are and by
+// the fields they were found in (fields are given most important first), then by ID.
+//
+// The index is built on the first search, so services that are never searched
+// don't pay for it, and is kept up to date on every change after that.
+// Safe for concurrent use.
+class SearchIndex<T extends BaseEntity> {
+    // A prefix match counts for less than the whole word
+    private static final float PREFIX_WEIGHT = 0.5f;
+
+    private final Function<T, String[]> fields;
+    private final IntFunction<T> lookup;
+    private final Supplier<List<T>> listing;
+    // Weight of a set of fields: the weight of the most important one
+    private final float[] fieldWeights;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    // Sorted terms for prefix lookups, plus the terms added since they were sorted.
+    // Terms whose entities are all gone keep their (empty) postings until the next merge.
+    private String[] sortedTerms = new String[0];
+    private Postings[] sortedPostings = new Postings[0];
+    private final TreeMap<String, Postings> newTerms = new TreeMap<>();
+    private boolean built;
+    // IDs of the indexed entities, so re-indexing one doesn't count it twice
+    private final BitSet indexed = new BitSet();
+    private int documents;
+    private int maxId;
+
+    // Sorted entity IDs, each with the fields containing the term
+    private static final class Postings {
+        int[] ids = new int[1];
+        byte[] fields = new byte[1];
+        int size;
+
+        void add(int id, byte fieldBits) {
+            int at = size;
+            // IDs mostly arrive in increasing order, so this is usually an append
+            if (size > 0 && ids[size - 1] >= id) {
+                int found = Arrays.binarySearch(ids, 0, size, id);
+                if (found >= 0) {
+                    fields[found] = fieldBits;
+                    return;
+                }
+                at = -found - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            System.arraycopy(fields, at, fields, at + 1, size - at);
+            ids[at] = id;
+            fields[at] = fieldBits;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                System.arraycopy(fields, at + 1, fields, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+
+    // A query word and the indexed terms it matches
+    private static final class Word {
+        final String text;
+        final boolean prefix;
+        final List<Postings> postings = new ArrayList<>();
+        final List<Float> weights = new ArrayList<>();
+        long estimate;
+
+        Word(String text, boolean prefix) {
+            this.text = text;
+            this.prefix = prefix;
+        }
+    }
+
+    // Entities matching the words so far, sorted by ID, with their scores
+    private static final class Matches {
+        int[] ids;
+        float[] scores;
+        int size;
+
+        Matches(int capacity) {
+            ids = new int[capacity];
+            scores = new float[capacity];
+        }
+    }
+
+    // Fields are given most important first
+    SearchIndex(Function<T, String[]> fields, int fieldCount, IntFunction<T> lookup, Supplier<List<T>> listing) {
+        this.fields = fields;
+        this.lookup = lookup;
+        this.listing = listing;
+        fieldWeights = new float[1 << fieldCount];
+        for (int bits = 1; bits < fieldWeights.length; bits++) {
+            fieldWeights[bits] = fieldCount - Integer.numberOfTrailingZeros(bits);
+        }
+    }
+
+    // The indexed text of an entity; take it before changing the entity and pass it to changed()
+    public String[] text(T entity) {
+        return fields.apply(entity);
+    }
+
+    // Index a new entity. Call after the entity is in its table.
+    public synchronized void add(T entity) {
+        if (built) {
+            index(entity.getId(), text(entity));
+        }
+    }
+
+    public synchronized void addAll(List<T> entities) {
+        if (built) {
+            for (T entity : entities) {
+                index(entity.getId(), text(entity));
+            }
+        }
+    }
+
+    public synchronized void changed(String[] oldText, T entity) {
+        if (built) {
+            unindex(entity.getId(), oldText);
+            index(entity.getId(), text(entity));
+        }
+    }
+
+    public synchronized void removed(T entity) {
+        if (built) {
+            unindex(entity.getId(), text(entity));
+        }
+    }
+
+    // Up to limit entities matching the query, best first
+    public synchronized List<T> search(String query, int limit) {
+        List<List<Word>> phrases = parse(query);
+        List<T> results = new ArrayList<>();
+        if (phrases.isEmpty() || limit <= 0) {
+            return results;
+        }
+        if (!built) {
+            rebuild();
+        }
+
+        List<Word> words = new ArrayList<>();
+        boolean checkPhrases = false;
+        for (List<Word> phrase : phrases) {
+            for (Word word : phrase) {
+                expand(word);
+                if (word.postings.isEmpty()) {
+                    return results;
+                }
+                words.add(word);
+            }
+            checkPhrases |= phrase.size() > 1;
+        }
+        // Start from the rarest word, so every later step has the fewest entities to check
+        words.sort((a, b) -> Long.compare(a.estimate, b.estimate));
+        Matches matches = collect(words.get(0));
+        for (int i = 1; i < words.size() && matches.size > 0; i++) {
+            matches = retain(matches, words.get(i));
+        }
+        return best(matches, limit, checkPhrases ? phrases : null);
+    }
+
+    // Turns typed text into a query where every word may be a prefix, for type-ahead
+    static String prefixQuery(String text) {
+        if (text.indexOf('"') >= 0) {
+            return text;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String chunk : text.trim().split("\\s+")) {
+            if (!chunk.isEmpty()) {
+                query.append(chunk).append(chunk.endsWith("*") ? " " : "* ");
+            }
+        }
+        return query.toString();
+    }
+
+    private void rebuild() {
+        built = true;
+        for (T entity : listing.get()) {
+            index(entity.getId(), text(entity));
+        }
+        mergeNewTerms();
+    }
+
+    private void index(int id, String[] text) {
+        Map<String, Byte> entityTerms = termsOf(text);
+        for (Map.Entry<String, Byte> entry : entityTerms.entrySet()) {
+            Postings postings = terms.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(entry.getKey(), postings);
+                newTerms.put(entry.getKey(), postings);
+            }
+            postings.add(id, entry.getValue());
+        }
+        if (!entityTerms.isEmpty()) {
+            if (!indexed.get(id)) {
+                indexed.set(id);
+                documents++;
+            }
+            maxId = Math.max(maxId, id);
+        }
+        // Merging costs a pass over all terms, so wait until there's a fair number of new ones
+        if (newTerms.size() > Math.max(4096, sortedTerms.length / 8)) {
+            mergeNewTerms();
+        }
+    }
+
+    private void unindex(int id, String[] text) {
+        Map<String, Byte> entityTerms = termsOf(text);
+        for (String term : entityTerms.keySet()) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(id);
+            }
+        }
+        if (indexed.get(id)) {
+            indexed.clear(id);
+            documents--;
+        }
+    }
+
+    // Each word of the text, with a bit for every field it appears in
+    private static Map<String, Byte> termsOf(String[] text) {
+        Map<String, Byte> found = new HashMap<>();
+        for (int field = 0; field < text.length; field++) {
+            byte bit = (byte) (1 << field);
+            for (String token : tokenize(text[field])) {
+                found.merge(token, bit, (a, b) -> (byte) (a | b));
+            }
+        }
+        return found;
+    }
+
+    private void mergeNewTerms() {
+        int total = sortedTerms.length + newTerms.size();
+        String[] mergedTerms = new String[total];
+        Postings[] mergedPostings = new Postings[total];
+        int size = 0;
+        int old = 0;
+        for (Map.Entry<String, Postings> entry : newTerms.entrySet()) {
+            while (old < sortedTerms.length && sortedTerms[old].compareTo(entry.getKey()) < 0) {
+                size = keep(sortedTerms[old], sortedPostings[old], mergedTerms, mergedPostings, size);
+                old++;
+            }
+            size = keep(entry.getKey(), entry.getValue(), mergedTerms, mergedPostings, size);
+        }
+        while (old < sortedTerms.length) {
+            size = keep(sortedTerms[old], sortedPostings[old], mergedTerms, mergedPostings, size);
+            old++;
+        }
+        sortedTerms = Arrays.copyOf(mergedTerms, size);
+        sortedPostings = Arrays.copyOf(mergedPostings, size);
+        newTerms.clear();
+    }
+
+    // Copies a term into the merged dictionary, or drops it for good if it's unused
+    private int keep(String term, Postings postings, String[] mergedTerms, Postings[] mergedPostings, int size) {
+        if (postings.size == 0) {
+            terms.remove(term);
+            return size;
+        }
+        mergedTerms[size] = term;
+        mergedPostings[size] = postings;
+        return size + 1;
+    }
+
+    // Finds the terms a query word matches and how much each one counts
+    private void expand(Word word) {
+        Postings exact = terms.get(word.text);
+        if (exact != null && exact.size > 0) {
+            addTerm(word, exact, 1f);
+        }
+        if (!word.prefix) {
+            return;
+        }
+        int from = Arrays.binarySearch(sortedTerms, word.text);
+        for (int i = from >= 0 ? from + 1 : -from - 1; i < sortedTerms.length && sortedTerms[i].startsWith(word.text); i++) {
+            if (sortedPostings[i].size > 0) {
+                addTerm(word, sortedPostings[i], PREFIX_WEIGHT);
+            }
+        }
+        for (Map.Entry<String, Postings> entry : newTerms.tailMap(word.text, false).entrySet()) {
+            if (!entry.getKey().startsWith(word.text)) {
+                break;
+            }
+            if (entry.getValue().size > 0) {
+                addTerm(word, entry.getValue(), PREFIX_WEIGHT);
+            }
+        }
+    }
+
+    private void addTerm(Word word, Postings postings, float weight) {
+        // Rarer terms say more about an entity
+        double rarity = Math.log(1 + (double) documents / postings.size);
+        word.postings.add(postings);
+        word.weights.add((float) (rarity * weight));
+        word.estimate += postings.size;
+    }
+
+    // Every entity matching a word, with the word's score
+    private Matches collect(Word word) {
+        if (word.postings.size() == 1) {
+            Postings postings = word.postings.get(0);
+            float weight = word.weights.get(0);
+            Matches matches = new Matches(postings.size);
+            for (int i = 0; i < postings.size; i++) {
+                matches.ids[i] = postings.ids[i];
+                matches.scores[i] = weight * fieldWeights[postings.fields[i]];
+            }
+            matches.size = postings.size;
+            return matches;
+        }
+        // Several terms: keep each entity's best score in a table indexed by ID
+        float[] best = new float[maxId + 1];
+        int count = 0;
+        for (int t = 0; t < word.postings.size(); t++) {
+            Postings postings = word.postings.get(t);
+            float weight = word.weights.get(t);
+            for (int i = 0; i < postings.size; i++) {
+                float score = weight * fieldWeights[postings.fields[i]];
+                int id = postings.ids[i];
+                if (best[id] == 0) {
+                    count++;
+                }
+                best[id] = Math.max(best[id], score);
+            }
+        }
+        Matches matches = new Matches(count);
+        for (int id = 0; id < best.length; id++) {
+            if (best[id] > 0) {
+                matches.ids[matches.size] = id;
+                matches.scores[matches.size++] = best[id];
+            }
+        }
+        return matches;
+    }
+
+    // The matches that also match the word, with the word's score added
+    private Matches retain(Matches matches, Word word) {
+        float[] added = new float[matches.size];
+        for (int t = 0; t < word.postings.size(); t++) {
+            Postings postings = word.postings.get(t);
+            float weight = word.weights.get(t);
+            if (postings.size < matches.size) {
+                // Look each of the term's IDs up among the matches
+                for (int i = 0; i < postings.size; i++) {
+                    int at = Arrays.binarySearch(matches.ids, 0, matches.size, postings.ids[i]);
+                    if (at >= 0) {
+                        added[at] = Math.max(added[at], weight * fieldWeights[postings.fields[i]]);
+                    }
+                }
+            } else {
+                for (int m = 0; m < matches.size; m++) {
+                    int at = Arrays.binarySearch(postings.ids, 0, postings.size, matches.ids[m]);
+                    if (at >= 0) {
+                        added[m] = Math.max(added[m], weight * fieldWeights[postings.fields[at]]);
+                    }
+                }
+            }
+        }
+        Matches kept = new Matches(matches.size);
+        for (int m = 0; m < matches.size; m++) {
+            if (added[m] > 0) {
+                kept.ids[kept.size] = matches.ids[m];
+                kept.scores[kept.size++] = matches.scores[m] + added[m];
+            }
+        }
+        return kept;
+    }
+
+    // The top matches by score, then ID. Phrases, if any, are checked against the
+    // entity's text only for matches good enough to make the list.
+    private List<T> best(Matches matches, int limit, List<List<Word>> phrases) {
+        // Sort keys: higher score first, then lower ID. There can't be more than there are matches.
+        int capacity = Math.min(limit, matches.size);
+        long[] top = new long[capacity];
+        int size = 0;
+        for (int m = 0; m < matches.size; m++) {
+            long key = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(matches.scores[m])) << 32) | matches.ids[m];
+            if (size == capacity && key >= top[size - 1]) {
+                continue;
+            }
+            if (phrases != null && !containsPhrases(matches.ids[m], phrases)) {
+                continue;
+            }
+            int at = size == capacity ? size - 1 : size++;
+            while (at > 0 && top[at - 1] > key) {
+                top[at] = top[at - 1];
+                at--;
+            }
+            top[at] = key;
+        }
+        List<T> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            T entity = lookup.apply((int) top[i]);
+            if (entity != null) {
+                results.add(entity);
+            }
+        }
+        return results;
+    }
+
+    private boolean containsPhrases(int id, List<List<Word>> phrases) {
+        T entity = lookup.apply(id);
+        if (entity == null) {
+            return false;
+        }
+        List<List<String>> fieldWords = new ArrayList<>();
+        for (String field : text(entity)) {
+            fieldWords.add(tokenize(field));
+        }
+        for (List<Word> phrase : phrases) {
+            if (phrase.size() > 1 && fieldWords.stream().noneMatch(words -> containsPhrase(words, phrase))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsPhrase(List<String> words, List<Word> phrase) {
+        for (int start = 0; start + phrase.size() <= words.size(); start++) {
+            int i = 0;
+            while (i < phrase.size() && matches(words.get(start + i), phrase.get(i))) {
+                i++;
+            }
+            if (i == phrase.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String term, Word word) {
+        return word.prefix ? term.startsWith(word.text) : term.equals(word.text);
+    }
+
+    // Splits a query into phrases: quoted text, or a run of text without spaces.
+    // A trailing * makes the phrase's last word a prefix.
+    private static List<List<Word>> parse(String query) {
+        List<List<Word>> phrases = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                i++;
+                continue;
+            }
+            String chunk;
+            if (query.charAt(i) == '"') {
+                int end = query.indexOf('"', i + 1);
+                end = end < 0 ? query.length() : end;
+                chunk = query.substring(i + 1, end).trim();
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '"') {
+                    end++;
+                }
+                chunk = query.substring(i, end);
+                i = end;
+            }
+            List<String> tokens = tokenize(chunk);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            List<Word> phrase = new ArrayList<>();
+            for (int t = 0; t < tokens.size(); t++) {
+                phrase.add(new Word(tokens.get(t), t == tokens.size() - 1 && chunk.endsWith("*")));
+            }
+            phrases.add(phrase);
+        }
+        return phrases;
+    }
+
+    // Lower-cased runs of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.crm;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+// Spliterator over an index range of an entity listing (see EntityTable.list()), which
+// is random-access and never changes once taken. It splits in exact halves down to
+// single entities, so parallel streams spread evenly over all cores, and reports
+// IMMUTABLE so no concurrent-modification checks are made along the way.
+final class SnapshotSpliterator<T> implements Spliterator<T> {
+    private final List<T> snapshot;
+    private int index;
+    private final int fence;
+
+    SnapshotSpliterator(List<T> snapshot) {
+        this(snapshot, 0, snapshot.size());
+    }
+
+    private SnapshotSpliterator(List<T> snapshot, int index, int fence) {
+        this.snapshot = snapshot;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (index >= fence) {
+            return false;
+        }
+        action.accept(snapshot.get(index++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        List<T> entities = snapshot;
+        int end = fence;
+        for (int i = index; i < end; i++) {
+            action.accept(entities.get(i));
+        }
+        index = end;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int low = index;
+        int mid = (low + fence) >>> 1;
+        if (low >= mid) {
+            return null;
+        }
+        index = mid;
+        return new SnapshotSpliterator<>(snapshot, low, mid);
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL | DISTINCT;
+    }
+}
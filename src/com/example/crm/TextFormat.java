@@ -0,0 +1,97 @@
+package com.example.crm;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+// Formatting helpers that append to a caller's StringBuilder instead of going through
+// String.format, which parses its pattern and boxes its arguments on every call. With
+// a reused builder, formatting a line allocates nothing. See also Money.append().
+final class TextFormat {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    // The local time zone offset, valid between two of the zone's transitions (e.g. for
+    // daylight saving time), so only times outside that span look the offset up again
+    private static final class Offset {
+        final long from;
+        final long until;
+        final long millis;
+
+        Offset(long from, long until, long millis) {
+            this.from = from;
+            this.until = until;
+            this.millis = millis;
+        }
+    }
+
+    private static volatile Offset offset;
+
+    private TextFormat() {
+    }
+
+    // Pads what was appended since "start" with spaces to at least "width" characters,
+    // like %-20s
+    static StringBuilder padTo(StringBuilder sb, int start, int width) {
+        for (int i = sb.length() - start; i < width; i++) {
+            sb.append(' ');
+        }
+        return sb;
+    }
+
+    // "yyyy-MM-dd HH:mm" in the local time zone
+    static StringBuilder appendDateTime(StringBuilder sb, long epochMillis) {
+        long local = epochMillis + offsetMillis(epochMillis);
+        long day = Math.floorDiv(local, MILLIS_PER_DAY);
+        int minuteOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / 60_000);
+        appendDate(sb, day).append(' ');
+        appendTwoDigits(sb, minuteOfDay / 60).append(':');
+        return appendTwoDigits(sb, minuteOfDay % 60);
+    }
+
+    static String formatDateTime(long epochMillis) {
+        return appendDateTime(new StringBuilder(16), epochMillis).toString();
+    }
+
+    // "yyyy-MM-dd" of a day counted from 1970-01-01, converted to the civil calendar
+    // arithmetically (H. Hinnant's days-to-civil) rather than through LocalDate
+    static StringBuilder appendDate(StringBuilder sb, long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year >= 0 && year < 1000) {
+            sb.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        sb.append(year).append('-');
+        appendTwoDigits(sb, month).append('-');
+        return appendTwoDigits(sb, dayOfMonth);
+    }
+
+    static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static long offsetMillis(long epochMillis) {
+        Offset current = offset;
+        if (current == null || epochMillis < current.from || epochMillis >= current.until) {
+            ZoneRules rules = ZoneId.systemDefault().getRules();
+            Instant instant = Instant.ofEpochMilli(epochMillis);
+            ZoneOffsetTransition previous = rules.previousTransition(instant);
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            ZoneOffset now = rules.getOffset(instant);
+            // At a transition instant itself, "previous" may be the one before it
+            long from = previous != null && previous.getOffsetAfter().equals(now) ? previous.toEpochSecond() * 1000
+                    : previous != null ? epochMillis : Long.MIN_VALUE;
+            current = new Offset(from, next != null ? next.toEpochSecond() * 1000 : Long.MAX_VALUE, now.getTotalSeconds() * 1000L);
+            offset = current;
+        }
+        return current.millis;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.crm;
+
+import java.util.Arrays;
+
+// Entity IDs ordered by a timestamp, e.g. orders by creation time. Times and IDs are
+// kept in two parallel primitive arrays sorted by (time, ID), so the entries in a time
+// range are found with two binary searches: O(log N + K) for K results. New entries
+// are almost always the newest, so adding one is usually an append.
+// All access is synchronized on this object.
+class TimeIndex {
+    private long[] times = new long[16];
+    private int[] ids = new int[16];
+    private int size;
+
+    public synchronized void add(long time, int id) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int at = size;
+        if (size > 0 && (times[size - 1] > time || times[size - 1] == time && ids[size - 1] > id)) {
+            at = upperBound(time, id);
+            // Out of order, e.g. two orders created at the same moment on different threads;
+            // only the few entries after it move
+            System.arraycopy(times, at, times, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+        }
+        times[at] = time;
+        ids[at] = id;
+        size++;
+    }
+
+    // IDs with from <= time < to, oldest first
+    public synchronized int[] between(long from, long to) {
+        int start = lowerBound(from);
+        int end = Math.max(start, lowerBound(to));
+        return Arrays.copyOfRange(ids, start, end);
+    }
+
+    public synchronized int count(long from, long to) {
+        return Math.max(0, lowerBound(to) - lowerBound(from));
+    }
+
+    // The newest n IDs, newest first; none for n <= 0
+    public synchronized int[] latest(int n) {
+        int[] latest = new int[Math.max(0, Math.min(n, size))];
+        for (int i = 0; i < latest.length; i++) {
+            latest[i] = ids[size - 1 - i];
+        }
+        return latest;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // The first position whose entry sorts after (time, id)
+    private int upperBound(long time, int id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time || times[mid] == time && ids[mid] <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // The first position whose time is >= time
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The tests share one data directory, so each starts its own backup chain with a full
+// backup and doesn't rely on the state the others leave
+class BackupTest {
+    // Enough to take a journal past the compaction threshold once, but not twice
+    private static final int ENTITIES_PER_COMPACTION = 15_000;
+    private static final File DATA_DIR;
+
+    private static CustomerService customerService;
+    private static ProductService productService;
+    private static OrderService orderService;
+    private static int added;
+
+    @TempDir
+    Path dir;
+
+    static {
+        try {
+            DATA_DIR = Files.createTempDirectory("crm-backup").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.setProperty("crm.dataDir", DATA_DIR.getPath());
+    }
+
+    @BeforeAll
+    static void createData() {
+        customerService = new CustomerService();
+        productService = new ProductService();
+        orderService = new OrderService(customerService, productService);
+        customerService.setQuiet(true);
+        productService.setQuiet(true);
+        orderService.setQuiet(true);
+        addCustomers(100);
+        List<Product> products = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            products.add(new Product(0, "Product " + i, "Description " + i, 100L * i));
+        }
+        productService.addProducts(products);
+        addOrders(50);
+    }
+
+    @Test
+    void incrementalBackupsRestoreEachPointInTime() throws IOException {
+        File backups = dir.resolve("backups").toFile();
+        Backup.Result first = Backup.backup(backups, false);
+        assertTrue(first.full);
+        assertEquals(1, first.id);
+        Map<String, Map<Integer, String>> atFirst = current();
+
+        customerService.updateCustomer(3, "Renamed", "Someone", "555-0003", "renamed@example.com");
+        addCustomers(5);
+        int spare = customerService.getCustomerCount();
+        customerService.deleteCustomer(customerService.getAllCustomers().get(spare - 1).getId());
+        productService.updateProduct(2, "Repriced", "Description", 12345);
+        addOrders(10);
+        orderService.addProductToOrder(1, 2, 3);
+        Backup.Result second = Backup.backup(backups, false);
+        assertFalse(second.full);
+        assertEquals(2, second.id);
+        // Only what changed since the first backup
+        assertTrue(second.records > 0 && second.records < 100, "records: " + second.records);
+        assertEquals("incremental", manifest(second).getProperty("customers.mode"));
+        // A range copied from the middle of a log still says which format its records are in
+        try (DataInputStream in = new DataInputStream(new FileInputStream(new File(second.dir, "customers.log")))) {
+            assertEquals(EntityJournal.FORMAT, in.readByte());
+            assertEquals(RecordCodec.VERSION, in.readInt());
+        }
+
+        File latest = dir.resolve("latest").toFile();
+        Backup.Result restored = Backup.restore(backups, 0, latest);
+        assertEquals(2, restored.id);
+        assertEquals(first.records + second.records, restored.records);
+        assertEquals(current(), restoredFrom(latest));
+        File earlier = dir.resolve("earlier").toFile();
+        assertEquals(1, Backup.restore(backups, 1, earlier).id);
+        assertEquals(atFirst, restoredFrom(earlier));
+    }
+
+    // The log the previous backup read from has become the previous log since, and is
+    // followed there
+    @Test
+    void incrementalBackupsFollowLogsAcrossACompaction() throws Exception {
+        File backups = dir.resolve("backups").toFile();
+        assertTrue(Backup.backup(backups, false).full);
+        compactCustomers();
+        customerService.updateCustomer(5, "After the compaction", "Someone", "555-0005", "after@example.com");
+        Backup.Result incremental = Backup.backup(backups, false);
+        assertFalse(incremental.full);
+        assertEquals("incremental", manifest(incremental).getProperty("customers.mode"));
+
+        File restored = dir.resolve("restored").toFile();
+        Backup.restore(backups, 0, restored);
+        assertEquals(current(), restoredFrom(restored));
+    }
+
+    // After two compactions the log the previous backup read from is gone, so customers are
+    // copied in full, while the other stores still back up incrementally
+    @Test
+    void twoCompactionsFallBackToAFullCopy() throws Exception {
+        File backups = dir.resolve("backups").toFile();
+        assertTrue(Backup.backup(backups, false).full);
+        compactCustomers();
+        compactCustomers();
+        addOrders(5);
+        Backup.Result backup = Backup.backup(backups, false);
+        Properties manifest = manifest(backup);
+        assertEquals("full", manifest.getProperty("customers.mode"));
+        assertTrue(new File(backup.dir, "customers.dat").exists());
+        assertEquals("incremental", manifest.getProperty("orders.mode"));
+
+        File restored = dir.resolve("restored").toFile();
+        Backup.restore(backups, 0, restored);
+        assertEquals(current(), restoredFrom(restored));
+    }
+
+    @Test
+    void damagedBackupsFailTheirRestore() throws IOException {
+        File backups = dir.resolve("backups").toFile();
+        Backup.backup(backups, false);
+        addOrders(5);
+        Backup.Result incremental = Backup.backup(backups, false);
+        File log = new File(incremental.dir, "orders.log");
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(raf.length() / 2);
+            raf.write(~raf.read());
+        }
+        IOException failure = assertThrows(IOException.class, () -> Backup.restore(backups, 0, dir.resolve("restored").toFile()));
+        assertTrue(failure.getMessage().contains("checksum"), failure.getMessage());
+        // The full backup before it is still whole
+        Backup.restore(backups, 1, dir.resolve("earlier").toFile());
+    }
+
+    private static void addCustomers(int count) {
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int n = ++added;
+            batch.add(new Customer(0, "Customer " + n, "Contact " + n, "555-" + (10000 + n), "c" + n + "@example.com"));
+        }
+        customerService.addCustomers(batch);
+    }
+
+    private static void addOrders(int count) {
+        List<Order> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Order order = new Order(0, customerService.getCustomerById(1 + i % 50));
+            order.addOrderItem(new OrderItem(productService.getProductById(1 + i % 20), 1 + i % 3));
+            batch.add(order);
+        }
+        orderService.createOrders(batch);
+    }
+
+    // Adds customers until the journal passes the compaction threshold, and waits for the
+    // compaction to replace the snapshot
+    private static void compactCustomers() throws InterruptedException {
+        DataStorage.flush();
+        File snapshot = new File(DATA_DIR, "customers.dat");
+        Object before = fileKey(snapshot);
+        addCustomers(ENTITIES_PER_COMPACTION);
+        DataStorage.flush();
+        File sealedLog = new File(DATA_DIR, "customers.log.old");
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (fileKey(snapshot) == null || Objects.equals(fileKey(snapshot), before) || sealedLog.exists()) {
+            assertTrue(System.currentTimeMillis() < deadline, "No compaction of customers");
+            Thread.sleep(50);
+        }
+    }
+
+    // Tells a renamed-over file from the one before it; null if there is none
+    private static Object fileKey(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Properties manifest(Backup.Result result) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = new FileInputStream(new File(result.dir, "manifest.properties"))) {
+            manifest.load(in);
+        }
+        return manifest;
+    }
+
+    // Every entity of every store, as text, by ID
+    private static Map<String, Map<Integer, String>> current() {
+        Map<String, Map<Integer, String>> stores = new TreeMap<>();
+        stores.put("customers", byId(customerService.getAllCustomers(), Customer::toString));
+        stores.put("products", byId(productService.getAllProducts(), Product::toString));
+        stores.put("orders", byId(orderService.getAllOrders(), BackupTest::describe));
+        return stores;
+    }
+
+    // What the application would load from a restored data directory
+    private static Map<String, Map<Integer, String>> restoredFrom(File restored) throws IOException {
+        Map<String, Map<Integer, String>> stores = new TreeMap<>();
+        stores.put("customers", load(restored, "customers", RecordCodec.CUSTOMER, Customer::toString));
+        stores.put("products", load(restored, "products", RecordCodec.PRODUCT, Product::toString));
+        stores.put("orders", load(restored, "orders", RecordCodec.ORDER, BackupTest::describe));
+        return stores;
+    }
+
+    private static <T extends BaseEntity> Map<Integer, String> load(File restored, String label, RecordCodec<T> codec,
+            Function<T, String> text) throws IOException {
+        File snapshot = new File(restored, label + ".dat");
+        Map<Integer, String> entities = byId(snapshot.exists() ? codec.readFile(snapshot) : List.of(), text);
+        new EntityJournal(new File(restored, label + ".log").getPath(), RecordCodec.VERSION).replay((op, id, payload, format) -> {
+            if (op == EntityJournal.PUT) {
+                entities.put(id, text.apply(codec.fromBytes(payload, format)));
+            } else {
+                entities.remove(id);
+            }
+        });
+        return entities;
+    }
+
+    private static <T extends BaseEntity> Map<Integer, String> byId(List<T> entities, Function<T, String> text) {
+        Map<Integer, String> byId = new TreeMap<>();
+        for (T entity : entities) {
+            byId.put(entity.getId(), text.apply(entity));
+        }
+        return byId;
+    }
+
+    // Orders loaded from disk have no customer or products attached, so compare what's stored
+    private static String describe(Order order) {
+        StringBuilder sb = new StringBuilder().append(order.getCustomerId()).append(' ').append(order.getCreatedAt());
+        for (OrderItem item : order.getOrderItems()) {
+            sb.append(' ').append(item.getProductId()).append('x').append(item.getQuantity())
+                    .append('@').append(item.getUnitPriceCents());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvImporterTest {
+    static {
+        try {
+            System.setProperty("crm.dataDir", Files.createTempDirectory("crm-import").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    // An order whose item rows were all rejected is rejected too, not created empty
+    @Test
+    void ordersWithoutValidItemsAreRejected() throws IOException {
+        CustomerService customerService = new CustomerService();
+        ProductService productService = new ProductService();
+        OrderService orderService = new OrderService(customerService, productService);
+        customerService.setQuiet(true);
+        productService.setQuiet(true);
+        orderService.setQuiet(true);
+        customerService.addCustomers(List.of(new Customer(0, "Customer", "Contact", "555-0100", "c@example.com")));
+        productService.addProducts(List.of(new Product(0, "Product", "Description", 250)));
+
+        File file = dir.resolve("orders.csv").toFile();
+        Files.writeString(file.toPath(), String.join("\n",
+                "orderRef,customerId,productId,quantity",
+                "A,1,1,2",
+                "B,1,99,1",
+                "B,1,1,0",
+                "C,1,1,1",
+                "C,1,99,1",
+                ""));
+        CsvImporter.Progress progress = new CsvImporter(customerService, productService, orderService)
+                .importFile(CsvImporter.Kind.ORDERS, file, null);
+
+        assertEquals(5, progress.rows);
+        assertEquals(2, progress.imported);
+        // B's two rows, B itself and C's second row
+        assertEquals(4, progress.rejected);
+        assertTrue(progress.errors.contains("Line 3: order B has no valid items"), progress.errors.toString());
+        assertEquals(2, orderService.getOrderCount());
+        assertEquals(750, orderService.getTotalSalesCents());
+    }
+}
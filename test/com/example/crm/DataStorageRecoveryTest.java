@@ -0,0 +1,97 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// Each test uses a store of its own, since a store's files only pass through their first
+// generation once per data directory
+class DataStorageRecoveryTest {
+    // Enough to take a journal past the compaction threshold once, but not twice
+    private static final int ENTITIES = 15_000;
+    private static final File DATA_DIR;
+
+    static {
+        try {
+            DATA_DIR = Files.createTempDirectory("crm-recovery").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.setProperty("crm.dataDir", DATA_DIR.getPath());
+    }
+
+    @Test
+    void firstGenerationIsRecoveredFromItsJournalWhenTheSnapshotIsDeleted() throws Exception {
+        CustomerService customerService = new CustomerService();
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 1; i <= ENTITIES; i++) {
+            batch.add(new Customer(0, "Customer " + i, "Contact " + i, "555-" + (10000 + i), "c" + i + "@example.com"));
+        }
+        customerService.addCustomers(batch);
+        waitForFirstCompaction("customers");
+        // Changes after the snapshot, in the active log
+        customerService.updateCustomer(7, "Renamed", "Someone", "555-0007", "renamed@example.com");
+        customerService.deleteCustomer(8);
+        customerService.addCustomer(new Customer(0, "Latest", "Contact", "555-99999", "latest@example.com"));
+        DataStorage.flush();
+
+        assertTrue(new File(DATA_DIR, "customers.dat").delete());
+        assertSameEntities(customerService.getAllCustomers(), DataStorage.loadCustomers());
+        // Saved again as a fresh snapshot, which loads on its own
+        assertTrue(new File(DATA_DIR, "customers.dat").exists());
+        assertSameEntities(customerService.getAllCustomers(), DataStorage.loadCustomers());
+    }
+
+    @Test
+    void firstGenerationIsRecoveredFromItsJournalWhenTheSnapshotIsDamaged() throws Exception {
+        ProductService productService = new ProductService();
+        List<Product> batch = new ArrayList<>();
+        for (int i = 1; i <= ENTITIES; i++) {
+            batch.add(new Product(0, "Product " + i, "A product described at some length, number " + i, 100L * i));
+        }
+        productService.addProducts(batch);
+        waitForFirstCompaction("products");
+        productService.updateProduct(3, "Repriced", "Description", 12345);
+        DataStorage.flush();
+
+        File snapshot = new File(DATA_DIR, "products.dat");
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.seek(raf.length() / 2);
+            raf.write(~raf.read());
+        }
+        assertSameEntities(productService.getAllProducts(), DataStorage.loadProducts());
+        assertTrue(new File(DATA_DIR, "products.dat.damaged").exists());
+        assertSameEntities(productService.getAllProducts(), DataStorage.loadProducts());
+    }
+
+    // The first compaction leaves a snapshot and the log it covers, and no previous snapshot
+    private static void waitForFirstCompaction(String label) throws InterruptedException {
+        DataStorage.flush();
+        File snapshot = new File(DATA_DIR, label + ".dat");
+        File previousLog = new File(DATA_DIR, label + ".log.prev");
+        File sealedLog = new File(DATA_DIR, label + ".log.old");
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (!(snapshot.exists() && previousLog.exists() && !sealedLog.exists())) {
+            assertTrue(System.currentTimeMillis() < deadline, "No compaction of " + label);
+            Thread.sleep(50);
+        }
+        assertFalse(new File(DATA_DIR, label + ".dat.prev").exists());
+    }
+
+    private static <T extends BaseEntity> void assertSameEntities(List<T> expected, List<T> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class EntityIndexTest {
+    private static final int WRITERS = 8;
+    private static final int IDS_PER_WRITER = 500;
+    private static final int OPERATIONS = 20_000;
+
+    // Each writer adds, replaces and removes its own IDs (id % WRITERS) and tracks what it
+    // expects to be left, while readers check every listing they take is sorted
+    @Test
+    void concurrentWritesLeaveTheExpectedSortedContents() throws InterruptedException {
+        EntityIndex<Customer> index = new EntityIndex<>(new ArrayList<>());
+        List<TreeMap<Integer, Customer>> expected = new ArrayList<>();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            TreeMap<Integer, Customer> mine = new TreeMap<>();
+            expected.add(mine);
+            writers.add(new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(writer);
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        int id = 1 + writer + WRITERS * random.nextInt(IDS_PER_WRITER);
+                        int op = random.nextInt(10);
+                        if (op < 5) {
+                            Customer customer = customer(id, i);
+                            index.add(customer);
+                            mine.put(id, customer);
+                        } else if (op < 8) {
+                            Customer removed = index.remove(id);
+                            assertSame(mine.remove(id), removed);
+                        } else {
+                            List<Customer> batch = new ArrayList<>();
+                            for (int j = 0; j < 5; j++) {
+                                int batchId = 1 + writer + WRITERS * random.nextInt(IDS_PER_WRITER);
+                                Customer customer = customer(batchId, i);
+                                batch.add(customer);
+                                mine.put(batchId, customer);
+                            }
+                            index.addAll(batch);
+                        }
+                        assertSame(mine.get(id), index.get(id));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    while (writing.get()) {
+                        assertSorted(index.list());
+                        assertSorted(index.page(IDS_PER_WRITER, 50));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+
+        writers.forEach(Thread::start);
+        readers.forEach(Thread::start);
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+
+        TreeMap<Integer, Customer> all = new TreeMap<>();
+        expected.forEach(all::putAll);
+        List<Customer> listed = index.list();
+        assertSorted(listed);
+        assertEquals(new ArrayList<>(all.values()), listed);
+        assertEquals(all.size(), index.size());
+        assertEquals(all.isEmpty() ? 0 : all.lastKey(), index.maxId());
+        for (int id = 1; id <= WRITERS * IDS_PER_WRITER; id++) {
+            assertSame(all.get(id), index.get(id));
+        }
+    }
+
+    @Test
+    void pagesContinueAfterTheGivenId() {
+        List<Customer> customers = new ArrayList<>();
+        for (int id = 2; id <= 200; id += 2) {
+            customers.add(customer(id, 0));
+        }
+        EntityIndex<Customer> index = new EntityIndex<>(customers);
+        assertEquals(customers.subList(0, 10), index.page(0, 10));
+        // After an ID that is there, and after one that isn't
+        assertEquals(customers.subList(5, 15), index.page(10, 10));
+        assertEquals(customers.subList(5, 15), index.page(11, 10));
+        assertEquals(customers.subList(95, 100), index.page(190, 10));
+        assertTrue(index.page(200, 10).isEmpty());
+
+        // A write in between shows up in the next page without a new listing
+        Customer added = customer(13, 1);
+        index.add(added);
+        assertEquals(added, index.page(12, 1).get(0));
+        index.remove(14);
+        assertEquals(16, index.page(13, 1).get(0).getId());
+    }
+
+    @Test
+    void slicesStartAtTheGivenPosition() {
+        List<Customer> customers = new ArrayList<>();
+        for (int id = 2; id <= 200; id += 2) {
+            customers.add(customer(id, 0));
+        }
+        EntityIndex<Customer> index = new EntityIndex<>(customers);
+        assertEquals(customers.subList(0, 10), index.slice(0, 10));
+        assertEquals(customers.subList(95, 100), index.slice(95, 10));
+        assertTrue(index.slice(100, 10).isEmpty());
+        assertTrue(index.slice(Integer.MAX_VALUE, Integer.MAX_VALUE).isEmpty());
+
+        index.remove(2);
+        assertEquals(customers.subList(1, 3), index.slice(0, 2));
+    }
+
+    private static Customer customer(int id, int version) {
+        return new Customer(id, "Customer " + id, "Contact " + version, "555-0100", id + "@example.com");
+    }
+
+    private static void assertSorted(List<Customer> customers) {
+        for (int i = 1; i < customers.size(); i++) {
+            assertTrue(customers.get(i - 1).getId() < customers.get(i).getId(),
+                    "IDs out of order at " + i + ": " + customers.get(i - 1).getId() + ", " + customers.get(i).getId());
+        }
+    }
+}
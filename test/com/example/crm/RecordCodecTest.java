@@ -0,0 +1,111 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordCodecTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotsReadBackWhatWasWritten() throws IOException {
+        File file = write(100);
+        List<Customer> read = RecordCodec.CUSTOMER.readFile(file);
+        assertEquals(100, read.size());
+        assertEquals("Customer 42", read.get(41).getName());
+        assertEquals("c42@example.com", read.get(41).getEmail());
+    }
+
+    // A damaged header or record must be an IOException, so loading falls back to the
+    // previous generation, never an OutOfMemoryError or a NegativeArraySizeException
+    @Test
+    void damagedSnapshotsAreIOExceptions() throws IOException {
+        File file = write(100);
+        byte[] original = Files.readAllBytes(file.toPath());
+
+        // Record count
+        patchInt(file, 7, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+        patchInt(file, 7, -5);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+        patchInt(file, 7, 99);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+
+        // The length of the first record's name
+        Files.write(file.toPath(), original);
+        patchInt(file, RecordCodec.HEADER_SIZE + 4, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+
+        // Torn off in the middle of the records, and in the header
+        Files.write(file.toPath(), original);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(original.length / 2);
+        }
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(RecordCodec.HEADER_SIZE - 3);
+        }
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+    }
+
+    // Damage that the checksum of an older file doesn't cover is still caught
+    @Test
+    void olderSnapshotsAreReadAndChecked() throws IOException {
+        File file = write(10);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // Version 3: the checksum covers only the records
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        header.putShort(4, (short) 3);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, RecordCodec.HEADER_SIZE, bytes.length - RecordCodec.HEADER_SIZE);
+        header.putLong(RecordCodec.CHECKSUM_OFFSET, crc.getValue());
+        Files.write(file.toPath(), bytes);
+        assertEquals(10, RecordCodec.CUSTOMER.readFile(file).size());
+
+        patchInt(file, 7, 1_000_000);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+        patchInt(file, 7, 11);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.readFile(file));
+    }
+
+    @Test
+    void damagedJournalRecordsAreIOExceptions() throws IOException {
+        byte[] payload = RecordCodec.CUSTOMER.toBytes(customer(1));
+        ByteBuffer.wrap(payload).putInt(4, 1 << 30);
+        assertThrows(IOException.class, () -> RecordCodec.CUSTOMER.fromBytes(payload, RecordCodec.VERSION));
+    }
+
+    private File write(int count) throws IOException {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            customers.add(customer(i));
+        }
+        File file = dir.resolve("customers.dat").toFile();
+        RecordCodec.CUSTOMER.writeFile(file, customers, null);
+        return file;
+    }
+
+    private static Customer customer(int id) {
+        return new Customer(id, "Customer " + id, "Contact " + id, "555-" + (1000 + id), "c" + id + "@example.com");
+    }
+
+    private static void patchInt(File file, long position, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            raf.writeInt(value);
+        }
+    }
+}
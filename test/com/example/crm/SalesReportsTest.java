@@ -0,0 +1,135 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class SalesReportsTest {
+    private static final int CUSTOMERS = 50;
+    private static final int PRODUCTS = 20;
+
+    private static CustomerService customerService;
+    private static ProductService productService;
+    private static OrderService orderService;
+
+    @BeforeAll
+    static void createData() {
+        try {
+            System.setProperty("crm.dataDir", Files.createTempDirectory("crm-reports").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        customerService = new CustomerService();
+        productService = new ProductService();
+        orderService = new OrderService(customerService, productService);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 1; i <= CUSTOMERS; i++) {
+            customers.add(new Customer(0, "Customer " + i, "Contact " + i, "555-" + (1000 + i), "c" + i + "@example.com"));
+        }
+        customerService.addCustomers(customers);
+        List<Product> products = new ArrayList<>();
+        for (int i = 1; i <= PRODUCTS; i++) {
+            products.add(new Product(0, "Product " + i, "Description " + i, 100L * i));
+        }
+        productService.addProducts(products);
+    }
+
+    // Reports kept up to date change by change must match reports built from scratch
+    @Test
+    void reportsFollowOrderChanges() {
+        SalesReports reports = new SalesReports(orderService, customerService, productService);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int round = 0; round < 5; round++) {
+            changeOrders(random, 40);
+            assertSameReports(new SalesReports(orderService, customerService, productService), reports);
+        }
+    }
+
+    @Test
+    void reportsFollowConcurrentOrderChanges() throws InterruptedException {
+        SalesReports reports = new SalesReports(orderService, customerService, productService);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            SplittableRandom random = new SplittableRandom(100 + w);
+            writers.add(new Thread(() -> changeOrders(random, 500)));
+        }
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                reports.topCustomers(10);
+                reports.topProducts(10);
+            }
+        });
+        writers.forEach(Thread::start);
+        reader.start();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        reader.join();
+        assertSameReports(new SalesReports(orderService, customerService, productService), reports);
+    }
+
+    @Test
+    void outOfRangeCountsAreRefused() {
+        SalesReports reports = new SalesReports(orderService, customerService, productService);
+        assertThrows(IllegalArgumentException.class, () -> reports.dailySales(-10));
+        assertThrows(IllegalArgumentException.class, () -> reports.dailySales(0));
+        assertThrows(IllegalArgumentException.class, () -> reports.dailySales(SalesReports.MAX_DAYS + 1));
+        assertThrows(IllegalArgumentException.class, () -> reports.topCustomers(-1));
+        assertThrows(IllegalArgumentException.class, () -> reports.topProducts(Integer.MAX_VALUE));
+        assertEquals(SalesReports.MAX_DAYS, reports.dailySales(SalesReports.MAX_DAYS).rows.size());
+    }
+
+    // Would otherwise take units sold and revenue below zero
+    @Test
+    void nonPositiveQuantitiesAreRefused() {
+        Order order = orderService.createOrder(1);
+        long changes = orderService.getChangeCount();
+        long units = orderService.getProductUnitsSold(1);
+        assertFalse(orderService.addProductToOrder(order.getId(), 1, 0));
+        assertFalse(orderService.addProductToOrder(order.getId(), 1, -5));
+        assertTrue(order.getOrderItems().isEmpty());
+        assertEquals(changes, orderService.getChangeCount());
+        assertEquals(units, orderService.getProductUnitsSold(1));
+    }
+
+    // New orders, some with items, and items added to existing orders
+    private static void changeOrders(SplittableRandom random, int changes) {
+        for (int i = 0; i < changes; i++) {
+            int count = orderService.getOrderCount();
+            if (count == 0 || random.nextInt(3) == 0) {
+                Order order = orderService.createOrder(1 + random.nextInt(CUSTOMERS));
+                for (int items = random.nextInt(3); items > 0; items--) {
+                    orderService.addProductToOrder(order.getId(), 1 + random.nextInt(PRODUCTS), 1 + random.nextInt(5));
+                }
+            } else {
+                orderService.addProductToOrder(1 + random.nextInt(count), 1 + random.nextInt(PRODUCTS), 1 + random.nextInt(5));
+            }
+        }
+    }
+
+    private static void assertSameReports(SalesReports expected, SalesReports actual) {
+        assertSameRows(expected.topCustomers(CUSTOMERS), actual.topCustomers(CUSTOMERS));
+        assertSameRows(expected.topProducts(PRODUCTS), actual.topProducts(PRODUCTS));
+        assertSameRows(expected.orderValue(), actual.orderValue());
+    }
+
+    private static void assertSameRows(SalesReports.Report expected, SalesReports.Report actual) {
+        assertEquals(expected.rowsScanned, actual.rowsScanned, expected.title);
+        assertArrayEquals(expected.rows.toArray(), actual.rows.toArray(), expected.title);
+    }
+}
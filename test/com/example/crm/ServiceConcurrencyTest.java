@@ -0,0 +1,206 @@
+package com.example.crm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+class ServiceConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 2_000;
+    private static final int PRODUCTS = 20;
+    // Customers there before the writers start, for their orders
+    private static final int FIRST_CUSTOMERS = 50;
+
+    static {
+        try {
+            System.setProperty("crm.dataDir", Files.createTempDirectory("crm-services").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // What one writer did, to add up once they have all finished
+    private static class Work {
+        final List<Customer> customers = new ArrayList<>();
+        final List<Order> orders = new ArrayList<>();
+        final long[] unitsByProduct = new long[PRODUCTS + 1];
+        final int[] ordersByCustomer = new int[FIRST_CUSTOMERS + 1];
+        long salesCents;
+
+        void item(Product product, int quantity) {
+            unitsByProduct[product.getId()] += quantity;
+            salesCents += product.getPriceCents() * quantity;
+        }
+    }
+
+    // Writers mix every way of adding customers, orders and order items; no ID may be lost
+    // or handed out twice, and the sales totals must add up to what was submitted
+    @Test
+    void concurrentWritesLoseNothing() throws InterruptedException {
+        CustomerService customerService = new CustomerService();
+        ProductService productService = new ProductService();
+        OrderService orderService = new OrderService(customerService, productService);
+        customerService.setQuiet(true);
+        productService.setQuiet(true);
+        orderService.setQuiet(true);
+        List<Product> products = new ArrayList<>();
+        for (int i = 1; i <= PRODUCTS; i++) {
+            products.add(new Product(0, "Product " + i, "Description " + i, 100L * i));
+        }
+        productService.addProducts(products);
+        List<Customer> firstCustomers = new ArrayList<>();
+        for (int i = 1; i <= FIRST_CUSTOMERS; i++) {
+            firstCustomers.add(customer(i));
+        }
+        customerService.addCustomers(firstCustomers);
+
+        List<Work> work = new ArrayList<>();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Work mine = new Work();
+            work.add(mine);
+            SplittableRandom random = new SplittableRandom(t);
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        write(random, mine, customerService, productService, orderService);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+
+        List<Customer> customers = new ArrayList<>(firstCustomers);
+        List<Order> orders = new ArrayList<>();
+        long[] units = new long[PRODUCTS + 1];
+        int[] customerOrders = new int[FIRST_CUSTOMERS + 1];
+        long salesCents = 0;
+        for (Work done : work) {
+            customers.addAll(done.customers);
+            orders.addAll(done.orders);
+            for (int id = 1; id <= PRODUCTS; id++) {
+                units[id] += done.unitsByProduct[id];
+            }
+            for (int id = 1; id <= FIRST_CUSTOMERS; id++) {
+                customerOrders[id] += done.ordersByCustomer[id];
+            }
+            salesCents += done.salesCents;
+        }
+
+        assertContiguousIds(customers);
+        assertEquals(customers.size(), customerService.getCustomerCount());
+        assertContiguousIds(orders);
+        assertEquals(orders.size(), orderService.getOrderCount());
+        List<Customer> listed = customerService.getAllCustomers();
+        for (int i = 0; i < listed.size(); i++) {
+            assertEquals(i + 1, listed.get(i).getId());
+        }
+        List<Order> listedOrders = orderService.getAllOrders();
+        assertEquals(orders.size(), listedOrders.size());
+        for (Order order : orders) {
+            assertEquals(order, orderService.getOrderById(order.getId()));
+        }
+
+        assertEquals(salesCents, orderService.getTotalSalesCents());
+        long itemCents = 0;
+        for (Order order : listedOrders) {
+            itemCents += order.getTotalCents();
+        }
+        assertEquals(salesCents, itemCents);
+        for (int id = 1; id <= PRODUCTS; id++) {
+            assertEquals(units[id], orderService.getProductUnitsSold(id), "units of product " + id);
+        }
+        for (int id = 1; id <= FIRST_CUSTOMERS; id++) {
+            assertEquals(customerOrders[id], orderService.getCustomerOrderCount(id), "orders of customer " + id);
+        }
+    }
+
+    private static void write(SplittableRandom random, Work work, CustomerService customerService,
+            ProductService productService, OrderService orderService) {
+        int op = random.nextInt(10);
+        if (op < 2) {
+            Customer customer = customer(random.nextInt());
+            assertTrue(customerService.addCustomer(customer));
+            work.customers.add(customer);
+        } else if (op < 3) {
+            List<Customer> batch = new ArrayList<>();
+            for (int i = random.nextInt(1, 10); i > 0; i--) {
+                batch.add(customer(random.nextInt()));
+            }
+            assertEquals(batch.size(), customerService.addCustomers(batch));
+            work.customers.addAll(batch);
+        } else if (op < 5) {
+            int customerId = 1 + random.nextInt(FIRST_CUSTOMERS);
+            Order order = orderService.createOrder(customerId);
+            assertNotNull(order);
+            work.orders.add(order);
+            work.ordersByCustomer[customerId]++;
+        } else if (op < 6) {
+            List<Order> batch = new ArrayList<>();
+            for (int i = random.nextInt(1, 5); i > 0; i--) {
+                int customerId = 1 + random.nextInt(FIRST_CUSTOMERS);
+                Order order = new Order(0, customerService.getCustomerById(customerId));
+                for (int items = random.nextInt(3); items > 0; items--) {
+                    Product product = productService.getProductById(1 + random.nextInt(PRODUCTS));
+                    int quantity = 1 + random.nextInt(5);
+                    order.addOrderItem(new OrderItem(product, quantity));
+                    work.item(product, quantity);
+                }
+                batch.add(order);
+                work.ordersByCustomer[customerId]++;
+            }
+            assertEquals(batch.size(), orderService.createOrders(batch));
+            work.orders.addAll(batch);
+        } else if (!work.orders.isEmpty()) {
+            // Items go into this writer's own orders, and other writers' too
+            Order order = random.nextBoolean()
+                    ? work.orders.get(random.nextInt(work.orders.size()))
+                    : orderService.getOrderById(1 + random.nextInt(Math.max(1, orderService.getOrderCount())));
+            if (order == null) {
+                return;
+            }
+            Product product = productService.getProductById(1 + random.nextInt(PRODUCTS));
+            int quantity = 1 + random.nextInt(5);
+            assertTrue(orderService.addProductToOrder(order.getId(), product.getId(), quantity));
+            work.item(product, quantity);
+        }
+    }
+
+    private static Customer customer(int n) {
+        return new Customer(0, "Customer " + n, "Contact " + n, "555-" + n, "c" + n + "@example.com");
+    }
+
+    private static <T extends BaseEntity> void assertContiguousIds(List<T> entities) {
+        boolean[] seen = new boolean[entities.size() + 1];
+        for (T entity : entities) {
+            int id = entity.getId();
+            assertTrue(id >= 1 && id <= entities.size(), "ID " + id + " outside 1.." + entities.size());
+            assertFalse(seen[id], "ID " + id + " handed out twice");
+            seen[id] = true;
+        }
+    }
+}